@@ -0,0 +1,37 @@
+package com.nishant.customcache.benchmarks;
+
+import java.lang.reflect.Array;
+
+/**
+ * Builds keys of distinct classes without generating bytecode, using multi-dimensional array types
+ */
+final class BenchmarkKeys {
+    private static final Class<?>[] COMPONENTS = {Object.class, String.class, Integer.class, Long.class, Double.class};
+    private static final int MAX_DIMENSIONS = 250;
+
+    static Object[] distinctKeyTypes(int count) {
+        if (count > COMPONENTS.length * MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("At most " + COMPONENTS.length * MAX_DIMENSIONS + " key types supported");
+        }
+        Object[] keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            Class<?> component = COMPONENTS[i / MAX_DIMENSIONS];
+            keys[i] = Array.newInstance(component, new int[1 + i % MAX_DIMENSIONS]);
+        }
+        return keys;
+    }
+
+    /**
+     * Builds {@code keyTypes * perKeyType} keys, key i being of the (i % keyTypes)-th distinct class.
+     * Array keys hash on identity, so every instance is a distinct key.
+     */
+    static Object[] keysOfDistinctTypes(int keyTypes, int perKeyType) {
+        Object[] templates = distinctKeyTypes(keyTypes);
+        Object[] keys = new Object[keyTypes * perKeyType];
+        for (int i = 0; i < keys.length; i++) {
+            Class<?> type = templates[i % keyTypes].getClass();
+            keys[i] = Array.newInstance(type.getComponentType(), 1);
+        }
+        return keys;
+    }
+}
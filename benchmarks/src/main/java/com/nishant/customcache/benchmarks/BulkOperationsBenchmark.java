@@ -0,0 +1,102 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches of 50 and 500 keys spread over 1 or 10 key types, read and written with the bulk operations and with
+ * a loop of single key calls as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkOperationsBenchmark {
+
+    @Param({"50", "500"})
+    int batchSize;
+
+    @Param({"1", "10"})
+    int keyTypes;
+
+    private List<Object> keys;
+    private Map<Object, Object> entries;
+    private final Map<Object, Object> results = new HashMap<>();
+    private final CustomCache<Object, Object> cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+
+    @Setup
+    public void setup() {
+        Object[] batch = new Object[batchSize];
+        entries = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = key(i % keyTypes, i);
+            entries.put(batch[i], "value " + i);
+        }
+        keys = Arrays.asList(batch);
+        cache.putAll(entries);
+    }
+
+    /**
+     * Key number i of one of ten key types
+     */
+    private static Object key(int keyType, int i) {
+        switch (keyType) {
+            case 0: return i;
+            case 1: return (long) i;
+            case 2: return "key " + i;
+            case 3: return (double) i;
+            case 4: return (short) i;
+            case 5: return (float) i;
+            case 6: return BigInteger.valueOf(i);
+            case 7: return BigDecimal.valueOf(i);
+            case 8: return new UUID(i, i);
+            default: return new Date(i);
+        }
+    }
+
+    @Benchmark
+    public Map<Object, Object> getAll() {
+        results.clear();
+        cache.getAll(keys, results::put);
+        return results;
+    }
+
+    @Benchmark
+    public Map<Object, Object> getLoop() {
+        results.clear();
+        for (Object key : keys) {
+            Object value = cache.get(key);
+            if (value != null) {
+                results.put(key, value);
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public void putAll(Blackhole blackhole) {
+        cache.putAll(entries);
+        blackhole.consume(cache);
+    }
+
+    @Benchmark
+    public void putLoop(Blackhole blackhole) {
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        blackhole.consume(cache);
+    }
+}
@@ -0,0 +1,62 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CacheBuilder;
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.services.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building up to 10k small caches that each schedule a key type expiration, on the timing wheel shared by every cache
+ * against a wheel, and so a ticker thread, per cache. The {@code threads} counter reports the live threads once the
+ * caches are built, run with {@code -prof gc} to compare what building them allocates. Thousands of tickers waking
+ * up every 10 ms starve a small machine, expect the {@code perCache} runs to take minutes there.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CacheCreationBenchmark {
+
+    @Param({"shared", "perCache"})
+    public String wheel;
+
+    @Param({"1000", "10000"})
+    public int caches;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long threads;
+    }
+
+    @Benchmark
+    public List<CustomCache<Object, Object>> buildAndClose(Footprint footprint) {
+        List<CustomCache<Object, Object>> built = new ArrayList<>(caches);
+        List<TimingWheel> wheels = new ArrayList<>();
+        for (int i = 0; i < caches; i++) {
+            CacheBuilder<Object, Object> builder = CustomCache.builder().expireAfter(1, TimeUnit.HOURS);
+            if (wheel.equals("perCache")) {
+                TimingWheel own = new TimingWheel(10, TimeUnit.MILLISECONDS, "benchmark-wheel-" + i);
+                wheels.add(own);
+                builder.timingWheel(own);
+            }
+            CustomCache<Object, Object> cache = builder.build();
+            cache.put(i, i);
+            built.add(cache);
+        }
+        footprint.threads = Thread.activeCount();
+        for (CustomCache<Object, Object> cache : built) {
+            cache.close();
+        }
+        for (TimingWheel own : wheels) {
+            own.close();
+        }
+        return built;
+    }
+}
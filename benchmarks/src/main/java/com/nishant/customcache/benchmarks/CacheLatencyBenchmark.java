@@ -0,0 +1,91 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CacheBuilder;
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread latency of the basic operations on a warm cache of one key type, unbounded and size bounded,
+ * with values on and off the heap.
+ * Run with {@code -bm sample} for percentiles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class CacheLatencyBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int MASK = KEYS - 1;
+
+    /**
+     * Maximum size of the cache, 0 for an unbounded cache
+     */
+    @Param({"0", "131072"})
+    long maximumSize;
+
+    /**
+     * Whether the values are kept serialized off-heap
+     */
+    @Param({"false", "true"})
+    boolean offHeap;
+
+    private CustomCache<Object, Object> cache;
+    private final ShapeKey[] keys = new ShapeKey[KEYS];
+    private final ShapeKey[] absentKeys = new ShapeKey[KEYS];
+    private final Square[] squares = new Square[KEYS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        CacheBuilder<Object, Object> builder = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS);
+        if (maximumSize != 0) {
+            builder.maximumSize(maximumSize);
+        }
+        if (offHeap) {
+            builder = builder.offHeap(ValueSerializer.java());
+        }
+        cache = builder.build();
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new ShapeKey(i);
+            absentKeys[i] = new ShapeKey(KEYS + i);
+            squares[i] = new Square(i, "Square " + i, i);
+            cache.put(keys[i], squares[i]);
+        }
+    }
+
+    private int nextIndex() {
+        return next = (next + 1) & MASK;
+    }
+
+    @Benchmark
+    public Object getHit() {
+        return cache.get(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        return cache.get(absentKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public void putReplace() {
+        int i = nextIndex();
+        cache.put(keys[i], squares[i]);
+    }
+
+    @Benchmark
+    public boolean putRemove() {
+        int i = nextIndex();
+        cache.put(absentKeys[i], squares[i]);
+        return cache.remove(absentKeys[i]);
+    }
+}
@@ -0,0 +1,57 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through traffic on a cache whose time to live is short enough for entries to expire while measuring.
+ * {@code KEY_TYPE} drops whole partitions and recreates them, {@code AFTER_WRITE} expires entries one by one
+ * while the background sweep removes them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpirationChurnBenchmark {
+
+    private static final int KEYS = 1 << 16;
+
+    @Param({"KEY_TYPE", "AFTER_WRITE"})
+    String expiration;
+
+    @Param({"10", "100"})
+    long timeToLiveMillis;
+
+    private CustomCache<Object, Object> cache;
+    private final Integer[] integers = new Integer[KEYS];
+    private final String[] strings = new String[KEYS];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cache = "KEY_TYPE".equals(expiration)
+                ? CustomCache.builder().expireAfter(timeToLiveMillis, TimeUnit.MILLISECONDS).build()
+                : CustomCache.builder().expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS).build();
+        for (int i = 0; i < KEYS; i++) {
+            integers[i] = i;
+            strings[i] = "key-" + i;
+        }
+    }
+
+    @Benchmark
+    public Object readThrough() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(KEYS);
+        Object key = (i & 1) == 0 ? integers[i] : strings[i];
+        Object value = cache.get(key);
+        if (value == null) {
+            cache.put(key, key);
+            return key;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,80 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.services.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling expirations on the timing wheel against the previous ScheduledThreadPoolExecutor.
+ * <p>
+ * {@code *ScheduleCancel} measures the per timer cost of a schedule followed by a cancel,
+ * {@code *Million} the single shot cost of holding a million pending expirations.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ExpirationSchedulingBenchmark {
+
+    private static final int MILLION = 1_000_000;
+    private static final Runnable NO_OP = () -> { };
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, "benchmark-wheel");
+        executor = new ScheduledThreadPoolExecutor(10);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static long randomDelaySeconds() {
+        return 60 + ThreadLocalRandom.current().nextInt(3600);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean wheelScheduleCancel() {
+        return wheel.schedule(NO_OP, randomDelaySeconds(), TimeUnit.SECONDS).cancel();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean executorScheduleCancel() {
+        return executor.schedule(NO_OP, randomDelaySeconds(), TimeUnit.SECONDS).cancel(false);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TimingWheel.Timeout wheelMillion() {
+        TimingWheel.Timeout last = null;
+        for (int i = 0; i < MILLION; i++) {
+            last = wheel.schedule(NO_OP, randomDelaySeconds(), TimeUnit.SECONDS);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ScheduledFuture<?> executorMillion() {
+        ScheduledFuture<?> last = null;
+        for (int i = 0; i < MILLION; i++) {
+            last = executor.schedule(NO_OP, randomDelaySeconds(), TimeUnit.SECONDS);
+        }
+        return last;
+    }
+}
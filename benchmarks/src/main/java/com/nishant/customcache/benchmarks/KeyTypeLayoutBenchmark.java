@@ -0,0 +1,50 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same number of entries laid out in one key type or spread over 10 and 1000 key types,
+ * read and written at random. Shows the cost of many small partitions against one large partition.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyTypeLayoutBenchmark {
+
+    private static final int ENTRIES = 1 << 16;
+
+    @Param({"1", "10", "1000"})
+    int keyTypes;
+
+    private Object[] keys;
+    private final CustomCache<Object, Object> cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+
+    @Setup
+    public void setup() {
+        keys = BenchmarkKeys.keysOfDistinctTypes(keyTypes, ENTRIES / keyTypes);
+        for (Object key : keys) {
+            cache.put(key, "value");
+        }
+    }
+
+    private Object randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    public Object get() {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(randomKey(), "value");
+    }
+}
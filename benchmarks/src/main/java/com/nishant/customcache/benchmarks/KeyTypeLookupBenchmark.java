@@ -0,0 +1,71 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.model.KeyTypeCacheEntry;
+import com.nishant.customcache.model.KeyTypeIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the key type partition of a key with 1, 10 and 1000 distinct key types present.
+ * <p>
+ * {@code linearScan} is the previous parallel stream lookup over a set of partitions, kept here as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyTypeLookupBenchmark {
+
+    @Param({"1", "10", "1000"})
+    int keyTypes;
+
+    private Object[] keys;
+    private final KeyTypeCacheEntry.Settings<Object, Object> settings = new KeyTypeCacheEntry.Settings<>();
+    private final KeyTypeIndex<Object, Object> index = new KeyTypeIndex<>();
+    private final Set<KeyTypeCacheEntry<Object, Object>> set = new LinkedHashSet<>();
+    private final CustomCache<Object, Object> cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    private int next;
+
+    @Setup
+    public void setup() {
+        keys = BenchmarkKeys.distinctKeyTypes(keyTypes);
+        for (Object key : keys) {
+            KeyTypeCacheEntry<Object, Object> entry = settings.newPartition(key.getClass(), String.class, 0, TimeUnit.SECONDS);
+            index.add(entry);
+            set.add(entry);
+            cache.put(key, "value");
+        }
+    }
+
+    private Object nextKey() {
+        int i = next + 1;
+        if (i == keys.length) {
+            i = 0;
+        }
+        next = i;
+        return keys[i];
+    }
+
+    @Benchmark
+    public KeyTypeCacheEntry<Object, Object> index() {
+        return index.get(nextKey().getClass());
+    }
+
+    @Benchmark
+    public Optional<KeyTypeCacheEntry<Object, Object>> linearScan() {
+        Class<?> keyType = nextKey().getClass();
+        return set.parallelStream().filter(entry -> entry.getKeyType().equals(keyType)).findFirst();
+    }
+
+    @Benchmark
+    public Object cacheGet() {
+        return cache.get(nextKey());
+    }
+}
@@ -0,0 +1,106 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CacheBuilder;
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import com.nishant.customcache.model.EntryTable;
+import com.nishant.customcache.model.KeyValuePair;
+import com.nishant.customcache.services.ManualTicker;
+import com.nishant.customcache.services.TimingWheel;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Prints the bytes every mapping costs on the heap, keys and values excluded, for the previous layout of a partition
+ * against the current one. JOL walks the object graph of each container once it holds the entries.
+ * <pre>
+ * java -Djdk.attach.allowAttachSelf=true -cp benchmarks/target/benchmarks.jar \
+ *     com.nishant.customcache.benchmarks.MemoryFootprintReport [entries]
+ * </pre>
+ * The previous layout is a set of {@link KeyValuePair}, each pair wrapped in a node of the backing map. The caches
+ * run on a manual timing wheel and a calling thread executor, so that their graphs reach no shared thread pool, and
+ * the graph of an empty cache built the same way is subtracted. The lambdas a cache holds are hidden classes, JOL
+ * only sizes them through its agent, hence the self attach.
+ */
+public final class MemoryFootprintReport {
+
+    private static final int DEFAULT_ENTRIES = 1_000_000;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ENTRIES;
+        ShapeKey[] keys = new ShapeKey[entries];
+        Square[] squares = new Square[entries];
+        Object[] keysAndValues = new Object[entries << 1];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = new ShapeKey(i);
+            squares[i] = new Square(i, "Square " + i, i);
+            keysAndValues[i << 1] = keys[i];
+            keysAndValues[(i << 1) + 1] = squares[i];
+        }
+        // every key and value is a root of its own, the array holding them is left out
+        GraphLayout payload = GraphLayout.parseInstance(keysAndValues);
+
+        System.out.println(VM.current().details());
+        System.out.printf("%-40s %12s %16s%n", "layout", "total (MB)", "bytes per entry");
+
+        Set<KeyValuePair<ShapeKey, Square>> set = new HashSet<>();
+        for (int i = 0; i < entries; i++) {
+            set.add(new KeyValuePair<>(keys[i], squares[i]));
+        }
+        report("HashSet<KeyValuePair> (previous)", set, 0L, payload, entries);
+        set = null;
+
+        EntryTable<ShapeKey, Square> table = new EntryTable<>();
+        EntryTable<ShapeKey, Square> timedTable = new EntryTable<>(true);
+        for (int i = 0; i < entries; i++) {
+            table.put(keys[i], squares[i]);
+            timedTable.put(keys[i], squares[i], i);
+        }
+        report("EntryTable", table, 0L, payload, entries);
+        report("EntryTable, timed", timedTable, 0L, payload, entries);
+        table = null;
+        timedTable = null;
+
+        reportCache("CustomCache", () -> builder().expireAfter(0, TimeUnit.SECONDS), keys, squares, payload);
+        reportCache("CustomCache, expireAfterWrite", () -> builder().expireAfterWrite(1, TimeUnit.HOURS),
+                keys, squares, payload);
+        reportCache("CustomCache, maximumSize", () -> builder().expireAfter(0, TimeUnit.SECONDS)
+                .maximumSize(entries), keys, squares, payload);
+        reportCache("CustomCache, 16 segments", () -> builder().expireAfter(0, TimeUnit.SECONDS).segments(16),
+                keys, squares, payload);
+    }
+
+    private static CacheBuilder<Object, Object> builder() {
+        ManualTicker ticker = new ManualTicker();
+        return CustomCache.builder()
+                .ticker(ticker)
+                .timingWheel(new TimingWheel(10, TimeUnit.MILLISECONDS, ticker))
+                .executor(Runnable::run);
+    }
+
+    private static void reportCache(String layout, Supplier<CacheBuilder<Object, Object>> builder,
+                                    ShapeKey[] keys, Square[] squares, GraphLayout payload) {
+        CustomCache<Object, Object> empty = builder.get().build();
+        long emptySize = GraphLayout.parseInstance(empty).totalSize();
+        CustomCache<Object, Object> cache = builder.get().build();
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], squares[i]);
+        }
+        report(layout, cache, emptySize, payload, keys.length);
+        empty.close();
+        cache.close();
+    }
+
+    private static void report(String layout, Object container, long baseline, GraphLayout payload, int entries) {
+        // every container reaches the whole payload; sizes are subtracted rather than graphs, as a collection moving
+        // the payload in between would defeat the address based GraphLayout.subtract
+        long bytes = GraphLayout.parseInstance(container).totalSize() - payload.totalSize() - baseline;
+        System.out.printf("%-40s %12.1f %16.1f%n", layout, bytes / (1024.0 * 1024.0), (double) bytes / entries);
+    }
+}
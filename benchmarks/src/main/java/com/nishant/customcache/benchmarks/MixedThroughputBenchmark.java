@@ -0,0 +1,83 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed 90% read, 10% write throughput over a few key types.
+ * Run {@link #main(String[])} to sweep from 1 to 32 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MixedThroughputBenchmark {
+
+    private static final int KEYS = 1 << 14;
+    private static final int MASK = KEYS - 1;
+
+    private final CustomCache<Object, Object> cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    private final ShapeKey[] shapeKeys = new ShapeKey[KEYS];
+    private final Square[] squares = new Square[KEYS];
+    private final Integer[] integers = new Integer[KEYS];
+    private final String[] strings = new String[KEYS];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < KEYS; i++) {
+            shapeKeys[i] = new ShapeKey(i);
+            squares[i] = new Square(i, "Square " + i, i);
+            integers[i] = i;
+            strings[i] = "key-" + i;
+            cache.put(shapeKeys[i], squares[i]);
+            cache.put(integers[i], integers[i]);
+            cache.put(strings[i], strings[i]);
+        }
+    }
+
+    @Benchmark
+    public Object readMostly() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt() & MASK;
+        int op = random.nextInt(30);
+        switch (op % 3) {
+            case 0:
+                if (op < 3) {
+                    cache.put(shapeKeys[i], squares[i]);
+                    return null;
+                }
+                return cache.get(shapeKeys[i]);
+            case 1:
+                if (op < 3) {
+                    cache.put(integers[i], integers[i]);
+                    return null;
+                }
+                return cache.get(integers[i]);
+            default:
+                if (op < 3) {
+                    cache.put(strings[i], strings[i]);
+                    return null;
+                }
+                return cache.get(strings[i]);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 32; threads <<= 1) {
+            new Runner(new OptionsBuilder()
+                    .include(MixedThroughputBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
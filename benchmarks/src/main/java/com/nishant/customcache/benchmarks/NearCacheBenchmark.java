@@ -0,0 +1,74 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CacheBuilder;
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of a small set of hot keys of a read-mostly key type, served by the partition or by the near cache of every
+ * reading thread, with and without statistics.
+ * Run {@link #main(String[])} to sweep from 1 to 32 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NearCacheBenchmark {
+
+    private static final int HOT_KEYS = 64;
+    private static final int MASK = HOT_KEYS - 1;
+
+    @Param({"false", "true"})
+    boolean nearCache;
+
+    @Param({"false", "true"})
+    boolean recordStats;
+
+    private CustomCache<ShapeKey, Square> cache;
+    private final ShapeKey[] keys = new ShapeKey[HOT_KEYS];
+
+    @Setup
+    public void setup() {
+        CacheBuilder<Object, Object> builder = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS);
+        if (nearCache) {
+            builder.nearCache(ShapeKey.class);
+        }
+        if (recordStats) {
+            builder.recordStats();
+        }
+        cache = builder.build();
+        for (int i = 0; i < HOT_KEYS; i++) {
+            keys[i] = new ShapeKey(i);
+            cache.put(keys[i], new Square(i, "Square " + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public Square hotRead() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt() & MASK]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 32; threads <<= 1) {
+            new Runner(new OptionsBuilder()
+                    .include(NearCacheBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import com.nishant.customcache.model.EntryTable;
+import com.nishant.customcache.model.KeyValuePair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads inside a single key type partition of growing size.
+ * <p>
+ * {@code linearScan} is the previous parallel stream filter over a set of key value pairs, kept here as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PartitionLookupBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int partitionSize;
+
+    private ShapeKey[] keys;
+    private final EntryTable<ShapeKey, Square> table = new EntryTable<>();
+    private final Set<KeyValuePair<ShapeKey, Square>> set = new HashSet<>();
+    private int next;
+
+    @Setup
+    public void setup() {
+        keys = new ShapeKey[partitionSize];
+        for (int i = 0; i < partitionSize; i++) {
+            keys[i] = new ShapeKey(i);
+            Square square = new Square(i, "Square " + i, i);
+            table.put(keys[i], square);
+            set.add(new KeyValuePair<>(keys[i], square));
+        }
+    }
+
+    private ShapeKey nextKey() {
+        int i = next + 1;
+        if (i == keys.length) {
+            i = 0;
+        }
+        next = i;
+        return keys[i];
+    }
+
+    @Benchmark
+    public Square table() {
+        return table.get(nextKey());
+    }
+
+    @Benchmark
+    public Optional<Square> linearScan() {
+        ShapeKey key = nextKey();
+        return set.parallelStream().filter(child -> child.getKey().equals(key)).map(KeyValuePair::getValue).findFirst();
+    }
+}
@@ -0,0 +1,75 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.IntKeyCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Int keys in an {@link IntKeyCache} against {@link ShapeKey} and boxed Integer keys in a {@link CustomCache}.
+ * Run with {@code -prof gc} to compare the allocation rate, the int key paths should report none.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class PrimitiveKeyBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int MASK = KEYS - 1;
+
+    private final CustomCache<Object, Object> shapeKeyCache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    private final CustomCache<Object, Object> integerCache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    private final IntKeyCache<Square> intKeyCache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).buildIntKeyCache();
+    private final Square[] squares = new Square[KEYS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < KEYS; i++) {
+            squares[i] = new Square(i, "Square " + i, i);
+            shapeKeyCache.put(new ShapeKey(i), squares[i]);
+            integerCache.put(i, squares[i]);
+            intKeyCache.put(i, squares[i]);
+        }
+    }
+
+    private int nextIndex() {
+        return next = (next + 1) & MASK;
+    }
+
+    @Benchmark
+    public Object shapeKeyGet() {
+        return shapeKeyCache.get(new ShapeKey(nextIndex()));
+    }
+
+    @Benchmark
+    public Object integerGet() {
+        return integerCache.get(nextIndex());
+    }
+
+    @Benchmark
+    public Object intKeyGet() {
+        return intKeyCache.get(nextIndex());
+    }
+
+    @Benchmark
+    public void integerPutRemove() {
+        int i = nextIndex();
+        integerCache.put(KEYS + i, squares[i]);
+        integerCache.remove(KEYS + i);
+    }
+
+    @Benchmark
+    public boolean intKeyPutRemove() {
+        int i = nextIndex();
+        intKeyCache.put(KEYS + i, squares[i]);
+        return intKeyCache.remove(KEYS + i);
+    }
+}
@@ -0,0 +1,78 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.common.ShapeKey;
+import com.nishant.customcache.common.Square;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single dominant key type, every key a {@link ShapeKey}, as its partition is split into more
+ * segments. With one segment every writer contends on the same lock, more segments let the writers of distinct keys
+ * proceed in parallel.
+ * Run {@link #main(String[])} to sweep from 1 to 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentedScalingBenchmark {
+
+    private static final int KEYS = 1 << 16;
+    private static final int MASK = KEYS - 1;
+
+    @Param({"1", "4", "16", "64"})
+    int segments;
+
+    /**
+     * Percentage of the operations that are puts
+     */
+    @Param({"10", "50"})
+    int writePercent;
+
+    private CustomCache<ShapeKey, Square> cache;
+    private final ShapeKey[] keys = new ShapeKey[KEYS];
+    private final Square[] squares = new Square[KEYS];
+
+    @Setup
+    public void setup() {
+        cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).segments(segments).build();
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new ShapeKey(i);
+            squares[i] = new Square(i, "Square " + i, i);
+            cache.put(keys[i], squares[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public Object oneKeyType() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt() & MASK;
+        if (random.nextInt(100) < writePercent) {
+            cache.put(keys[i], squares[i]);
+            return null;
+        }
+        return cache.get(keys[i]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads <<= 1) {
+            new Runner(new OptionsBuilder()
+                    .include(SegmentedScalingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
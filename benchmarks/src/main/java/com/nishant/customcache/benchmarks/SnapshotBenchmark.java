@@ -0,0 +1,75 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to dump a cache of int keys and values to a snapshot and to warm a new cache up from it.
+ * Keys and values go through a four byte serializer so that the measure is not dominated by Java serialization.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"10000000"})
+    int entries;
+
+    private CustomCache<Object, Object> cache;
+    private CustomCache<Object, Object> restored;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+        for (int i = 0; i < entries; i++) {
+            cache.put(i, i);
+        }
+        file = Files.createTempFile("snapshot-benchmark", ".snapshot");
+        cache.writeSnapshot(file, IntSerializer.INSTANCE, IntSerializer.INSTANCE);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyCache() {
+        restored = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long write() {
+        return cache.writeSnapshot(file, IntSerializer.INSTANCE, IntSerializer.INSTANCE);
+    }
+
+    @Benchmark
+    public long restore() {
+        return restored.readSnapshot(file, IntSerializer.INSTANCE, IntSerializer.INSTANCE);
+    }
+
+    private enum IntSerializer implements ValueSerializer<Object> {
+        INSTANCE;
+
+        @Override
+        public byte[] serialize(Object value) {
+            int i = (Integer) value;
+            return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+        }
+    }
+}
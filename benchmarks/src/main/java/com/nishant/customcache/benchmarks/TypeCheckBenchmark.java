@@ -0,0 +1,100 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.model.KeyTypeCacheEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the type safety check of a put as the hierarchy of the value class deepens from 1 to 16 classes below
+ * {@link Object}.
+ * <p>
+ * {@code walk} is the previous reflective walk up the superclass chain on every check, kept here as the baseline,
+ * {@code highestType} the memoized lookup and {@code put} the replacement of an entry of an existing key type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypeCheckBenchmark {
+
+    private static final int KEYS = 1024;
+    private static final int MASK = KEYS - 1;
+
+    @Param({"1", "4", "16"})
+    int depth;
+
+    private final CustomCache<Object, Object> cache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    private final Integer[] keys = new Integer[KEYS];
+    private Object value;
+    private Class<?> valueClass;
+    private int next;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        value = Class.forName(TypeCheckBenchmark.class.getName() + "$Depth" + depth).getDeclaredConstructor().newInstance();
+        valueClass = value.getClass();
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+            cache.put(keys[i], value);
+        }
+    }
+
+    @Benchmark
+    public Class<?> walk() {
+        Class<?> type = valueClass;
+        Class<?> highestType = type;
+        while (!type.equals(Object.class)) {
+            highestType = type;
+            type = type.getSuperclass();
+        }
+        return highestType;
+    }
+
+    @Benchmark
+    public Class<?> highestType() {
+        return KeyTypeCacheEntry.getHighestType(valueClass);
+    }
+
+    @Benchmark
+    public void put() {
+        next = (next + 1) & MASK;
+        cache.put(keys[next], value);
+    }
+
+    static class Depth1 {
+    }
+    static class Depth2 extends Depth1 {
+    }
+    static class Depth3 extends Depth2 {
+    }
+    static class Depth4 extends Depth3 {
+    }
+    static class Depth5 extends Depth4 {
+    }
+    static class Depth6 extends Depth5 {
+    }
+    static class Depth7 extends Depth6 {
+    }
+    static class Depth8 extends Depth7 {
+    }
+    static class Depth9 extends Depth8 {
+    }
+    static class Depth10 extends Depth9 {
+    }
+    static class Depth11 extends Depth10 {
+    }
+    static class Depth12 extends Depth11 {
+    }
+    static class Depth13 extends Depth12 {
+    }
+    static class Depth14 extends Depth13 {
+    }
+    static class Depth15 extends Depth14 {
+    }
+    static class Depth16 extends Depth15 {
+    }
+}
@@ -0,0 +1,41 @@
+package com.nishant.customcache.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipfian ranks over {@code [0, items)}, sampled by binary search over the precomputed cumulative distribution
+ */
+public final class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfDistribution(int items, double exponent) {
+        cumulative = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < items; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Pre-samples a sequence of ranks, so benchmarks do not pay for sampling in the measured loop
+     */
+    public int[] samples(int count, long seed) {
+        Random random = new Random(seed);
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = sample(random);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,72 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through workload over Zipfian distributed keys: a miss is followed by a put, as callers compute the value.
+ * Each thread replays its own pre-sampled sequence, so sampling stays out of the measured loop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipfianWorkloadBenchmark {
+
+    private static final int ITEMS = 1 << 17;
+    private static final int SAMPLES = 1 << 20;
+
+    @State(Scope.Benchmark)
+    public static class SharedCache {
+        @Param({"0.8", "0.99"})
+        double exponent;
+
+        /**
+         * Maximum size of the cache, 0 for an unbounded cache
+         */
+        @Param({"0", "8192"})
+        long maximumSize;
+
+        CustomCache<Object, Object> cache;
+        Integer[] keys;
+        ZipfDistribution distribution;
+
+        @Setup
+        public void setup() {
+            cache = maximumSize == 0
+                    ? CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build()
+                    : CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).maximumSize(maximumSize).build();
+            keys = new Integer[ITEMS];
+            for (int i = 0; i < ITEMS; i++) {
+                keys[i] = i;
+            }
+            distribution = new ZipfDistribution(ITEMS, exponent);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sequence {
+        int[] ranks;
+        int next;
+
+        @Setup
+        public void setup(SharedCache shared) {
+            ranks = shared.distribution.samples(SAMPLES, System.identityHashCode(this));
+        }
+    }
+
+    @Benchmark
+    public Object readThrough(SharedCache shared, Sequence sequence) {
+        int i = sequence.next = (sequence.next + 1) & (SAMPLES - 1);
+        Integer key = shared.keys[sequence.ranks[i]];
+        Object value = shared.cache.get(key);
+        if (value == null) {
+            shared.cache.put(key, key);
+            return key;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,204 @@
+package com.nishant.customcache.benchmarks.simulation;
+
+import com.nishant.customcache.CacheBuilder;
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.benchmarks.ZipfDistribution;
+import com.nishant.customcache.model.ExpirationPolicy;
+import com.nishant.customcache.services.ManualTicker;
+import com.nishant.customcache.services.TimingWheel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays timestamped access traces through a read-through CustomCache for several times to live and prints the hit
+ * ratio, the peak number of entries held and the expirations per second of traffic.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.nishant.customcache.benchmarks.simulation.ExpirationSimulator \
+ *     [keyType|afterWrite|afterAccess] [ttl seconds,...] [maximumSize] [trace file ...]
+ * </pre>
+ * The cache runs on a {@link ManualTicker} moved to the timestamp of every request, its expirations and sweeps fire
+ * on the replaying thread as the timing wheel is advanced, so a day of traffic replays in seconds. Trace files hold
+ * one request per line, a timestamp in milliseconds followed by the numeric key. Without trace files a synthetic day
+ * of Zipfian requests arriving at random is used.
+ */
+public final class ExpirationSimulator {
+
+    private static final long[] DEFAULT_TTL_SECONDS = {60, 600, 3600};
+    /**
+     * Requests between two samples of the number of entries
+     */
+    private static final int SAMPLE_EVERY = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        ExpirationPolicy policy = args.length > 0 ? policy(args[0]) : ExpirationPolicy.AFTER_WRITE;
+        long[] ttls = args.length > 1 ? parseTtls(args[1]) : DEFAULT_TTL_SECONDS;
+        long maximumSize = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+        Map<String, Trace> traces = new LinkedHashMap<>();
+        if (args.length > 3) {
+            for (int i = 3; i < args.length; i++) {
+                traces.put(Paths.get(args[i]).getFileName().toString(), readTrace(args[i]));
+            }
+        } else {
+            traces.put("zipf-0.9-day", poissonZipf(0.9, 1_000_000, TimeUnit.DAYS.toMillis(1)));
+        }
+        System.out.printf("%-20s %8s %12s %10s %14s %12s %10s%n",
+                "trace", "ttl (s)", "requests", "hit ratio", "peak entries", "expired/s", "wall (ms)");
+        for (Map.Entry<String, Trace> trace : traces.entrySet()) {
+            for (long ttl : ttls) {
+                long start = System.nanoTime();
+                Result result = simulate(trace.getValue(), policy, ttl, maximumSize);
+                System.out.printf("%-20s %8d %12d %9.2f%% %14d %12.2f %10d%n", trace.getKey(), ttl,
+                        trace.getValue().size(), 100 * result.hitRatio, result.peakEntries,
+                        result.expirationsPerSecond, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    static Result simulate(Trace trace, ExpirationPolicy policy, long ttlSeconds, long maximumSize) {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CacheBuilder<Object, Object> builder = CustomCache.builder()
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .recordStats();
+        if (policy == ExpirationPolicy.AFTER_WRITE) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        } else if (policy == ExpirationPolicy.AFTER_ACCESS) {
+            builder.expireAfterAccess(ttlSeconds, TimeUnit.SECONDS);
+        } else {
+            builder.expireAfter(ttlSeconds, TimeUnit.SECONDS);
+        }
+        if (maximumSize > 0) {
+            builder.maximumSize(maximumSize);
+        }
+        CustomCache<Long, Long> cache = builder.build();
+        long hits = 0;
+        long peakEntries = 0;
+        long now = trace.size() == 0 ? 0L : trace.times[0];
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.times[i] > now) {
+                ticker.advance(trace.times[i] - now, TimeUnit.MILLISECONDS);
+                now = trace.times[i];
+                wheel.advance();
+            }
+            Long key = trace.keys[i];
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+            if (i % SAMPLE_EVERY == 0) {
+                peakEntries = Math.max(peakEntries, cache.estimatedSize());
+            }
+        }
+        long expirations = cache.stats().getExpirationCount();
+        cache.close();
+        double seconds = trace.size() == 0 ? 0 : (trace.times[trace.size() - 1] - trace.times[0]) / 1000.0;
+        return new Result((double) hits / Math.max(1, trace.size()), peakEntries,
+                seconds == 0 ? 0 : expirations / seconds);
+    }
+
+    /**
+     * Zipfian keys whose requests arrive as a Poisson process spread over the duration
+     */
+    static Trace poissonZipf(double exponent, int requests, long durationMillis) {
+        int[] ranks = new ZipfDistribution(100_000, exponent).samples(requests, 42);
+        Random random = new Random(42);
+        double meanGap = (double) durationMillis / requests;
+        Trace trace = new Trace(requests);
+        double time = 0;
+        for (int i = 0; i < requests; i++) {
+            time += -meanGap * Math.log(1 - random.nextDouble());
+            trace.add((long) time, ranks[i]);
+        }
+        return trace;
+    }
+
+    static Trace readTrace(String file) throws IOException {
+        List<long[]> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length >= 2 && Character.isDigit(tokens[0].charAt(0))) {
+                    requests.add(new long[]{Long.parseLong(tokens[0]), Long.parseLong(tokens[1])});
+                }
+            }
+        }
+        Trace trace = new Trace(requests.size());
+        for (long[] request : requests) {
+            trace.add(request[0], request[1]);
+        }
+        return trace;
+    }
+
+    private static ExpirationPolicy policy(String name) {
+        switch (name) {
+            case "keyType":
+                return ExpirationPolicy.KEY_TYPE;
+            case "afterWrite":
+                return ExpirationPolicy.AFTER_WRITE;
+            case "afterAccess":
+                return ExpirationPolicy.AFTER_ACCESS;
+            default:
+                throw new IllegalArgumentException("Unknown expiration policy " + name);
+        }
+    }
+
+    private static long[] parseTtls(String list) {
+        String[] tokens = list.split(",");
+        long[] ttls = new long[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            ttls[i] = Long.parseLong(tokens[i].trim());
+        }
+        return ttls;
+    }
+
+    /**
+     * Requests in time order, kept in parallel arrays
+     */
+    static final class Trace {
+        private final long[] times;
+        private final long[] keys;
+        private int size;
+
+        Trace(int capacity) {
+            this.times = new long[capacity];
+            this.keys = new long[capacity];
+        }
+
+        void add(long timeMillis, long key) {
+            if (size > 0 && timeMillis < times[size - 1]) {
+                throw new IllegalArgumentException("Requests must be in time order, found " + timeMillis
+                        + " after " + times[size - 1]);
+            }
+            times[size] = timeMillis;
+            keys[size] = key;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    static final class Result {
+        final double hitRatio;
+        final long peakEntries;
+        final double expirationsPerSecond;
+
+        Result(double hitRatio, long peakEntries, double expirationsPerSecond) {
+            this.hitRatio = hitRatio;
+            this.peakEntries = peakEntries;
+            this.expirationsPerSecond = expirationsPerSecond;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.nishant.customcache.benchmarks.simulation;
+
+import com.nishant.customcache.CustomCache;
+import com.nishant.customcache.benchmarks.ZipfDistribution;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays access traces against a size bounded CustomCache and an LRU baseline and prints their hit ratios.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.nishant.customcache.benchmarks.simulation.HitRatioSimulator \
+ *     [maximumSize] [trace file ...]
+ * </pre>
+ * Without trace files synthetic Zipfian and scan-polluted Zipfian workloads are used. Trace files hold one
+ * request per line with the numeric key as first token, which covers the LIRS and ARC style traces.
+ */
+public final class HitRatioSimulator {
+
+    private static final int DEFAULT_MAXIMUM = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        int maximumSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAXIMUM;
+        System.out.printf("%-24s %12s %12s %12s%n", "trace", "requests", "w-tinylfu", "lru");
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                report(Paths.get(args[i]).getFileName().toString(), readTrace(args[i]), maximumSize);
+            }
+        } else {
+            report("zipf-0.9", zipf(0.9, 1_000_000), maximumSize);
+            report("zipf-0.9+scans", withScans(zipf(0.9, 1_000_000)), maximumSize);
+        }
+    }
+
+    private static void report(String name, long[] trace, int maximumSize) {
+        System.out.printf("%-24s %12d %11.2f%% %11.2f%%%n", name, trace.length,
+                100 * customCacheHitRatio(trace, maximumSize), 100 * lruHitRatio(trace, maximumSize));
+    }
+
+    static double customCacheHitRatio(long[] trace, int maximumSize) {
+        CustomCache<Long, Long> cache = CustomCache.builder()
+                .expireAfter(0, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .build();
+        long hits = 0;
+        for (long key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    static double lruHitRatio(long[] trace, int maximumSize) {
+        Map<Long, Long> lru = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > maximumSize;
+            }
+        };
+        long hits = 0;
+        for (long key : trace) {
+            if (lru.get(key) != null) {
+                hits++;
+            } else {
+                lru.put(key, key);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    static long[] zipf(double exponent, int requests) {
+        int[] ranks = new ZipfDistribution(100_000, exponent).samples(requests, 42);
+        long[] trace = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            trace[i] = ranks[i];
+        }
+        return trace;
+    }
+
+    /**
+     * Interleaves the trace with long sequential scans over keys that are never requested again
+     */
+    static long[] withScans(long[] trace) {
+        long[] polluted = new long[trace.length * 2];
+        long scanKey = Long.MAX_VALUE / 2;
+        for (int i = 0; i < trace.length; i++) {
+            polluted[2 * i] = trace[i];
+            polluted[2 * i + 1] = (i / 5_000) % 2 == 0 ? scanKey++ : trace[(i * 31) % trace.length];
+        }
+        return polluted;
+    }
+
+    static long[] readTrace(String file) throws IOException {
+        List<Long> keys = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                String[] tokens = line.trim().split("\\s+");
+                if (!tokens[0].isEmpty() && Character.isDigit(tokens[0].charAt(0))) {
+                    keys.add(Long.parseLong(tokens[0]));
+                }
+            }
+        }
+        long[] trace = new long[keys.size()];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = keys.get(i);
+        }
+        return trace;
+    }
+}
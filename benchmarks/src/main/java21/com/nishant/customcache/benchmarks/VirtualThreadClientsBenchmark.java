@@ -0,0 +1,91 @@
+package com.nishant.customcache.benchmarks;
+
+import com.nishant.customcache.CustomCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for 100k clients, each on its own virtual thread, to read through a cache whose loads block on a simulated
+ * 1ms store call, 10% of the clients writing instead. Every invocation starts from an empty cache.
+ * <p>
+ * With the common pool running the loads, a handful of carrier threads sleep through them one after the other.
+ * Run with {@code -jvmArgs -Djdk.tracePinnedThreads=full} to check that no client pins its carrier thread.
+ * Requires JDK 21, the {@code jdk21} profile of the benchmarks module compiles it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadClientsBenchmark {
+
+    private static final int KEYS = 1 << 14;
+    private static final int MASK = KEYS - 1;
+
+    @Param({"100000"})
+    int clients;
+
+    /**
+     * Executor of the loads and expirations: {@code virtual} threads, or the {@code commonPool}
+     */
+    @Param({"virtual", "commonPool"})
+    String loadExecutor;
+
+    private final Integer[] keys = new Integer[KEYS];
+    private ExecutorService virtualThreads;
+    private CustomCache<Integer, Integer> cache;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+        }
+        virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyCache() {
+        cache = "virtual".equals(loadExecutor)
+                ? CustomCache.builder().expireAfter(0, TimeUnit.SECONDS)
+                        .executor(virtualThreads).expirationExecutor(virtualThreads).build()
+                : CustomCache.builder().expireAfter(0, TimeUnit.SECONDS).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        virtualThreads.close();
+    }
+
+    @Benchmark
+    public void readThrough() {
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                clientThreads.execute(this::client);
+            }
+        }
+    }
+
+    private void client() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = keys[random.nextInt() & MASK];
+        if (random.nextInt(10) == 0) {
+            cache.put(key, key);
+        } else {
+            cache.getAsync(key, VirtualThreadClientsBenchmark::loadFromStore).join();
+        }
+    }
+
+    private static Integer loadFromStore(Integer key) {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return key;
+    }
+}
@@ -0,0 +1,487 @@
+package com.nishant.customcache;
+
+import com.nishant.customcache.interfaces.CacheLoader;
+import com.nishant.customcache.interfaces.CacheWriter;
+import com.nishant.customcache.interfaces.RemovalListener;
+import com.nishant.customcache.interfaces.Ticker;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import com.nishant.customcache.interfaces.Weigher;
+import com.nishant.customcache.model.ExpirationPolicy;
+import com.nishant.customcache.model.KeyTypeExpiry;
+import com.nishant.customcache.model.NearCache;
+import com.nishant.customcache.model.OffHeapStore;
+import com.nishant.customcache.persistence.Journal;
+import com.nishant.customcache.services.RemovalNotifier;
+import com.nishant.customcache.services.TimingWheel;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fluent configuration of a {@link CustomCache}.
+ * <pre>
+ * CustomCache&lt;Object, Object&gt; cache = CustomCache.builder()
+ *         .expireAfter(10, TimeUnit.SECONDS)
+ *         .expireAfter(ShapeKey.class, 5, TimeUnit.MINUTES)
+ *         .build();
+ * </pre>
+ * A non-positive duration means partitions of that key type never expire. By default a whole key type partition
+ * expires at once, {@link #expireAfterWrite(long, TimeUnit)} and {@link #expireAfterAccess(long, TimeUnit)} expire
+ * every entry on its own instead, with the per key type durations applying to each entry of that type.
+ * Without a maximum size or weight the cache is unbounded.
+ * <p>
+ * The cache never blocks inside a {@code synchronized} block and never uses parallel streams, so it can be shared
+ * by virtual threads. Give it executors of virtual threads to keep its background work off the common pool:
+ * <pre>
+ * ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+ * CustomCache&lt;Object, Object&gt; cache = CustomCache.builder()
+ *         .executor(virtualThreads)
+ *         .expirationExecutor(virtualThreads)
+ *         .build();
+ * </pre>
+ * Every cache schedules its timers on a timing wheel shared across the JVM, a cache holds no thread of its own until
+ * it journals or notifies removals. Close caches that are done with, {@link CustomCache#close()} cancels their timers
+ * and stops their threads.
+ */
+public class CacheBuilder<K, V> {
+
+    long defaultExpiry = 10;
+    TimeUnit defaultExpiryTimeUnit = TimeUnit.SECONDS;
+    ExpirationPolicy expirationPolicy = ExpirationPolicy.KEY_TYPE;
+    final List<KeyTypeExpiry> keyTypeExpiries = new ArrayList<>();
+    long maximumSize = UNSET;
+    long maximumWeight = UNSET;
+    Weigher<? super K, ? super V> weigher;
+    Executor executor = ForkJoinPool.commonPool();
+    Executor expirationExecutor;
+    TimingWheel timingWheel;
+    Ticker ticker = Ticker.systemTicker();
+    long refreshAfterWriteNanos;
+    CacheLoader<K, V> loader;
+    boolean recordStats;
+    ValueSerializer<V> valueSerializer;
+    int slabSize = OffHeapStore.DEFAULT_SLAB_SIZE;
+    Path journalDirectory;
+    ValueSerializer<K> journalKeySerializer;
+    ValueSerializer<V> journalValueSerializer;
+    long journalSyncIntervalMillis = Journal.DEFAULT_SYNC_INTERVAL_MILLIS;
+    long journalSegmentSize = Journal.DEFAULT_SEGMENT_SIZE;
+    CacheWriter<K, V> writer;
+    int writeBehindBatchSize;
+    long writeBehindDelayNanos;
+    RemovalListener<K, V> removalListener;
+    int removalBufferCapacity = RemovalNotifier.DEFAULT_CAPACITY;
+    int segments = 1;
+    final Set<Class<?>> nearCacheKeyTypes = new HashSet<>();
+    int nearCacheSlots = NearCache.DEFAULT_SLOTS;
+
+    static final long UNSET = -1;
+
+    CacheBuilder() {
+    }
+
+    /**
+     * Time to live of key types without a dedicated setting
+     */
+    public CacheBuilder<K, V> expireAfter(long duration, TimeUnit unit) {
+        this.defaultExpiry = duration;
+        this.defaultExpiryTimeUnit = requireUnit(unit);
+        return this;
+    }
+
+    /**
+     * Expires every entry once the duration has elapsed since it was last written
+     */
+    public CacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+        this.expirationPolicy = ExpirationPolicy.AFTER_WRITE;
+        return expireAfter(duration, unit);
+    }
+
+    /**
+     * Expires every entry once the duration has elapsed since it was last written or read
+     */
+    public CacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+        this.expirationPolicy = ExpirationPolicy.AFTER_ACCESS;
+        return expireAfter(duration, unit);
+    }
+
+    /**
+     * Time to live of the partition holding keys of exactly the given class, or of each of its entries
+     */
+    public CacheBuilder<K, V> expireAfter(Class<? extends K> keyType, long duration, TimeUnit unit) {
+        if (keyType == null) {
+            throw new IllegalArgumentException("Key type is required");
+        }
+        keyTypeExpiries.removeIf(keyTypeExpiry -> keyTypeExpiry.getKeyType() == keyType);
+        keyTypeExpiries.add(new KeyTypeExpiry(keyType, duration, requireUnit(unit)));
+        return this;
+    }
+
+    /**
+     * Bounds the number of entries across all key types, evicting with W-TinyLFU once exceeded
+     */
+    public CacheBuilder<K, V> maximumSize(long maximumSize) {
+        if (maximumWeight != UNSET) {
+            throw new IllegalStateException("Maximum weight was already set");
+        }
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * Splits the entries of every key type into the given number of segments by key hash, each under a lock of its
+     * own, so that the writers of a dominant key type stop contending on a single lock. The type safety rule and the
+     * time to live still apply to the key type as a whole. Off-heap, each segment allocates slabs of its own.
+     *
+     * @param segments a power of two, one by default
+     */
+    public CacheBuilder<K, V> segments(int segments) {
+        if (segments < 1 || Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException("Segments should be a positive power of two");
+        }
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * Serves the reads of a read-mostly key type from a small front kept by every reading thread, a hit then takes
+     * no lock and writes no shared memory. Any put, remove or expiry of the key type invalidates the copies of all of
+     * its entries, so the front only pays off for key types that are rarely written. Requires the default expiration
+     * of whole key types, no refresh, values kept on the heap and no maximum size or weight.
+     */
+    public CacheBuilder<K, V> nearCache(Class<?> keyType) {
+        if (keyType == null) {
+            throw new IllegalArgumentException("Key type is required");
+        }
+        nearCacheKeyTypes.add(keyType);
+        return this;
+    }
+
+    /**
+     * @param slots entries each thread keeps in its front, shared by every key type with a near cache, rounded up to
+     *              a power of two
+     * @see #nearCache(Class)
+     */
+    public CacheBuilder<K, V> nearCacheSlots(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("Near cache slots should be positive");
+        }
+        this.nearCacheSlots = slots;
+        return this;
+    }
+
+    /**
+     * Bounds the total weight of the entries across all key types, requires a {@link #weigher(Weigher)}
+     */
+    public CacheBuilder<K, V> maximumWeight(long maximumWeight) {
+        if (maximumSize != UNSET) {
+            throw new IllegalStateException("Maximum size was already set");
+        }
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum weight must not be negative");
+        }
+        this.maximumWeight = maximumWeight;
+        return this;
+    }
+
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> weigher(Weigher<? super K1, ? super V1> weigher) {
+        if (weigher == null) {
+            throw new IllegalArgumentException("Weigher is required");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.weigher = weigher;
+        return self;
+    }
+
+    /**
+     * Serves an entry the duration after it was written while reloading it once in the background with the
+     * {@link #loader(CacheLoader)}, so that reads of hot entries do not wait for a load when they expire
+     */
+    public CacheBuilder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Refresh duration must be positive");
+        }
+        this.refreshAfterWriteNanos = requireUnit(unit).toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Loader reloading the entries due for a refresh
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> loader(CacheLoader<K1, V1> loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader is required");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.loader = loader;
+        return self;
+    }
+
+    /**
+     * Keeps the values serialized in direct memory slabs, only the keys and the addresses of the values stay on the
+     * heap. Every read deserializes a copy of the value, so values should be small and cheap to serialize.
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> offHeap(ValueSerializer<V1> serializer) {
+        return offHeap(serializer, OffHeapStore.DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize size in bytes of the direct memory slabs, a power of two bounding the largest serialized value
+     * @see #offHeap(ValueSerializer)
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> offHeap(ValueSerializer<V1> serializer, int slabSize) {
+        if (serializer == null) {
+            throw new IllegalArgumentException("Serializer is required");
+        }
+        if (slabSize < 16 || Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("Slab size should be a power of two of at least 16 bytes");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.valueSerializer = serializer;
+        self.slabSize = slabSize;
+        return self;
+    }
+
+    /**
+     * Records every put, remove and expiry in an append-only journal kept in the directory, and rebuilds the cache
+     * from it when built. Writes do not wait for the disk: the journal is forced to disk once per
+     * {@link #journalSyncInterval(long, TimeUnit)}, so a crash loses at most the mutations of the last interval.
+     * The journal is compacted into a snapshot in the background once it grew by a few segments.
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> journal(Path directory, ValueSerializer<K1> keySerializer,
+                                                                     ValueSerializer<V1> valueSerializer) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Journal directory is required");
+        }
+        if (keySerializer == null || valueSerializer == null) {
+            throw new IllegalArgumentException("Key and value serializers are required");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.journalDirectory = directory;
+        self.journalKeySerializer = keySerializer;
+        self.journalValueSerializer = valueSerializer;
+        return self;
+    }
+
+    /**
+     * Longest time a journaled mutation waits before being forced to disk along with the others of the interval
+     */
+    public CacheBuilder<K, V> journalSyncInterval(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive");
+        }
+        this.journalSyncIntervalMillis = Math.max(1L, requireUnit(unit).toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Size in bytes from which the journal rolls to a new segment
+     */
+    public CacheBuilder<K, V> journalSegmentSize(long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.journalSegmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Writes every put and remove through to the store backing the cache before returning.
+     * Evictions and expirations are not written, and neither are the values loaded into the cache.
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> writer(CacheWriter<K1, V1> writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException("Writer is required");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.writer = writer;
+        return self;
+    }
+
+    /**
+     * Writes the puts and removes to the {@link #writer(CacheWriter)} in the background instead, keeping the store
+     * latency off the callers. Only the last mutation of a key is written, batched with the other pending keys of its
+     * key type, once as many keys as the batch size are pending or once the oldest pending mutation waited for the
+     * delay. Flushes run on the {@link #executor(Executor)}.
+     * <p>
+     * Until it is flushed, a mutation is only visible in the cache: a load of an evicted key may read an older value
+     * from the store, call {@link CustomCache#flushWrites()} where that matters.
+     */
+    public CacheBuilder<K, V> writeBehind(int batchSize, long delay, TimeUnit unit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Write behind delay must be positive");
+        }
+        this.writeBehindBatchSize = batchSize;
+        this.writeBehindDelayNanos = requireUnit(unit).toNanos(delay);
+        return this;
+    }
+
+    /**
+     * Notifies the listener of every entry leaving the cache, with the cause, in batches on a dedicated thread
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> removalListener(RemovalListener<K1, V1> listener) {
+        return removalListener(listener, RemovalNotifier.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param bufferCapacity removals buffered while the listener is busy, further removals are dropped and counted
+     * @see #removalListener(RemovalListener)
+     */
+    public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> removalListener(RemovalListener<K1, V1> listener,
+                                                                             int bufferCapacity) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Removal listener is required");
+        }
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive");
+        }
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        self.removalListener = listener;
+        self.removalBufferCapacity = bufferCapacity;
+        return self;
+    }
+
+    /**
+     * Records hits, misses, loads, evictions, expirations, lock waits and get and put latencies, per key type
+     */
+    public CacheBuilder<K, V> recordStats() {
+        this.recordStats = true;
+        return this;
+    }
+
+    /**
+     * Executor running asynchronous loads, refreshes and write behind flushes, the common fork join pool by default.
+     * Loads blocking on I/O should not hold up the common pool, give them an executor of their own, such as
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} on JDK 21.
+     */
+    public CacheBuilder<K, V> executor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is required");
+        }
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Executor running the expirations of key types and the sweeps of expired entries, which run on the expiration
+     * thread by default. Handing them to an executor of virtual threads keeps a partition lock held by a long bulk
+     * operation from delaying the other timers.
+     */
+    public CacheBuilder<K, V> expirationExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is required");
+        }
+        this.expirationExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Timing wheel firing the timers of the cache instead of the wheel shared by every cache of the JVM. The wheel
+     * belongs to the caller, closing the cache cancels its timers but leaves the wheel running.
+     */
+    public CacheBuilder<K, V> timingWheel(TimingWheel timingWheel) {
+        if (timingWheel == null) {
+            throw new IllegalArgumentException("Timing wheel is required");
+        }
+        this.timingWheel = timingWheel;
+        return this;
+    }
+
+    /**
+     * Source of the time the entries expire and refresh by, the system clock by default. The timers must run on the
+     * same time, so a ticker comes with a {@link #timingWheel(TimingWheel)} reading it:
+     * <pre>
+     * ManualTicker ticker = new ManualTicker();
+     * TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+     * CustomCache&lt;Object, Object&gt; cache = CustomCache.builder().ticker(ticker).timingWheel(wheel).build();
+     * ticker.advance(1, TimeUnit.HOURS);
+     * wheel.advance();
+     * </pre>
+     */
+    public CacheBuilder<K, V> ticker(Ticker ticker) {
+        if (ticker == null) {
+            throw new IllegalArgumentException("Ticker is required");
+        }
+        this.ticker = ticker;
+        return this;
+    }
+
+    public <K1 extends K, V1 extends V> CustomCache<K1, V1> build() {
+        if ((weigher == null) != (maximumWeight == UNSET)) {
+            throw new IllegalStateException("Maximum weight and weigher must be configured together");
+        }
+        if (refreshAfterWriteNanos > 0 && loader == null) {
+            throw new IllegalStateException("Refresh after write requires a loader");
+        }
+        if (writeBehindBatchSize > 0 && writer == null) {
+            throw new IllegalStateException("Write behind requires a writer");
+        }
+        if (!nearCacheKeyTypes.isEmpty() && (expirationPolicy != ExpirationPolicy.KEY_TYPE
+                || refreshAfterWriteNanos > 0 || valueSerializer != null)) {
+            throw new IllegalStateException("Near cache requires key type expiration, no refresh and on-heap values");
+        }
+        if (!nearCacheKeyTypes.isEmpty() && (maximumSize != UNSET || maximumWeight != UNSET)) {
+            // hits served by the near cache never reach the eviction policy, the hottest keys would be evicted first
+            throw new IllegalStateException("Near cache cannot be combined with a maximum size or weight");
+        }
+        checkTicker();
+        @SuppressWarnings("unchecked")
+        CacheBuilder<K1, V1> self = (CacheBuilder<K1, V1>) this;
+        CustomCache<K1, V1> cache = new CustomCache<>(self);
+        cache.start();
+        return cache;
+    }
+
+    /**
+     * Builds a cache of int keys, supporting the expiration settings only.
+     * The setting of {@code expireAfter(Integer.class, ...)} applies to it.
+     */
+    public <V1 extends V> IntKeyCache<V1> buildIntKeyCache() {
+        checkTicker();
+        return new IntKeyCache<>(this);
+    }
+
+    /**
+     * Builds a cache of long keys, supporting the expiration settings only.
+     * The setting of {@code expireAfter(Long.class, ...)} applies to it.
+     */
+    public <V1 extends V> LongKeyCache<V1> buildLongKeyCache() {
+        checkTicker();
+        return new LongKeyCache<>(this);
+    }
+
+    /**
+     * Checks that the timers run on the time of the ticker, the shared wheel reads the system clock
+     */
+    private void checkTicker() {
+        Ticker wheelTicker = timingWheel == null ? Ticker.systemTicker() : timingWheel.getTicker();
+        if (wheelTicker != ticker) {
+            throw new IllegalStateException("Ticker and timing wheel must be configured together");
+        }
+    }
+
+    private static TimeUnit requireUnit(TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("Time unit is required");
+        }
+        return unit;
+    }
+}
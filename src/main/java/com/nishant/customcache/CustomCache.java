@@ -2,137 +2,1431 @@ package com.nishant.customcache;
 
 import com.nishant.customcache.annotations.GuardedBy;
 import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.eviction.PolicyNode;
+import com.nishant.customcache.eviction.WindowTinyLfuPolicy;
+import com.nishant.customcache.interfaces.CacheLoader;
+import com.nishant.customcache.interfaces.CacheWriter;
+import com.nishant.customcache.interfaces.ValueSerializer;
 import com.nishant.customcache.interfaces.ExpirableItem;
 import com.nishant.customcache.interfaces.Expirable;
+import com.nishant.customcache.interfaces.RemovalListener;
+import com.nishant.customcache.interfaces.Ticker;
+import com.nishant.customcache.interfaces.Weigher;
+import com.nishant.customcache.model.ExpirationPolicy;
 import com.nishant.customcache.model.KeyTypeCacheEntry;
+import com.nishant.customcache.model.KeyTypeExpiry;
+import com.nishant.customcache.model.KeyTypeIndex;
+import com.nishant.customcache.model.NearCache;
+import com.nishant.customcache.persistence.Journal;
+import com.nishant.customcache.persistence.JournalReader;
+import com.nishant.customcache.persistence.SnapshotReader;
+import com.nishant.customcache.persistence.SnapshotWriter;
+import com.nishant.customcache.persistence.WriteBehindQueue;
 import com.nishant.customcache.services.ExpirationService;
+import com.nishant.customcache.services.RemovalNotifier;
+import com.nishant.customcache.stats.CacheStats;
+import com.nishant.customcache.stats.CacheStatsMBean;
+import com.nishant.customcache.stats.ConcurrentStatsCounter;
+import com.nishant.customcache.stats.KeyTypeStatsCounters;
+import com.nishant.customcache.stats.StatsCounter;
 
-import java.util.*;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
+/**
+ * Reads are lock free: the key type index is published copy-on-write and every partition serves
+ * optimistic reads validated against its own stamp. Writes only lock the partition they touch, the
+ * structural lock is taken just to create or drop a key type partition.
+ * <p>
+ * Loading reads run at most one load per key at a time, concurrent callers of the same key wait for it.
+ * Entries due for a refresh keep being served while a single reload runs on the executor.
+ * Bulk operations group their keys by key type and acquire the lock of each partition once.
+ * Statistics are opt-in, a cache built without {@link CacheBuilder#recordStats()} does not even read the clock.
+ * Values can be kept serialized off-heap with {@link CacheBuilder#offHeap(ValueSerializer)}, reads then return copies.
+ * A cache built with {@link CacheBuilder#journal(Path, ValueSerializer, ValueSerializer)} journals its mutations and
+ * rebuilds itself from the journal when built again after a crash.
+ * Puts and removes are written to the {@link CacheBuilder#writer(CacheWriter)} synchronously, or queued, coalesced
+ * and flushed in batches per key type in the background with {@link CacheBuilder#writeBehind(int, long, TimeUnit)}.
+ * Racing puts and removes of a key reach the store in the order they mutated the cache.
+ * Entries leaving the cache are reported to the {@link CacheBuilder#removalListener(RemovalListener)} from a thread
+ * of its own, partitions only buffer them under their lock.
+ * Timers run on a timing wheel shared by every cache, {@link #close()} cancels them and stops the threads of the
+ * journal and of the removal listener.
+ */
 @ThreadSafe
-public class CustomCache<K, V> implements Expirable {
+public class CustomCache<K, V> implements Expirable, AutoCloseable {
 
     public CustomCache() {
+        this(new CacheBuilder<>());
     }
 
-    @GuardedBy("lock")
-    private final Set<KeyTypeCacheEntry<K, V>> keyTypeCache = new LinkedHashSet<>();
+    CustomCache(CacheBuilder<K, V> builder) {
+        this.defaultExpiry = builder.defaultExpiry;
+        this.defaultExpiryTimeUnit = builder.defaultExpiryTimeUnit;
+        this.expirationPolicy = builder.expirationPolicy;
+        this.keyTypeExpiries = builder.keyTypeExpiries.toArray(new KeyTypeExpiry[0]);
+        this.weigher = builder.weigher;
+        this.executor = builder.executor;
+        this.ticker = builder.ticker;
+        this.cacheExpirationService = builder.timingWheel == null ? new ExpirationService(builder.expirationExecutor)
+                : new ExpirationService(builder.timingWheel, builder.expirationExecutor);
+        this.loader = builder.loader;
+        this.recordStats = builder.recordStats;
+        this.nearCache = builder.nearCacheKeyTypes.isEmpty() ? null : new NearCache<>(builder.nearCacheSlots);
+        this.cacheStats = recordStats ? new ConcurrentStatsCounter() : StatsCounter.disabled();
+        this.writer = builder.writer;
+        this.writeBehind = builder.writeBehindBatchSize == 0 ? null : new WriteBehindQueue<>(builder.writer,
+                builder.writeBehindBatchSize, builder.writeBehindDelayNanos, TimeUnit.NANOSECONDS, executor,
+                cacheExpirationService);
+        this.writeOrder = builder.writer == null ? null : newLocks(WRITE_ORDER_LOCKS);
+        long maximum = builder.maximumWeight != CacheBuilder.UNSET ? builder.maximumWeight : builder.maximumSize;
+        this.evictionPolicy = maximum == CacheBuilder.UNSET ? null : new WindowTinyLfuPolicy(maximum,
+                builder.maximumWeight != CacheBuilder.UNSET);
+        this.journalKeySerializer = builder.journalKeySerializer;
+        this.journalValueSerializer = builder.journalValueSerializer;
+        this.removalNotifier = builder.removalListener == null ? null
+                : new RemovalNotifier<>(builder.removalListener, builder.valueSerializer, builder.removalBufferCapacity);
+        try {
+            this.journal = builder.journalDirectory == null ? null : Journal.open(builder.journalDirectory,
+                    journalKeySerializer, journalValueSerializer, builder.journalSyncIntervalMillis,
+                    TimeUnit.MILLISECONDS, builder.journalSegmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.partitionSettings = new KeyTypeCacheEntry.Settings<K, V>()
+                .expirationPolicy(expirationPolicy)
+                .evictionPolicy(evictionPolicy)
+                .refresh(builder.refreshAfterWriteNanos, builder.refreshAfterWriteNanos > 0 ? this::refresh : null)
+                .stats(this::statsFor)
+                .offHeap(builder.valueSerializer, builder.slabSize)
+                .journal(journal)
+                .removals(removalNotifier)
+                .ticker(ticker)
+                .segments(builder.segments)
+                .versionedKeyTypes(new HashSet<>(builder.nearCacheKeyTypes));
+    }
+
+    /**
+     * Mutates the state by rebuilding the cache from its journal, if any, then starting the journal and the removal
+     * listener. Called once by the builder after construction, so that no background work sees a cache still being
+     * constructed.
+     */
+    void start() {
+        if (journal != null) {
+            try {
+                recover();
+                journal.start(new CompactionTrigger(this));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (removalNotifier != null) {
+            // after the recovery, replayed removals are not notified
+            removalNotifier.start();
+        }
+    }
 
-    private final ExpirationService cacheExpirationService = new ExpirationService();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    public static CacheBuilder<Object, Object> builder() {
+        return new CacheBuilder<>();
+    }
+
+    /**
+     * Period and slot budget of the sweep removing expired entries, small enough to never stall a writer for long
+     */
+    private static final long CLEAN_UP_INTERVAL_MILLIS = 250;
+    private static final int CLEAN_UP_BATCH = 4096;
+    /**
+     * Slots copied under one read lock acquisition by a snapshot, and entries restored under one write lock
+     */
+    private static final int SNAPSHOT_BATCH = 1024;
+    /**
+     * Locks ordering the mutations of the keys with their writes to the store, one bit of a long per lock
+     */
+    private static final int WRITE_ORDER_LOCKS = 64;
+
+    @GuardedBy("structureLock")
+    private final KeyTypeIndex<K, V> keyTypeCache = new KeyTypeIndex<>();
+
+    private final ExpirationService cacheExpirationService;
+    private final Lock structureLock = new ReentrantLock();
+    private final long defaultExpiry;
+    private final TimeUnit defaultExpiryTimeUnit;
+    private final ExpirationPolicy expirationPolicy;
+    private final KeyTypeExpiry[] keyTypeExpiries;
+    private final WindowTinyLfuPolicy evictionPolicy;
+    private final Weigher<? super K, ? super V> weigher;
+    private final Executor executor;
+    /**
+     * Source of the time entries expire and refresh by, statistics time the work on the system clock
+     */
+    private final Ticker ticker;
+    private final CacheLoader<K, V> loader;
+    /**
+     * Loads in flight, a key is only mapped while its load runs
+     */
+    private final ConcurrentMap<K, Load<V>> loads = new ConcurrentHashMap<>();
+    private final boolean recordStats;
+    /**
+     * Settings shared by every key type cache: eviction, refresh, off-heap values, journal, segments and versioning
+     */
+    private final KeyTypeCacheEntry.Settings<K, V> partitionSettings;
+    /**
+     * Copies of the entries of the key types built with a near cache, null when there are none
+     */
+    private final NearCache<K, V> nearCache;
+    /**
+     * Counters of every key type seen, holding the key classes weakly
+     */
+    private final KeyTypeStatsCounters keyTypeStats = new KeyTypeStatsCounters();
+    /**
+     * Counter of what belongs to no key type: structural lock waits and bulk loads
+     */
+    private final StatsCounter cacheStats;
+    /**
+     * Journal of the mutations and serializers of its records, null when the cache is not journaled
+     */
+    private final Journal<K, V> journal;
+    private final ValueSerializer<K> journalKeySerializer;
+    private final ValueSerializer<V> journalValueSerializer;
+    /**
+     * Store the puts and removes are written to, null when the cache is not backed by a store
+     */
+    private final CacheWriter<K, V> writer;
+    /**
+     * Mutations waiting to be written to the store, null when they are written through
+     */
+    private final WriteBehindQueue<K, V> writeBehind;
+    /**
+     * Locks held from the mutation of a key until its write to the store is written or queued, so that racing puts
+     * and removes of a key reach the store in the order they mutated the cache, null when the cache is not backed by
+     * a store
+     */
+    private final Lock[] writeOrder;
+    /**
+     * Notifier of the entries leaving the cache, null without a removal listener
+     */
+    private final RemovalNotifier<K, V> removalNotifier;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    @GuardedBy("structureLock") private boolean cleanUpScheduled;
+    @GuardedBy("clean up task") private int cleanUpCursor;
 
     @Override
     @SuppressWarnings("unchecked")
     public final void expire(ExpirableItem item) {
-        removeCacheEntry((KeyTypeCacheEntry<K, V>) item);
+        KeyTypeCacheEntry<K, V> keyTypeCacheEntry = (KeyTypeCacheEntry<K, V>) item;
+        lockStructure();
+        try {
+            keyTypeCacheEntry.getStats().recordExpirations(keyTypeCacheEntry.retire());
+            keyTypeCache.remove(keyTypeCacheEntry);
+        } finally {
+            structureLock.unlock();
+        }
     }
 
+    /**
+     * Time to live of key types without a dedicated setting
+     */
     @Override
     public long getExpiry() {
-        return 10;
+        return defaultExpiry;
     }
 
     @Override
     public TimeUnit getExpiryTimeUnit() {
-        return TimeUnit.SECONDS;
+        return defaultExpiryTimeUnit;
     }
 
     /**
      * Return the value associated to key without mutating the state.
      */
     public V get(K key) {
-        lock.readLock().lock();
+        if (!recordStats) {
+            return lookup(key);
+        }
+        long start = System.nanoTime();
+        V value = nearCache == null ? null : nearCache.get(key);
+        KeyTypeCacheEntry<K, V> keyTypeCacheEntry = null;
+        if (value == null) {
+            keyTypeCacheEntry = getKeyCacheEntry(key);
+            value = keyTypeCacheEntry == null ? null : read(keyTypeCacheEntry, key);
+        }
+        StatsCounter stats = keyTypeCacheEntry == null ? statsFor(key.getClass()) : keyTypeCacheEntry.getStats();
+        if (value == null) {
+            stats.recordMisses(1);
+        } else {
+            stats.recordHits(1);
+        }
+        stats.recordGetLatency(System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * Returns the value associated to key without mutating the state or recording statistics
+     */
+    private V lookup(K key) {
+        if (nearCache != null) {
+            V value = nearCache.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        KeyTypeCacheEntry<K, V> keyTypeCacheEntry = getKeyCacheEntry(key);
+        return keyTypeCacheEntry == null ? null : read(keyTypeCacheEntry, key);
+    }
+
+    /**
+     * Returns the live value of the key in the partition, copying it to the near cache of the calling thread when
+     * its key type has one
+     */
+    private V read(KeyTypeCacheEntry<K, V> partition, K key) {
+        if (!partition.isVersioned()) {
+            return partition.getEntry(key);
+        }
+        long version = partition.getVersion();
+        V value = partition.getEntry(key);
+        if (value != null) {
+            nearCache.put(key, value, partition, version);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value associated to key, loading and adding it on a miss.
+     * At most one load per key runs at a time: concurrent callers wait for it and share its value or failure.
+     * A null value is returned as is and not added, a value breaking the type safety rule of its key type fails the load.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        requireLoader(loader);
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        Load<V> load = new Load<>();
+        Load<V> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight == null) {
+            return load(key, loader, load);
+        }
+        if (inFlight.owner == Thread.currentThread()) {
+            throw new IllegalStateException("Recursive load of key [" + key + "]");
+        }
         try {
-            return getKeyCacheEntry(key).flatMap(keyTypeCacheEntry -> keyTypeCacheEntry.getEntry(key))
-                    .orElse(null);
+            return inFlight.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the value associated to key, loading and adding it on the configured executor on a miss,
+     * with the same single load per key guarantee as {@link #get(Object, Function)}
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader) {
+        requireLoader(loader);
+        V value = get(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        Load<V> load = new Load<>();
+        Load<V> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight.thenApply(Function.identity());
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load(key, loader, load);
+                } catch (RuntimeException | Error e) {
+                    // already delivered through the future
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+        // callers get a dependent future, so completing or cancelling it cannot affect the other waiters
+        return load.thenApply(Function.identity());
+    }
+
+    /**
+     * Mutates the state by running the load registered for the key, unless a previous load added the value meanwhile
+     */
+    private V load(K key, Function<? super K, ? extends V> loader, Load<V> load) {
+        load.owner = Thread.currentThread();
+        try {
+            V value = lookup(key);
+            if (value == null) {
+                value = timedLoad(key, () -> loader.apply(key));
+                if (value != null) {
+                    putEntry(key, value);
+                }
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
         } finally {
-            lock.readLock().unlock();
+            loads.remove(key, load);
         }
+    }
 
+    private static void requireLoader(Object loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader is required");
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
     }
 
     /**
      * Mutates the state by adding new entry in value cache and/or
-     * logic to remove its associated key type cache
+     * logic to remove its associated key type cache, then writes it to the store backing the cache, if any
      */
     public void put(K key, V value) {
-        lock.writeLock().lock();
+        if (writeOrder == null) {
+            putEntry(key, value);
+            return;
+        }
+        Lock lock = writeOrder[writeOrderIndex(key)];
+        lock.lock();
         try {
-            KeyTypeCacheEntry<K, V> cacheEntry =
-                    existingKeyEntryHandling(key, value)
-                            .orElse(addKeyCacheEntry(key, value));
-            cacheEntry.addEntry(key, value);
+            putEntry(key, value);
+            if (writeBehind != null) {
+                writeBehind.write(key, value);
+            } else {
+                writer.write(key, value);
+            }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
     /**
-     * Mutates the state by removing an entry in value cache
-     * and/or invoking logic to remove its associated  key type cache
+     * Mutates the state by adding the entry without writing it to the store
      */
-    public boolean remove(K key) {
+    private void putEntry(K key, V value) {
+        long start = recordStats ? System.nanoTime() : 0L;
+        KeyTypeCacheEntry<K, V> cacheEntry = addEntry(key, value, weigh(key, value));
+        if (evictionPolicy != null) {
+            evictEntries();
+        }
+        if (recordStats) {
+            cacheEntry.getStats().recordPutLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Mutates the state by adding the entry to its key type cache, creating the cache if needed
+     *
+     * @return the key type cache the entry was added to
+     */
+    private KeyTypeCacheEntry<K, V> addEntry(K key, V value, int weight) {
+        KeyTypeCacheEntry<K, V> cacheEntry = existingKeyEntryHandling(key, value);
+        if (cacheEntry == null) {
+            cacheEntry = addKeyCacheEntry(key, value);
+        }
+        while (!cacheEntry.addEntry(key, value, weight)) {
+            // the partition was retired by a concurrent remove or expiry, resolve it again under the structural lock
+            cacheEntry = addKeyCacheEntry(key, value);
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Visits the value associated to each present key without mutating the state.
+     * Keys are grouped by key type, every partition is probed under a single stamp or read lock.
+     */
+    public void getAll(Iterable<? extends K> keys, BiConsumer<? super K, ? super V> action) {
+        KeyTypeGroups<K, V, List<K>> groups = groupByKeyType(keys);
+        for (int i = 0; i < groups.size(); i++) {
+            KeyTypeCacheEntry<K, V> cacheEntry = groups.cacheEntryAt(i);
+            List<K> group = groups.groupAt(i);
+            if (!recordStats) {
+                cacheEntry.getEntries(group, action);
+                continue;
+            }
+            int[] hits = new int[1];
+            cacheEntry.getEntries(group, (key, value) -> {
+                hits[0]++;
+                action.accept(key, value);
+            });
+            cacheEntry.getStats().recordHits(hits[0]);
+            cacheEntry.getStats().recordMisses(group.size() - hits[0]);
+        }
+    }
+
+    /**
+     * Returns the values associated to the present keys in a map sized for all of them, without mutating the state
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> values = new HashMap<>(mapCapacity(keys.size()));
+        getAll(keys, values::put);
+        return values;
+    }
+
+    /**
+     * Returns the values associated to the keys, loading all the misses with a single
+     * {@link CacheLoader#loadAll(Set)} call and adding them. Unlike {@link #get(Object, Function)}
+     * concurrent bulk loads of the same keys are not coalesced.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys, CacheLoader<K, V> loader) {
+        requireLoader(loader);
+        Map<K, V> values = getAll(keys);
+        if (values.size() == keys.size()) {
+            return values;
+        }
+        Set<K> misses = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (!values.containsKey(key)) {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) {
+            return values;
+        }
+        Map<K, V> loaded = new HashMap<>(mapCapacity(misses.size()));
+        long start = recordStats ? System.nanoTime() : 0L;
+        Map<K, V> loadedAll;
+        try {
+            loadedAll = loader.loadAll(misses);
+        } catch (RuntimeException | Error e) {
+            if (recordStats) {
+                cacheStats.recordLoadFailure(System.nanoTime() - start);
+            }
+            throw e;
+        }
+        if (recordStats) {
+            cacheStats.recordLoadSuccess(System.nanoTime() - start);
+        }
+        loadedAll.forEach((key, value) -> {
+            if (key != null && value != null) {
+                loaded.put(key, value);
+            }
+        });
+        putEntries(loaded);
+        for (K key : misses) {
+            V value = loaded.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Mutates the state by adding the entries, acquiring the lock of every existing key type cache once.
+     * The type safety rule is checked for every entry before any is added to an existing key type cache,
+     * entries of key types without a cache yet are added one by one. The entries are then written to the store backing
+     * the cache, if any, in one batch per key type.
+     */
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        if (writeOrder == null) {
+            putEntries(entries);
+            return;
+        }
+        long locked = lockWriteOrder(entries.keySet());
+        try {
+            putEntries(entries);
+            if (writeBehind != null) {
+                entries.forEach(writeBehind::write);
+            } else {
+                for (Map<K, V> group : groupByClass(entries.keySet(), entries::get)) {
+                    writer.writeAll(group);
+                }
+            }
+        } finally {
+            unlockWriteOrder(locked);
+        }
+    }
+
+    /**
+     * Mutates the state by adding the entries without writing them to the store
+     */
+    private void putEntries(Map<? extends K, ? extends V> entries) {
+        KeyTypeGroups<K, V, Batch<K, V>> batches = new KeyTypeGroups<>(entries.size());
+        Batch<K, V> newKeyTypes = new Batch<>(8);
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            K key = entry.getKey();
+            V value = entry.getValue();
+            int weight = weigh(key, value);
+            KeyTypeCacheEntry<K, V> cacheEntry = existingKeyEntryHandling(key, value);
+            (cacheEntry == null ? newKeyTypes : batches.get(cacheEntry, Batch::new)).add(key, value, weight);
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            Batch<K, V> batch = batches.groupAt(i);
+            if (!batches.cacheEntryAt(i).addEntries(batch.keys, batch.values, batch.weights)) {
+                // retired concurrently, resolve a live key type cache per entry
+                batch.forEach(this::addEntry);
+            }
+        }
+        newKeyTypes.forEach(this::addEntry);
+        if (evictionPolicy != null) {
+            evictEntries();
+        }
+    }
+
+    /**
+     * Mutates the state by removing the entries of the keys, acquiring the lock of every key type cache once
+     * and dropping the key type caches left empty. Every key is deleted from the store backing the cache, if any,
+     * cached or not, in one batch per key type.
+     *
+     * @return number of entries removed
+     */
+    public int removeAll(Iterable<? extends K> keys) {
+        if (writeOrder == null) {
+            return removeEntries(keys);
+        }
+        long locked = lockWriteOrder(keys);
+        try {
+            int removed = removeEntries(keys);
+            if (writeBehind != null) {
+                keys.forEach(writeBehind::delete);
+            } else {
+                for (Map<K, V> group : groupByClass(keys, key -> null)) {
+                    writer.deleteAll(group.keySet());
+                }
+            }
+            return removed;
+        } finally {
+            unlockWriteOrder(locked);
+        }
+    }
+
+    /**
+     * Mutates the state by removing the entries without deleting them from the store
+     */
+    private int removeEntries(Iterable<? extends K> keys) {
+        int removed = 0;
+        KeyTypeGroups<K, V, List<K>> groups = groupByKeyType(keys);
+        for (int i = 0; i < groups.size(); i++) {
+            KeyTypeCacheEntry<K, V> cacheEntry = groups.cacheEntryAt(i);
+            int removedFromCacheEntry = cacheEntry.removeEntries(groups.groupAt(i));
+            if (removedFromCacheEntry > 0 && cacheEntry.isEmpty()) {
+                removeCacheEntry(cacheEntry);
+            }
+            removed += removedFromCacheEntry;
+        }
+        return removed;
+    }
+
+    /**
+     * Acquires the write order locks of the keys in ascending order, so that two batches never wait on each other
+     *
+     * @return bits of the locks acquired
+     */
+    private long lockWriteOrder(Iterable<? extends K> keys) {
+        long locks = 0L;
+        for (K key : keys) {
+            locks |= 1L << writeOrderIndex(key);
+        }
+        for (long remaining = locks; remaining != 0L; remaining &= remaining - 1) {
+            writeOrder[Long.numberOfTrailingZeros(remaining)].lock();
+        }
+        return locks;
+    }
+
+    private static int writeOrderIndex(Object key) {
+        return (key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(WRITE_ORDER_LOCKS));
+    }
+
+    private void unlockWriteOrder(long locks) {
+        for (long remaining = locks; remaining != 0L; remaining &= remaining - 1) {
+            writeOrder[Long.numberOfTrailingZeros(remaining)].unlock();
+        }
+    }
+
+    private static Lock[] newLocks(int count) {
+        Lock[] locks = new Lock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * Returns the keys grouped by their class, in the order of their first key, mapped to their value
+     */
+    private Collection<Map<K, V>> groupByClass(Iterable<? extends K> keys, Function<? super K, ? extends V> values) {
+        Map<Class<?>, Map<K, V>> groups = new LinkedHashMap<>();
+        for (K key : keys) {
+            groups.computeIfAbsent(key.getClass(), keyType -> new LinkedHashMap<>()).put(key, values.apply(key));
+        }
+        return groups.values();
+    }
+
+    /**
+     * Blocks until every put and remove queued for the store backing the cache is written
+     *
+     * @throws RuntimeException thrown by the writer, the failed mutations stay queued and are retried in the background
+     */
+    public void flushWrites() {
+        if (writeBehind == null) {
+            throw new IllegalStateException("Writes are not queued, build the cache with writeBehind(...)");
+        }
+        writeBehind.flush();
+    }
+
+    /**
+     * Mutates the state by stopping the background work of the cache: cancels its pending expirations and sweeps,
+     * writes the mutations queued for the store, closes the journal and delivers the removals buffered so far.
+     * The entries stay readable but no longer expire, later mutations are written through to the store but neither
+     * journaled nor notified. Closing again does nothing.
+     *
+     * @throws RuntimeException thrown by the writer, or an {@link UncheckedIOException} of the journal, once every
+     *                          part of the cache was closed. Mutations the writer failed on stay queued until
+     *                          {@link #flushWrites()} is called.
+     */
+    @Override
+    public void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        try {
+            // before the timers are cancelled, the flush hands its failures back to the queue
+            if (writeBehind != null) {
+                writeBehind.close();
+            }
+        } finally {
+            cacheExpirationService.close();
+            try {
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (removalNotifier != null) {
+                    removalNotifier.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the keys grouped by their key type cache, leaving out keys of unknown key types, without mutating the state
+     */
+    private KeyTypeGroups<K, V, List<K>> groupByKeyType(Iterable<? extends K> keys) {
+        KeyTypeGroups<K, V, List<K>> groups = new KeyTypeGroups<>(keys instanceof Collection ? ((Collection<?>) keys).size() : 16);
+        for (K key : keys) {
+            KeyTypeCacheEntry<K, V> cacheEntry = getKeyCacheEntry(key);
+            if (cacheEntry != null) {
+                groups.get(cacheEntry, ArrayList::new).add(key);
+            } else if (recordStats) {
+                statsFor(key.getClass()).recordMisses(1);
+            }
+        }
+        return groups;
+    }
+
+    private static int mapCapacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    /**
+     * Mutates the state by starting a reload of the entry on the executor, unless a load of the key is in flight
+     */
+    private void refresh(K key, V oldValue) {
+        if (loads.containsKey(key)) {
+            return;
+        }
+        Load<V> load = new Load<>();
+        if (loads.putIfAbsent(key, load) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> reload(key, oldValue, load));
+        } catch (RejectedExecutionException e) {
+            // keep serving the old value, a later read retries
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+    }
 
-        lock.writeLock().lock();
+    /**
+     * Mutates the state by replacing the entry with its reloaded value, unless it was written, removed or
+     * expired since the refresh started
+     */
+    private void reload(K key, V oldValue, Load<V> load) {
+        load.owner = Thread.currentThread();
         try {
-            Optional<KeyTypeCacheEntry<K, V>> keyValueTypeCacheEntry;
-            keyValueTypeCacheEntry = getKeyCacheEntry(key);
-            if (keyValueTypeCacheEntry.isPresent()) {
-                boolean removed = keyValueTypeCacheEntry.get().removeEntry(key);
-                if (keyValueTypeCacheEntry.get().isEmpty()) {
-                    removeCacheEntry(keyValueTypeCacheEntry.get());
+            V value = timedLoad(key, () -> loader.reload(key, oldValue));
+            if (value != null) {
+                KeyTypeCacheEntry<K, V> cacheEntry = existingKeyEntryHandling(key, value);
+                if (cacheEntry != null && cacheEntry.replaceEntry(key, oldValue, value, weigh(key, value))
+                        && evictionPolicy != null) {
+                    evictEntries();
                 }
-                return removed;
             }
-            return false;
+            load.complete(value == null ? oldValue : value);
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * Runs a load, recording its time with the counter of the key type. A load of no value counts as a failure.
+     */
+    private V timedLoad(K key, Supplier<V> load) {
+        if (!recordStats) {
+            return load.get();
+        }
+        StatsCounter stats = statsFor(key.getClass());
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = load.get();
+        } catch (RuntimeException | Error e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        if (value == null) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+        } else {
+            stats.recordLoadSuccess(System.nanoTime() - start);
+        }
+        return value;
+    }
+
+    private int weigh(K key, V value) {
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight of key [" + key + "] must not be negative");
+        }
+        return weight;
+    }
+
+    /**
+     * Mutates the state by removing an entry in value cache
+     * and/or invoking logic to remove its associated  key type cache, then deletes the key from the store backing
+     * the cache, if any, whether it was cached or not
+     */
+    public boolean remove(K key) {
+        if (writeOrder == null) {
+            return removeEntry(key);
+        }
+        Lock lock = writeOrder[writeOrderIndex(key)];
+        lock.lock();
+        try {
+            boolean removed = removeEntry(key);
+            if (writeBehind != null) {
+                writeBehind.delete(key);
+            } else {
+                writer.delete(key);
+            }
+            return removed;
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
     /**
-     * Mutates the state by adding entry to key type cache
+     * Mutates the state by removing the entry without deleting it from the store
+     */
+    private boolean removeEntry(K key) {
+        KeyTypeCacheEntry<K, V> keyValueTypeCacheEntry = getKeyCacheEntry(key);
+        if (keyValueTypeCacheEntry != null) {
+            boolean removed = keyValueTypeCacheEntry.removeEntry(key);
+            if (removed && keyValueTypeCacheEntry.isEmpty()) {
+                removeCacheEntry(keyValueTypeCacheEntry);
+            }
+            return removed;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the live entries of the cache and the remaining time to live of its key types to the file, replacing
+     * the file once the snapshot is complete.
+     * <p>
+     * Key type caches are copied a batch of slots at a time under their read lock, so the dump never holds up a writer
+     * for longer than one batch. The snapshot is fuzzy: an entry written or removed during the dump may or may not
+     * be part of it.
+     *
+     * @return number of entries written
+     */
+    public long writeSnapshot(Path file, ValueSerializer<? super K> keySerializer,
+                              ValueSerializer<? super V> valueSerializer) {
+        try (SnapshotWriter writer = SnapshotWriter.open(file)) {
+            for (KeyTypeCacheEntry<K, V> partition : keyTypeCache.snapshot()) {
+                long remainingNanos = remainingNanos(partition);
+                if (remainingNanos == 0L) {
+                    continue;
+                }
+                writer.startPartition(remainingNanos, partition.size());
+                for (long cursor = 0L; cursor >= 0L; ) {
+                    cursor = partition.visitEntries(cursor, SNAPSHOT_BATCH, (key, value, writeAge, accessAge) ->
+                            writer.writeEntry(keySerializer.serialize(key), valueSerializer.serialize(value), writeAge, accessAge));
+                }
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Puts the entries of a snapshot written by {@link #writeSnapshot(Path, ValueSerializer, ValueSerializer)},
+     * reading the file through memory mapped windows.
+     * <p>
+     * Times to live keep running while the snapshot sits on disk, so key types and entries that expired since the
+     * dump are skipped, and restored key types expire when they would have. Entries of keys already cached are
+     * replaced, subject to the type safety rule.
+     *
+     * @return number of entries restored
+     */
+    public long readSnapshot(Path file, ValueSerializer<? extends K> keySerializer,
+                             ValueSerializer<? extends V> valueSerializer) {
+        try (SnapshotReader reader = SnapshotReader.open(file)) {
+            long offlineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, System.currentTimeMillis() - reader.getSnapshotMillis()));
+            List<K> keys = new ArrayList<>(SNAPSHOT_BATCH);
+            List<V> values = new ArrayList<>(SNAPSHOT_BATCH);
+            long[] writeAges = new long[SNAPSHOT_BATCH];
+            long[] accessAges = new long[SNAPSHOT_BATCH];
+            long restored = 0;
+            while (reader.nextPartition()) {
+                long remainingNanos = reader.getRemainingNanos();
+                int expectedEntries = reader.getExpectedEntries();
+                if (remainingNanos != SnapshotWriter.NEVER && (remainingNanos -= offlineNanos) <= 0) {
+                    continue;
+                }
+                while (reader.nextEntry()) {
+                    writeAges[keys.size()] = reader.getWriteAge() + offlineNanos;
+                    accessAges[keys.size()] = reader.getAccessAge() + offlineNanos;
+                    keys.add(keySerializer.deserialize(reader.getKey()));
+                    values.add(valueSerializer.deserialize(reader.getValue()));
+                    if (keys.size() == SNAPSHOT_BATCH) {
+                        restored += restoreEntries(keys, values, writeAges, accessAges, remainingNanos, expectedEntries);
+                    }
+                }
+                if (!keys.isEmpty()) {
+                    restored += restoreEntries(keys, values, writeAges, accessAges, remainingNanos, expectedEntries);
+                }
+            }
+            return restored;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Mutates the state by adding a batch of entries of a single key type read from a snapshot, then clears the batch
+     *
+     * @param remainingNanos  time left to the key type, used when its key type cache has to be created
+     * @param expectedEntries number of entries of the key type in the snapshot, to size its key type cache upfront
+     * @return number of entries restored
+     */
+    private int restoreEntries(List<K> keys, List<V> values, long[] writeAges, long[] accessAges, long remainingNanos,
+                               int expectedEntries) {
+        int[] weights = new int[keys.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weigh(keys.get(i), values.get(i));
+        }
+        int restored;
+        do {
+            KeyTypeCacheEntry<K, V> cacheEntry = existingKeyEntryHandling(keys.get(0), values.get(0));
+            if (cacheEntry == null || cacheEntry.isRetired()) {
+                cacheEntry = addKeyCacheEntry(keys.get(0), values.get(0), remainingNanos);
+            }
+            for (int i = 1; i < weights.length; i++) {
+                existingKeyEntryHandling(keys.get(i), values.get(i));
+            }
+            restored = cacheEntry.restoreEntries(keys, values, weights, writeAges, accessAges, expectedEntries);
+        } while (restored < 0);
+        if (evictionPolicy != null) {
+            evictEntries();
+        }
+        keys.clear();
+        values.clear();
+        return restored;
+    }
+
+    /**
+     * Blocks until every mutation journaled so far is forced to disk
+     */
+    public void syncJournal() {
+        requireJournal().sync();
+    }
+
+    /**
+     * Mutates the state of the journal by replacing its segments with a snapshot of the cache, unless a compaction
+     * is already running. Mutations go on during the compaction, they are journaled in a new segment.
+     */
+    public void compactJournal() {
+        Journal<K, V> journal = requireJournal();
+        try {
+            journal.compact(file -> writeSnapshot(file, journalKeySerializer, journalValueSerializer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Journal<K, V> requireJournal() {
+        if (journal == null) {
+            throw new IllegalStateException("Mutations are not journaled, build the cache with journal(...)");
+        }
+        return journal;
+    }
+
+    /**
+     * Mutates the state by restoring the latest snapshot of the journal and replaying the mutations journaled since.
+     * Replayed puts keep the age they had, entries and key types that expired meanwhile are skipped.
+     */
+    private void recover() throws IOException {
+        Path snapshot = journal.getSnapshot();
+        if (snapshot != null) {
+            readSnapshot(snapshot, journalKeySerializer, journalValueSerializer);
+        }
+        List<K> keys = new ArrayList<>(SNAPSHOT_BATCH);
+        List<V> values = new ArrayList<>(SNAPSHOT_BATCH);
+        long[] writeAges = new long[SNAPSHOT_BATCH];
+        long[] remainingNanos = new long[1];
+        long now = System.currentTimeMillis();
+        journal.replay(record -> {
+            K key = record.getType() == Journal.EXPIRE_KEY_TYPE ? null : journalKeySerializer.deserialize(record.getKey());
+            if (!keys.isEmpty() && (record.getType() != Journal.PUT || keys.size() == SNAPSHOT_BATCH
+                    || key.getClass() != keys.get(0).getClass())) {
+                replayPuts(keys, values, writeAges, remainingNanos[0]);
+            }
+            switch (record.getType()) {
+                case Journal.PUT:
+                    long writeAge = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, now - record.getWriteMillis()));
+                    if (keys.isEmpty()) {
+                        // the key type cache is created by the first put of a batch, its time to live starts there
+                        remainingNanos[0] = remainingNanos(key.getClass(), writeAge);
+                    }
+                    writeAges[keys.size()] = writeAge;
+                    keys.add(key);
+                    values.add(journalValueSerializer.deserialize(record.getValue()));
+                    break;
+                case Journal.EXPIRE_KEY_TYPE:
+                    for (KeyTypeCacheEntry<K, V> partition : keyTypeCache.snapshot()) {
+                        if (partition.getKeyType().getName().equals(record.getKeyType())) {
+                            expire(partition);
+                        }
+                    }
+                    break;
+                default:
+                    removeEntry(key);
+            }
+        });
+        if (!keys.isEmpty()) {
+            replayPuts(keys, values, writeAges, remainingNanos[0]);
+        }
+    }
+
+    /**
+     * Mutates the state by restoring a batch of replayed puts of a single key type, unless the key type expired
+     */
+    private void replayPuts(List<K> keys, List<V> values, long[] writeAges, long remainingNanos) {
+        if (remainingNanos == 0L) {
+            keys.clear();
+            values.clear();
+            return;
+        }
+        restoreEntries(keys, values, writeAges, writeAges, remainingNanos, 0);
+    }
+
+    /**
+     * Returns the time left to a key type cache created the given time ago, zero once it is due, or
+     * {@link SnapshotWriter#NEVER}, without mutating the state
+     */
+    private long remainingNanos(Class<?> keyType, long age) {
+        KeyTypeExpiry keyTypeExpiry = getKeyTypeExpiry(keyType);
+        long expiry = keyTypeExpiry == null ? defaultExpiry : keyTypeExpiry.getExpiry();
+        if (expirationPolicy != ExpirationPolicy.KEY_TYPE || expiry <= 0) {
+            return SnapshotWriter.NEVER;
+        }
+        TimeUnit expiryTimeUnit = keyTypeExpiry == null ? defaultExpiryTimeUnit : keyTypeExpiry.getExpiryTimeUnit();
+        return Math.max(0L, expiryTimeUnit.toNanos(expiry) - age);
+    }
+
+    /**
+     * Returns the time left before the key type cache expires as a whole, zero once it is due, or
+     * {@link SnapshotWriter#NEVER}, without mutating the state
+     */
+    private long remainingNanos(KeyTypeCacheEntry<?, ?> partition) {
+        if (partition.getExpirationPolicy() != ExpirationPolicy.KEY_TYPE || partition.getExpiry() <= 0) {
+            return SnapshotWriter.NEVER;
+        }
+        long elapsed = ticker.read() - partition.getCreatedNanos();
+        return Math.max(0L, partition.getExpiryTimeUnit().toNanos(partition.getExpiry()) - elapsed);
+    }
+
+    /**
+     * Mutates the state by adding entry to key type cache, unless a live one was added concurrently
      */
     private KeyTypeCacheEntry<K, V> addKeyCacheEntry(K key, V value) {
-        KeyTypeCacheEntry<K, V> entry = new KeyTypeCacheEntry<>(key.getClass(), value.getClass());
-        keyTypeCache.add(entry);
-        cacheExpirationService.schedule(this, entry);
-        return entry;
+        return addKeyCacheEntry(key, value, SnapshotWriter.NEVER);
+    }
+
+    /**
+     * @param remainingNanos time left to a key type restored from a snapshot, shortening its time to live, or
+     *                       {@link SnapshotWriter#NEVER}
+     */
+    private KeyTypeCacheEntry<K, V> addKeyCacheEntry(K key, V value, long remainingNanos) {
+        lockStructure();
+        try {
+            KeyTypeCacheEntry<K, V> existing = existingKeyEntryHandling(key, value);
+            if (existing != null && !existing.isRetired()) {
+                return existing;
+            }
+            KeyTypeExpiry keyTypeExpiry = getKeyTypeExpiry(key.getClass());
+            long expiry = keyTypeExpiry == null ? defaultExpiry : keyTypeExpiry.getExpiry();
+            TimeUnit expiryTimeUnit = keyTypeExpiry == null ? defaultExpiryTimeUnit : keyTypeExpiry.getExpiryTimeUnit();
+            if (expirationPolicy == ExpirationPolicy.KEY_TYPE && expiry > 0 && remainingNanos != SnapshotWriter.NEVER) {
+                expiry = Math.min(remainingNanos, expiryTimeUnit.toNanos(expiry));
+                expiryTimeUnit = TimeUnit.NANOSECONDS;
+            }
+            KeyTypeCacheEntry<K, V> entry = partitionSettings.newPartition(key.getClass(), value.getClass(),
+                    expiry, expiryTimeUnit);
+            keyTypeCache.add(entry);
+            if (expirationPolicy == ExpirationPolicy.KEY_TYPE) {
+                entry.setExpiration(cacheExpirationService.schedule(this, entry));
+            } else if (!cleanUpScheduled && entry.getExpiryNanos() > 0) {
+                cleanUpScheduled = true;
+                CleanUpTask.schedule(this);
+            }
+            return entry;
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the time to live configured for the key type, or null for the default, without mutating the state
+     */
+    private KeyTypeExpiry getKeyTypeExpiry(Class<?> keyType) {
+        for (KeyTypeExpiry keyTypeExpiry : keyTypeExpiries) {
+            if (keyTypeExpiry.getKeyType() == keyType) {
+                return keyTypeExpiry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns existing key cache entry, or null, without mutating the state
+     */
+    private KeyTypeCacheEntry<K, V> existingKeyEntryHandling(K key, V value) {
+        KeyTypeCacheEntry<K, V> keyTypeEntry = getKeyCacheEntry(key);
+        if (keyTypeEntry != null && !keyTypeEntry.matchesHighestTypeOfValue(value)) {
+            throw new RuntimeException(
+                    "Object of class [" + value.getClass() + "] not allowable for this Key Type [" + key.getClass() + "]. " +
+                            "Allowed types are [" + keyTypeEntry.getValueType() + "] or it sub and super types");
+        }
+        return keyTypeEntry;
+    }
+
+    /**
+     * Returns existing key cache entry, or null, without mutating the state.
+     * Constant time probe of the key type index, no allocation and no lock.
+     */
+    private KeyTypeCacheEntry<K, V> getKeyCacheEntry(K key) {
+        return keyTypeCache.get(key.getClass());
+    }
+
+    /**
+     * Mutates the state by removing the entries the eviction policy chose, outside of any lock held by this thread.
+     * A key type cache left empty is dropped, which resets its type safety rule.
+     */
+    @SuppressWarnings("unchecked")
+    private void evictEntries() {
+        for (PolicyNode victim; (victim = evictionPolicy.pollEviction()) != null; ) {
+            KeyTypeCacheEntry<K, V> partition = (KeyTypeCacheEntry<K, V>) victim.getPartition();
+            if (partition.evictEntry(victim)) {
+                partition.getStats().recordEvictions(1);
+                if (partition.isEmpty()) {
+                    removeCacheEntry(partition);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by sweeping a bounded batch of slots for expired entries, resuming with the partition
+     * the previous run stopped at. A key type cache left empty is dropped, which resets its type safety rule.
+     */
+    private void cleanUp() {
+        KeyTypeCacheEntry<K, V>[] partitions = keyTypeCache.snapshot();
+        long now = ticker.read();
+        int budget = CLEAN_UP_BATCH;
+        int start = cleanUpCursor;
+        int visited = 0;
+        for (; visited < partitions.length && budget > 0; visited++) {
+            KeyTypeCacheEntry<K, V> partition = partitions[(start + visited) % partitions.length];
+            budget -= partition.sweepExpired(now, budget);
+            if (partition.isEmpty()) {
+                removeCacheEntry(partition);
+            }
+        }
+        // a partition cut short by the budget is resumed first on the next run
+        cleanUpCursor = partitions.length == 0 ? 0 : (start + visited - (budget > 0 ? 0 : 1)) % partitions.length;
+    }
+
+    /**
+     * Groups of a bulk operation, one per key type cache. A batch rarely spans more than a few key types,
+     * so the group of a key type cache is found by scanning from the last one used and only indexed in a map
+     * once there are many.
+     */
+    private static final class KeyTypeGroups<K, V, G> {
+        private static final int SCAN_LIMIT = 8;
+
+        private final int expectedSize;
+        private final List<KeyTypeCacheEntry<K, V>> cacheEntries = new ArrayList<>(4);
+        private final List<G> groups = new ArrayList<>(4);
+        private Map<KeyTypeCacheEntry<K, V>, Integer> index;
+        private int last = -1;
+
+        KeyTypeGroups(int expectedSize) {
+            this.expectedSize = expectedSize;
+        }
+
+        /**
+         * Returns the group of the key type cache, creating it with an initial capacity
+         */
+        G get(KeyTypeCacheEntry<K, V> cacheEntry, IntFunction<G> factory) {
+            if (last >= 0 && cacheEntries.get(last) == cacheEntry) {
+                return groups.get(last);
+            }
+            int found = -1;
+            if (index != null) {
+                Integer position = index.get(cacheEntry);
+                found = position == null ? -1 : position;
+            } else {
+                for (int i = 0; i < cacheEntries.size() && found < 0; i++) {
+                    found = cacheEntries.get(i) == cacheEntry ? i : -1;
+                }
+            }
+            if (found < 0) {
+                found = cacheEntries.size();
+                cacheEntries.add(cacheEntry);
+                // the first group usually takes the whole batch
+                groups.add(factory.apply(found == 0 ? expectedSize : 16));
+                if (index != null) {
+                    index.put(cacheEntry, found);
+                } else if (cacheEntries.size() > SCAN_LIMIT) {
+                    index = new IdentityHashMap<>();
+                    for (int i = 0; i < cacheEntries.size(); i++) {
+                        index.put(cacheEntries.get(i), i);
+                    }
+                }
+            }
+            last = found;
+            return groups.get(found);
+        }
+
+        int size() {
+            return groups.size();
+        }
+
+        KeyTypeCacheEntry<K, V> cacheEntryAt(int i) {
+            return cacheEntries.get(i);
+        }
+
+        G groupAt(int i) {
+            return groups.get(i);
+        }
     }
 
     /**
-     * Returns existing key cache entry without mutating the state
+     * Entries of one key type cache collected by {@link #putAll(Map)}, weighed up front
      */
-    private Optional<KeyTypeCacheEntry<K, V>> existingKeyEntryHandling(K key, V value) {
-        Optional<KeyTypeCacheEntry<K, V>> keyTypeEntry = getKeyCacheEntry(key);
-        if (keyTypeEntry.isPresent()) {
-            if (!keyTypeEntry.get().matchesHighestTypeOfValue(value)) {
-                throw new RuntimeException(
-                        "Object of class [" + value.getClass() + "] not allowable for this Key Type [" + key.getClass() + "]. " +
-                                "Allowed types are [" + keyTypeEntry.get().getValueType() + "] or it sub and super types");
+    private static final class Batch<K, V> {
+        private final List<K> keys;
+        private final List<V> values;
+        private int[] weights;
+
+        Batch(int capacity) {
+            keys = new ArrayList<>(capacity);
+            values = new ArrayList<>(capacity);
+            weights = new int[Math.max(capacity, 1)];
+        }
+
+        void add(K key, V value, int weight) {
+            if (keys.size() == weights.length) {
+                weights = Arrays.copyOf(weights, weights.length << 1);
+            }
+            weights[keys.size()] = weight;
+            keys.add(key);
+            values.add(value);
+        }
+
+        void forEach(WeighedEntryConsumer<K, V> action) {
+            for (int i = 0; i < keys.size(); i++) {
+                action.accept(keys.get(i), values.get(i), weights[i]);
             }
-            return keyTypeEntry;
         }
-        return Optional.empty();
+    }
+
+    @FunctionalInterface
+    private interface WeighedEntryConsumer<K, V> {
+        void accept(K key, V value, int weight);
     }
 
     /**
-     * Returns existing key cache entry without mutating the state
+     * Result of a load in flight, remembering the thread running it to reject recursive loads of the same key
      */
-    private Optional<KeyTypeCacheEntry<K, V>> getKeyCacheEntry(K key) {
-        return keyTypeCache.parallelStream().filter(entry -> entry.getKeyType().equals(key.getClass())).findFirst();
+    private static final class Load<V> extends CompletableFuture<V> {
+        private volatile Thread owner;
     }
 
+    /**
+     * Periodic {@link #cleanUp()} on the expiration thread or executor, one run at a time. Holds the cache weakly so that an unreachable cache
+     * stops being swept and can be collected.
+     */
+    private static final class CleanUpTask implements Runnable {
+        private final WeakReference<CustomCache<?, ?>> cache;
+
+        private CleanUpTask(CustomCache<?, ?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        static void schedule(CustomCache<?, ?> cache) {
+            cache.cacheExpirationService.scheduleWork(new CleanUpTask(cache), CLEAN_UP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            CustomCache<?, ?> target = cache.get();
+            if (target != null) {
+                try {
+                    target.cleanUp();
+                } finally {
+                    schedule(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands {@link #compactJournal()} over to the executor when the journal asks for a compaction. Holds the cache
+     * weakly so that the journal thread does not keep an unreachable cache alive.
+     */
+    private static final class CompactionTrigger implements Runnable {
+        private final WeakReference<CustomCache<?, ?>> cache;
+
+        private CompactionTrigger(CustomCache<?, ?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            CustomCache<?, ?> target = cache.get();
+            if (target != null) {
+                try {
+                    target.executor.execute(target::compactJournal);
+                } catch (RejectedExecutionException e) {
+                    // the journal asks again once it grew further
+                }
+            }
+        }
+    }
+
+    /**
+     * Acquires the structural lock, recording the time spent waiting when another thread holds it
+     */
+    private void lockStructure() {
+        if (!structureLock.tryLock()) {
+            long start = System.nanoTime();
+            structureLock.lock();
+            cacheStats.recordLockWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the counter of the key type, or a disabled one when statistics are not recorded
+     */
+    private StatsCounter statsFor(Class<?> keyType) {
+        return recordStats ? keyTypeStats.counterFor(keyType) : cacheStats;
+    }
+
+    /**
+     * Returns the number of entries, counting the expired ones not swept yet, without mutating the state
+     */
+    public long estimatedSize() {
+        long size = 0;
+        for (KeyTypeCacheEntry<K, V> partition : keyTypeCache.snapshot()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the statistics of the whole cache without mutating the state, empty unless built with
+     * {@link CacheBuilder#recordStats()}
+     */
+    public CacheStats stats() {
+        return recordStats ? cacheStats.snapshot().plus(keyTypeStats.total()) : cacheStats.snapshot();
+    }
+
+    /**
+     * Returns the statistics of every key type seen whose class is still loaded, without mutating the state
+     */
+    public Map<Class<?>, CacheStats> statsByKeyType() {
+        return keyTypeStats.byKeyType();
+    }
+
+    /**
+     * Publishes the statistics of the cache as an MXBean in the platform MBean server
+     *
+     * @return the name to unregister the MBean with
+     */
+    public ObjectName registerStatsMBean(String name) {
+        if (!recordStats) {
+            throw new IllegalStateException("Statistics are not recorded, build the cache with recordStats()");
+        }
+        return CacheStatsMBean.register(name, this::stats, this::statsByKeyType);
+    }
+
+    /**
+     * Mutates the state by dropping the key type cache if it is still empty, which resets its type safety rule
+     */
     private void removeCacheEntry(KeyTypeCacheEntry<K, V> keyTypeCacheEntry) {
-        lock.writeLock().lock();
+        lockStructure();
         try {
-            keyTypeCache.remove(keyTypeCacheEntry);
+            if (keyTypeCacheEntry.retireIfEmpty()) {
+                keyTypeCacheEntry.cancelExpiration();
+                keyTypeCache.remove(keyTypeCacheEntry);
+            }
         } finally {
-            lock.writeLock().unlock();
+            structureLock.unlock();
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package com.nishant.customcache;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.model.IntEntryTable;
+
+/**
+ * Cache of int keys, stored unboxed so that get, put and remove neither box nor allocate.
+ * <p>
+ * Follows the expiration and type safety rules of a single key type partition of a {@link CustomCache}, see
+ * {@link PrimitiveKeyCache}. Reads are optimistic and only take the read lock when a writer interleaved.
+ * <pre>
+ * IntKeyCache&lt;Shape&gt; cache = CustomCache.builder()
+ *         .expireAfterWrite(5, TimeUnit.MINUTES)
+ *         .buildIntKeyCache();
+ * </pre>
+ */
+@ThreadSafe
+public class IntKeyCache<V> extends PrimitiveKeyCache<V, IntEntryTable<V>> {
+
+    IntKeyCache(CacheBuilder<?, ?> builder) {
+        super(builder, Integer.class, "int", IntEntryTable::new);
+    }
+
+    /**
+     * Returns the value associated to key, or null, without mutating the state
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Object value = read(entries.indexOf(key, lock, stamp), stamp, true);
+            if (value != RETRY) {
+                return (V) value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return (V) read(entries.indexOf(key), stamp, false);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Mutates the state by associating the value to the key
+     *
+     * @throws RuntimeException when the value breaks the type safety rule of the cache
+     */
+    public void put(int key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            admit(value);
+            entries.put(key, value, writeTime());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Mutates the state by removing the entry of the key, the type safety rule is reset once the cache is empty
+     *
+     * @return true if an entry was removed
+     */
+    public boolean remove(int key) {
+        long stamp = lock.writeLock();
+        try {
+            if (entries.remove(key) == null) {
+                return false;
+            }
+            if (entries.isEmpty()) {
+                emptied();
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
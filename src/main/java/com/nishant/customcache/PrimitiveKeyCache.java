@@ -0,0 +1,306 @@
+package com.nishant.customcache;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.Ticker;
+import com.nishant.customcache.model.EntryTable;
+import com.nishant.customcache.model.ExpirationPolicy;
+import com.nishant.customcache.model.KeyTypeCacheEntry;
+import com.nishant.customcache.model.KeyTypeExpiry;
+import com.nishant.customcache.model.PrimitiveEntryTable;
+import com.nishant.customcache.services.ExpirationService;
+import com.nishant.customcache.services.TimingWheel;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * State shared by the caches of primitive keys: all of their keys are of a single key type, so the whole cache
+ * behaves like one key type partition of a {@link CustomCache}.
+ * <p>
+ * The first value put decides the value type the cache accepts, until the cache is emptied or expires. By default
+ * the cache expires as a whole once its time to live has elapsed since that first put, with
+ * {@link ExpirationPolicy#AFTER_WRITE} or {@link ExpirationPolicy#AFTER_ACCESS} every entry expires on its own and
+ * is swept in the background. Closing the cache cancels its timers, the entries it holds then no longer expire.
+ * <p>
+ * Subclasses only probe the table with their unboxed keys, reads and sweeps of the slots they find are shared.
+ */
+@ThreadSafe
+abstract class PrimitiveKeyCache<V, T extends PrimitiveEntryTable<V>> implements AutoCloseable {
+
+    private static final long CLEAN_UP_INTERVAL_MILLIS = 250;
+    private static final int CLEAN_UP_BATCH = 4096;
+    /**
+     * Returned by {@link #read(int, long, boolean)} when a writer interleaved with an optimistic read
+     */
+    static final Object RETRY = new Object();
+
+    private final ExpirationService expirationService;
+    private final String keyType;
+    private final long expiry;
+    private final TimeUnit expiryTimeUnit;
+    final ExpirationPolicy expirationPolicy;
+    /**
+     * Source of the time entries expire by
+     */
+    final Ticker ticker;
+    /**
+     * Time to live of every single entry, zero when entries do not expire on their own
+     */
+    final long expiryNanos;
+    final StampedLock lock = new StampedLock();
+    @GuardedBy("lock") final T entries;
+    @GuardedBy("lock") private int sweepCursor;
+    /**
+     * Highest type of the values, null while the cache is empty
+     */
+    @GuardedBy("lock") private Class<?> valueType;
+    @GuardedBy("lock") private TimingWheel.Timeout expiration;
+    /**
+     * Incremented whenever the cache adopts a value type, so that a late timeout never expires a later generation
+     */
+    @GuardedBy("lock") private long generation;
+    @GuardedBy("lock") private boolean cleanUpScheduled;
+
+    /**
+     * @param boxedKeyType wrapper class of the keys, whose {@link CacheBuilder#expireAfter(Class, long, TimeUnit)}
+     *                     setting applies to the cache
+     * @param tableFactory   creates the table of the entries, timed or not
+     */
+    PrimitiveKeyCache(CacheBuilder<?, ?> builder, Class<?> boxedKeyType, String keyType,
+                      Function<Boolean, T> tableFactory) {
+        if (builder.maximumSize != CacheBuilder.UNSET || builder.maximumWeight != CacheBuilder.UNSET
+                || builder.loader != null || builder.valueSerializer != null || builder.recordStats
+                || builder.journalDirectory != null || builder.writer != null || builder.removalListener != null
+                || !builder.nearCacheKeyTypes.isEmpty() || builder.segments != 1) {
+            throw new IllegalStateException("Caches of " + keyType + " keys only support expiration, drop the size, "
+                    + "loader, off-heap, statistics, journal, writer, removal listener, near cache and segments settings");
+        }
+        KeyTypeExpiry keyTypeExpiry = null;
+        for (KeyTypeExpiry candidate : builder.keyTypeExpiries) {
+            if (candidate.getKeyType() == boxedKeyType) {
+                keyTypeExpiry = candidate;
+            }
+        }
+        this.expirationService = builder.timingWheel == null ? new ExpirationService(builder.expirationExecutor)
+                : new ExpirationService(builder.timingWheel, builder.expirationExecutor);
+        this.keyType = keyType;
+        this.expiry = keyTypeExpiry == null ? builder.defaultExpiry : keyTypeExpiry.getExpiry();
+        this.expiryTimeUnit = keyTypeExpiry == null ? builder.defaultExpiryTimeUnit : keyTypeExpiry.getExpiryTimeUnit();
+        this.expirationPolicy = builder.expirationPolicy;
+        this.ticker = builder.ticker;
+        this.expiryNanos = expirationPolicy != ExpirationPolicy.KEY_TYPE && expiry > 0 ? expiryTimeUnit.toNanos(expiry) : 0L;
+        this.entries = tableFactory.apply(expiryNanos > 0);
+    }
+
+    /**
+     * Returns the value at the slot a key was probed to, or null when the key is absent or its entry expired,
+     * recording the read under {@link ExpirationPolicy#AFTER_ACCESS}. Optimistic reads return {@link #RETRY} once a
+     * writer interleaved, the caller then probes again under the read lock.
+     *
+     * @param stamp      optimistic stamp the slot was probed with, or the read stamp held by the caller
+     * @param optimistic whether the stamp is optimistic
+     */
+    final Object read(int slot, long stamp, boolean optimistic) {
+        if (slot == EntryTable.RETRY) {
+            return RETRY;
+        }
+        if (slot == EntryTable.ABSENT) {
+            return null;
+        }
+        V value = entries.valueAt(slot);
+        if (expiryNanos <= 0) {
+            return optimistic && !lock.validate(stamp) ? RETRY : value;
+        }
+        long writeTime = entries.writeTimeAt(slot);
+        long accessTime = entries.accessTimeAt(slot);
+        if (optimistic && !lock.validate(stamp)) {
+            return RETRY;
+        }
+        long now = ticker.read();
+        if (isExpired(writeTime, accessTime, now)) {
+            return null;
+        }
+        if (expirationPolicy == ExpirationPolicy.AFTER_ACCESS) {
+            if (!optimistic) {
+                entries.setAccessTime(slot, now);
+            } else {
+                // the slot only still holds the key while no writer took the lock since the probe
+                long readStamp = lock.tryConvertToReadLock(stamp);
+                if (readStamp == 0L) {
+                    return RETRY;
+                }
+                try {
+                    entries.setAccessTime(slot, now);
+                } finally {
+                    lock.unlockRead(readStamp);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the time a put happening now is recorded at, without mutating the state
+     */
+    long writeTime() {
+        return expiryNanos > 0 ? ticker.read() : 0L;
+    }
+
+    /**
+     * Mutates the state by checking the value against the type safety rule, adopting its type when the cache is
+     * empty and starting the time to live of the cache or the sweeping of its entries
+     */
+    @GuardedBy("lock")
+    void admit(V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value is required");
+        }
+        Class<?> type = KeyTypeCacheEntry.getHighestType(value.getClass());
+        if (valueType != null) {
+            if (valueType != type) {
+                throw new RuntimeException(
+                        "Object of class [" + value.getClass() + "] not allowable for this Key Type [" + keyType + "]. " +
+                                "Allowed types are [" + valueType + "] or it sub and super types");
+            }
+            return;
+        }
+        valueType = type;
+        generation++;
+        if (expirationPolicy == ExpirationPolicy.KEY_TYPE && expiry > 0) {
+            expiration = expirationService.scheduleWork(new ExpireTask(this, generation), expiry, expiryTimeUnit);
+        } else if (expiryNanos > 0 && !cleanUpScheduled) {
+            cleanUpScheduled = true;
+            CleanUpTask.schedule(this);
+        }
+    }
+
+    /**
+     * Mutates the state by resetting the type safety rule and the time to live once the cache holds no entry
+     */
+    @GuardedBy("lock")
+    void emptied() {
+        valueType = null;
+        if (expiration != null) {
+            expiration.cancel();
+            expiration = null;
+        }
+    }
+
+    /**
+     * Mutates the state by cancelling the expiration and the sweeps of the cache, closing again does nothing
+     */
+    @Override
+    public void close() {
+        expirationService.close();
+    }
+
+    /**
+     * Returns whether an entry written and read at the given times outlived its time to live, without mutating the state
+     */
+    boolean isExpired(long writeTime, long accessTime, long now) {
+        if (expiryNanos <= 0) {
+            return false;
+        }
+        long since = expirationPolicy == ExpirationPolicy.AFTER_ACCESS ? accessTime : writeTime;
+        return now - since >= expiryNanos;
+    }
+
+    /**
+     * Mutates the state by removing the expired entries among the next slots, under the write lock
+     *
+     * @return number of slots examined
+     */
+    @GuardedBy("lock")
+    int sweepExpired(long now, int maxSlots) {
+        int capacity = entries.capacity();
+        int scanned = Math.min(maxSlots, capacity);
+        int slot = sweepCursor;
+        boolean removed = false;
+        for (int n = 0; n < scanned; n++) {
+            if (slot >= capacity) {
+                slot = 0;
+            }
+            if (entries.isOccupied(slot) && isExpired(entries.writeTimeAt(slot), entries.accessTimeAt(slot), now)) {
+                // the following entries shift back into the freed slot, examine it again
+                entries.removeAt(slot);
+                removed = true;
+            } else {
+                slot++;
+            }
+        }
+        sweepCursor = slot;
+        if (removed && entries.isEmpty()) {
+            emptied();
+        }
+        return scanned;
+    }
+
+    /**
+     * Mutates the state by expiring the whole cache, unless it was emptied since the timeout was scheduled
+     */
+    private void expire(long expiredGeneration) {
+        long stamp = lock.writeLock();
+        try {
+            if (valueType != null && generation == expiredGeneration) {
+                entries.clear();
+                emptied();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void cleanUp() {
+        long stamp = lock.writeLock();
+        try {
+            sweepExpired(ticker.read(), CLEAN_UP_BATCH);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static final class ExpireTask implements Runnable {
+        private final WeakReference<PrimitiveKeyCache<?, ?>> cache;
+        private final long generation;
+
+        private ExpireTask(PrimitiveKeyCache<?, ?> cache, long generation) {
+            this.cache = new WeakReference<>(cache);
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            PrimitiveKeyCache<?, ?> target = cache.get();
+            if (target != null) {
+                target.expire(generation);
+            }
+        }
+    }
+
+    private static final class CleanUpTask implements Runnable {
+        private final WeakReference<PrimitiveKeyCache<?, ?>> cache;
+
+        private CleanUpTask(PrimitiveKeyCache<?, ?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        static void schedule(PrimitiveKeyCache<?, ?> cache) {
+            cache.expirationService.scheduleWork(new CleanUpTask(cache), CLEAN_UP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            PrimitiveKeyCache<?, ?> target = cache.get();
+            if (target != null) {
+                try {
+                    target.cleanUp();
+                } finally {
+                    schedule(target);
+                }
+            }
+        }
+    }
+}
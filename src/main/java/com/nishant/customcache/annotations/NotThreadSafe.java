@@ -0,0 +1,17 @@
+package com.nishant.customcache.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+
+/**
+ * Documents that class is not thread-safe and relies on callers for synchronisation
+ */
+@Documented
+@Target({ TYPE})
+@Retention(value = RetentionPolicy.SOURCE)
+public @interface NotThreadSafe {
+}
@@ -0,0 +1,121 @@
+package com.nishant.customcache.eviction;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often a key was seen recently.
+ * <p>
+ * Each long packs sixteen counters; an item owns one counter in each of four longs. Once the number of
+ * increments reaches ten times the expected number of entries every counter is halved, so the popularity of keys
+ * ages and the sketch adapts to a shifting workload.
+ * <p>
+ * The table starts small and grows with the number of entries the cache holds, up to
+ * {@link #MAXIMUM_CAPACITY} longs. A weight bound says nothing about the number of entries, so the sketch is never
+ * sized from it.
+ */
+@NotThreadSafe
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MINIMUM_CAPACITY = 8;
+    /**
+     * Largest table, 32 MB, past which more entries share counters rather than grow the sketch
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 22;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    public FrequencySketch() {
+        ensureCapacity(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Mutates the state by growing the table to count the given number of entries, forgetting every count so far.
+     * Does nothing when the table is already large enough or at its maximum.
+     */
+    public void ensureCapacity(long expectedEntries) {
+        int capacity = (int) Math.min(Math.max(expectedEntries, MINIMUM_CAPACITY), MAXIMUM_CAPACITY);
+        if (table != null && capacity <= table.length) {
+            return;
+        }
+        table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * capacity;
+        size = 0;
+    }
+
+    /**
+     * Number of longs of the table
+     */
+    int capacity() {
+        return table.length;
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of the hash, at most 15
+     */
+    public int frequency(int hash) {
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int count = (int) ((table[indexOf(item, i)] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Mutates the state by counting one more occurrence of the hash, aging the sketch periodically
+     */
+    public void increment(int hash) {
+        int item = spread(hash);
+        int start = (item & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(item, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves every counter; odd counters lose their remainder, which is subtracted from the sample size
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 17);
+    }
+}
@@ -0,0 +1,48 @@
+package com.nishant.customcache.eviction;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.model.KeyTypeCacheEntry;
+
+/**
+ * Entry of a size bounded cache: holds the mapping and its position in the eviction queues.
+ * <p>
+ * The key, partition and value are read by cache operations; the weight and links belong to the policy.
+ */
+public final class PolicyNode {
+
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+    static final int DEAD = 3;
+
+    private final Object key;
+    private final KeyTypeCacheEntry<?, ?> partition;
+    private volatile Object value;
+
+    @GuardedBy("evictionLock") int weight;
+    @GuardedBy("evictionLock") int queue;
+    @GuardedBy("evictionLock") PolicyNode prev;
+    @GuardedBy("evictionLock") PolicyNode next;
+
+    public PolicyNode(Object key, Object value, KeyTypeCacheEntry<?, ?> partition) {
+        this.key = key;
+        this.value = value;
+        this.partition = partition;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public KeyTypeCacheEntry<?, ?> getPartition() {
+        return partition;
+    }
+}
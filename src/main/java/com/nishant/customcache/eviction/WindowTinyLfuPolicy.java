@@ -0,0 +1,306 @@
+package com.nishant.customcache.eviction;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU eviction across every key type partition of a cache.
+ * <p>
+ * New entries enter a small LRU window (1% of the maximum). Entries leaving the window become candidates for
+ * the main region, a segmented LRU split into probation (20%) and protected (80%). While the cache is over its
+ * maximum a candidate is only admitted if the frequency sketch has seen it more often than the probation victim
+ * it would replace, which keeps one-hit wonders and scans from flushing the popular entries.
+ * <p>
+ * Policy bookkeeping runs under a leaf lock that is never held while taking a partition lock. Victims are
+ * unlinked immediately and queued; the cache removes them from their partitions after releasing its locks.
+ * Reads record accesses only when the lock is free, so a contended read loses its recency update rather than wait.
+ * <p>
+ * The frequency sketch is sized from the number of entries: up front from a size bound, and as entries are added
+ * under a weight bound, whose maximum is no entry count.
+ */
+@ThreadSafe
+public class WindowTinyLfuPolicy {
+
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.80;
+
+    private final Lock evictionLock = new ReentrantLock();
+    private final Queue<PolicyNode> evictions = new ConcurrentLinkedQueue<>();
+    private final long maximum;
+    private final boolean weighted;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    @GuardedBy("evictionLock") private final FrequencySketch sketch = new FrequencySketch();
+    @GuardedBy("evictionLock") private final AccessOrderQueue window = new AccessOrderQueue();
+    @GuardedBy("evictionLock") private final AccessOrderQueue probation = new AccessOrderQueue();
+    @GuardedBy("evictionLock") private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+    @GuardedBy("evictionLock") private long size;
+    @GuardedBy("evictionLock") private long weightedSize;
+    @GuardedBy("evictionLock") private long windowWeightedSize;
+    @GuardedBy("evictionLock") private long protectedWeightedSize;
+
+    /**
+     * @param weighted whether the maximum bounds the total weight of the entries rather than their number
+     */
+    public WindowTinyLfuPolicy(long maximum, boolean weighted) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("Maximum must not be negative");
+        }
+        this.maximum = maximum;
+        this.weighted = weighted;
+        this.windowMaximum = Math.max(Math.min(maximum, 1), (long) (maximum * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENT);
+        if (!weighted) {
+            sketch.ensureCapacity(maximum);
+        }
+    }
+
+    /**
+     * Mutates the state by admitting a new entry into the window, evicting entries if the cache is over its maximum
+     */
+    public void onAdd(PolicyNode node, int weight) {
+        evictionLock.lock();
+        try {
+            node.weight = weight;
+            node.queue = PolicyNode.WINDOW;
+            size++;
+            if (weighted) {
+                sketch.ensureCapacity(size);
+            }
+            sketch.increment(node.getKey().hashCode());
+            window.addLast(node);
+            windowWeightedSize += weight;
+            weightedSize += weight;
+            evictEntries();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Mutates the state by recording a write to an existing entry with its new weight
+     *
+     * @return false if the entry was already chosen for eviction and must be added again as a new entry
+     */
+    public boolean onUpdate(PolicyNode node, int weight) {
+        evictionLock.lock();
+        try {
+            if (node.queue == PolicyNode.DEAD) {
+                return false;
+            }
+            int delta = weight - node.weight;
+            node.weight = weight;
+            weightedSize += delta;
+            if (node.queue == PolicyNode.WINDOW) {
+                windowWeightedSize += delta;
+            } else if (node.queue == PolicyNode.PROTECTED) {
+                protectedWeightedSize += delta;
+            }
+            onAccess(node);
+            evictEntries();
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Mutates the state by recording a read, unless another thread is busy with the policy
+     */
+    public void recordAccess(PolicyNode node) {
+        if (evictionLock.tryLock()) {
+            try {
+                if (node.queue != PolicyNode.DEAD) {
+                    onAccess(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by forgetting an entry that was removed or expired
+     */
+    public void onRemove(PolicyNode node) {
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the next entry chosen for eviction, or null, which the caller has to remove from its partition
+     */
+    public PolicyNode pollEviction() {
+        return evictions.poll();
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @GuardedBy("evictionLock")
+    private void onAccess(PolicyNode node) {
+        sketch.increment(node.getKey().hashCode());
+        switch (node.queue) {
+            case PolicyNode.WINDOW:
+                window.moveToLast(node);
+                break;
+            case PolicyNode.PROBATION:
+                probation.remove(node);
+                node.queue = PolicyNode.PROTECTED;
+                protectedQueue.addLast(node);
+                protectedWeightedSize += node.weight;
+                demoteFromProtected();
+                break;
+            case PolicyNode.PROTECTED:
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @GuardedBy("evictionLock")
+    private void demoteFromProtected() {
+        while (protectedWeightedSize > protectedMaximum && protectedQueue.first != null) {
+            PolicyNode demoted = protectedQueue.pollFirst();
+            protectedWeightedSize -= demoted.weight;
+            demoted.queue = PolicyNode.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    /**
+     * Moves the window overflow into probation, then lets each candidate compete with the probation head
+     * until the cache is back within its maximum
+     */
+    @GuardedBy("evictionLock")
+    private void evictEntries() {
+        PolicyNode candidate = null;
+        while (windowWeightedSize > windowMaximum && window.first != null) {
+            PolicyNode node = window.pollFirst();
+            windowWeightedSize -= node.weight;
+            node.queue = PolicyNode.PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        while (weightedSize > maximum) {
+            PolicyNode victim = probation.first == candidate ? null : probation.first;
+            if (candidate == null || victim == null) {
+                PolicyNode next = probation.first != null ? probation.first
+                        : protectedQueue.first != null ? protectedQueue.first : window.first;
+                if (next == null) {
+                    return;
+                }
+                if (next == candidate) {
+                    candidate = candidate.next;
+                }
+                evict(next);
+            } else if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+                evict(victim);
+            } else {
+                PolicyNode rejected = candidate;
+                candidate = candidate.next;
+                evict(rejected);
+            }
+        }
+    }
+
+    @GuardedBy("evictionLock")
+    private void evict(PolicyNode node) {
+        unlink(node);
+        evictions.add(node);
+    }
+
+    @GuardedBy("evictionLock")
+    private void unlink(PolicyNode node) {
+        switch (node.queue) {
+            case PolicyNode.WINDOW:
+                window.remove(node);
+                windowWeightedSize -= node.weight;
+                break;
+            case PolicyNode.PROBATION:
+                probation.remove(node);
+                break;
+            case PolicyNode.PROTECTED:
+                protectedQueue.remove(node);
+                protectedWeightedSize -= node.weight;
+                break;
+            default:
+                return;
+        }
+        size--;
+        weightedSize -= node.weight;
+        node.queue = PolicyNode.DEAD;
+    }
+
+    /**
+     * Intrusive doubly linked LRU queue, least recently used first
+     */
+    private static final class AccessOrderQueue {
+        private PolicyNode first;
+        private PolicyNode last;
+
+        void addLast(PolicyNode node) {
+            node.next = null;
+            node.prev = last;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(PolicyNode node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(PolicyNode node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        PolicyNode pollFirst() {
+            PolicyNode node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.nishant.customcache.interfaces;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the values of a cache configured to refresh its entries, or of the misses of a bulk read
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+    /**
+     * @return the value of the key, or null if there is none
+     */
+    V load(K key);
+
+    /**
+     * Computes a fresh value for an entry that is still cached, loads the key again by default
+     *
+     * @return the new value of the key, or null to keep serving the old one until it expires
+     */
+    default V reload(K key, V oldValue) {
+        return load(key);
+    }
+
+    /**
+     * Computes the values of several keys at once, loads them one by one by default.
+     * Override it when the source serves batches cheaper than single keys.
+     *
+     * @return the values found, keys without a value are left out
+     */
+    default Map<K, V> loadAll(Set<? extends K> keys) {
+        Map<K, V> values = new HashMap<>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,39 @@
+package com.nishant.customcache.interfaces;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Propagates the puts and removes of a cache to the store backing it. Evictions and expirations are not propagated.
+ * Implementations must be thread safe.
+ */
+public interface CacheWriter<K, V> {
+    /**
+     * Stores the value of the key, replacing the one stored before
+     */
+    void write(K key, V value);
+
+    /**
+     * Deletes the value of the key, if any
+     */
+    void delete(K key);
+
+    /**
+     * Stores the values of several keys of the same key type at once, writes them one by one by default.
+     * Override it when the store takes batches cheaper than single keys.
+     */
+    default void writeAll(Map<? extends K, ? extends V> entries) {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Deletes the values of several keys of the same key type at once, deletes them one by one by default
+     */
+    default void deleteAll(Collection<? extends K> keys) {
+        for (K key : keys) {
+            delete(key);
+        }
+    }
+}
@@ -4,6 +4,10 @@ import java.util.concurrent.TimeUnit;
 
 public interface Expirable {
     void expire(ExpirableItem item);
+
+    /**
+     * Default time to live for items that are not configured individually
+     */
     long getExpiry();
     TimeUnit getExpiryTimeUnit();
 }
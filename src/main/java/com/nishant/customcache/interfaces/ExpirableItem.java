@@ -1,5 +1,11 @@
 package com.nishant.customcache.interfaces;
 
-public interface ExpirableItem {
+import java.util.concurrent.TimeUnit;
 
+public interface ExpirableItem {
+    /**
+     * Time to live of the item, a non-positive value means the item never expires
+     */
+    long getExpiry();
+    TimeUnit getExpiryTimeUnit();
 }
@@ -0,0 +1,47 @@
+package com.nishant.customcache.interfaces;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Serializer of {@link java.io.Serializable} values through object streams
+ */
+@ThreadSafe
+final class JavaValueSerializer<V> implements ValueSerializer<V> {
+
+    private static final JavaValueSerializer<?> INSTANCE = new JavaValueSerializer<>();
+
+    private JavaValueSerializer() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> JavaValueSerializer<V> instance() {
+        return (JavaValueSerializer<V>) INSTANCE;
+    }
+
+    @Override
+    public byte[] serialize(V value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Value of class [" + value.getClass() + "] is not serializable", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (V) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Stored value could not be deserialized", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.nishant.customcache.interfaces;
+
+import com.nishant.customcache.model.RemovalCause;
+import com.nishant.customcache.model.RemovalNotification;
+
+import java.util.List;
+
+/**
+ * Receives the entries leaving a cache. Notifications are delivered in batches on a dedicated thread, never while a
+ * lock of the cache is held, so a listener may call the cache back. Exceptions thrown by the listener are ignored.
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+    /**
+     * @param value value the entry held, a copy for an off-heap cache
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+    /**
+     * Receives a batch of notifications in the order the entries left the cache, notifies them one by one by default.
+     * Override it when downstream work is cheaper in batches.
+     *
+     * @param notifications batch only valid for the duration of the call
+     */
+    default void onRemovals(List<RemovalNotification<K, V>> notifications) {
+        for (RemovalNotification<K, V> notification : notifications) {
+            onRemoval(notification.getKey(), notification.getValue(), notification.getCause());
+        }
+    }
+
+    /**
+     * Told how many notifications were dropped because the listener fell behind and its buffer filled up
+     */
+    default void onDropped(long count) {
+    }
+}
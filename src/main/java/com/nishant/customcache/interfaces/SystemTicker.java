@@ -0,0 +1,13 @@
+package com.nishant.customcache.interfaces;
+
+/**
+ * {@link Ticker} reading {@link System#nanoTime()}
+ */
+enum SystemTicker implements Ticker {
+    INSTANCE;
+
+    @Override
+    public long read() {
+        return System.nanoTime();
+    }
+}
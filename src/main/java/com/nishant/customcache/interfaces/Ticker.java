@@ -0,0 +1,21 @@
+package com.nishant.customcache.interfaces;
+
+/**
+ * Source of the time the cache expires and refreshes its entries by, in nanoseconds from an arbitrary origin.
+ * Replace the system ticker with a {@link com.nishant.customcache.services.ManualTicker} to test or simulate
+ * expiration without waiting for it.
+ */
+@FunctionalInterface
+public interface Ticker {
+    /**
+     * @return the current time in nanoseconds, only meaningful relative to other reads of the same ticker
+     */
+    long read();
+
+    /**
+     * Returns the ticker reading {@link System#nanoTime()}
+     */
+    static Ticker systemTicker() {
+        return SystemTicker.INSTANCE;
+    }
+}
@@ -0,0 +1,27 @@
+package com.nishant.customcache.interfaces;
+
+import java.io.Serializable;
+
+/**
+ * Turns the values of an off-heap cache into bytes and back. Both directions run outside of any lock.
+ * Implementations must be thread safe.
+ */
+public interface ValueSerializer<V> {
+    /**
+     * @return the bytes of the value, the array is copied off-heap and may be reused afterwards
+     */
+    byte[] serialize(V value);
+
+    /**
+     * @return a value equal to the one serialized into the bytes
+     */
+    V deserialize(byte[] bytes);
+
+    /**
+     * Returns a serializer relying on Java serialization, values have to implement {@link Serializable}.
+     * Object streams cost microseconds per value, a dedicated serializer suits read heavy caches better.
+     */
+    static <V> ValueSerializer<V> java() {
+        return JavaValueSerializer.instance();
+    }
+}
@@ -0,0 +1,12 @@
+package com.nishant.customcache.interfaces;
+
+/**
+ * Computes the weight of an entry for a weight bounded cache. Weights are computed once, when the entry is written.
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+    /**
+     * @return a non-negative weight
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,367 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Open addressed hash table storing the mappings of one key type partition in parallel key and value arrays.
+ * <p>
+ * Linear probing over a power of two capacity keeps get, put and remove constant time without allocating
+ * per lookup. Removal uses backward shift deletion so the table never carries tombstones. No hash is stored per slot,
+ * resizes and shifts ask the key again, which keeps a slot to two references. A timed table also keeps the write and
+ * access time of every mapping side by side in a single long array, an addressed table the off-heap address of every
+ * value.
+ * Callers are responsible for guarding access, optimistic readers go through {@link #indexOf(Object, StampedLock, long)}.
+ */
+@NotThreadSafe
+public class EntryTable<K, V> {
+
+    /**
+     * Slot returned for a key that is not mapped
+     */
+    public static final int ABSENT = -1;
+    /**
+     * Slot returned by an optimistic read that raced with a writer
+     */
+    public static final int RETRY = -2;
+    /**
+     * Address of a slot holding no off-heap value
+     */
+    public static final long NO_ADDRESS = -1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    /**
+     * Write time of the mapping at slot {@code i} at index {@code 2 * i}, its access time right after
+     */
+    private long[] times;
+    private long[] addresses;
+    private int size;
+    private int threshold = loadThreshold(INITIAL_CAPACITY);
+
+    public EntryTable() {
+        this(false);
+    }
+
+    /**
+     * @param timed whether to keep the write and access time of every mapping
+     */
+    public EntryTable(boolean timed) {
+        this(timed, false);
+    }
+
+    /**
+     * @param timed     whether to keep the write and access time of every mapping
+     * @param addressed whether to keep the off-heap address of every value
+     */
+    public EntryTable(boolean timed, boolean addressed) {
+        if (timed) {
+            times = new long[INITIAL_CAPACITY << 1];
+        }
+        if (addressed) {
+            addresses = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Returns the value mapped to the key, or null, without mutating the state
+     */
+    public V get(Object key) {
+        int slot = indexOf(key);
+        return slot == ABSENT ? null : valueAt(slot);
+    }
+
+    /**
+     * Returns the slot of the key, or {@link #ABSENT}, without mutating the state
+     */
+    public int indexOf(Object key) {
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            Object candidate = ks[i];
+            if (candidate == null) {
+                return ABSENT;
+            }
+            if (candidate.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the key, {@link #ABSENT} or {@link #RETRY} without mutating the state.
+     * <p>
+     * Meant to run under an optimistic stamp without holding the lock: every slot is validated
+     * before its key is used, so a concurrent resize or shift is detected before it can be observed.
+     * Whatever the caller then reads from the slot has to be validated against the stamp again.
+     */
+    public int indexOf(Object key, StampedLock lock, long stamp) {
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            Object candidate = ks[i];
+            if (!lock.validate(stamp)) {
+                return RETRY;
+            }
+            if (candidate == null) {
+                return ABSENT;
+            }
+            if (candidate.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    /**
+     * Returns the value at the slot. Optimistic readers may race with a resize, hence the bounds check.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        Object[] vs = values;
+        return slot < vs.length ? (V) vs[slot] : null;
+    }
+
+    public long writeTimeAt(int slot) {
+        long[] ts = times;
+        return slot << 1 < ts.length ? ts[slot << 1] : 0L;
+    }
+
+    public long accessTimeAt(int slot) {
+        long[] ts = times;
+        return (slot << 1) + 1 < ts.length ? ts[(slot << 1) + 1] : 0L;
+    }
+
+    /**
+     * Returns the off-heap address of the value at the slot, or {@link #NO_ADDRESS}.
+     * Bounds-checked like {@link #valueAt(int)} for optimistic readers.
+     */
+    public long addressAt(int slot) {
+        long[] as = addresses;
+        return slot < as.length ? as[slot] : NO_ADDRESS;
+    }
+
+    /**
+     * Mutates the state by recording a read of the slot. Callers hold at least the read lock, so that no writer
+     * shifts another key into the slot meanwhile; readers racing on the same slot only overwrite each other's time.
+     */
+    public void setAccessTime(int slot, long time) {
+        long[] ts = times;
+        if ((slot << 1) + 1 < ts.length) {
+            ts[(slot << 1) + 1] = time;
+        }
+    }
+
+    /**
+     * Mutates the state by mapping the key to the value, returning the previous value or null
+     */
+    public V put(K key, V value) {
+        return put(key, value, 0L);
+    }
+
+    /**
+     * Mutates the state by mapping the key to the value written at the given time, returning the previous value or null
+     */
+    public V put(K key, V value, long time) {
+        return put(key, value, NO_ADDRESS, time);
+    }
+
+    /**
+     * Mutates the state by mapping the key to the value whose bytes are stored off-heap at the address, written at
+     * the given time. Returns the previous value or null, the previous address has to be read beforehand.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value, long address, long time) {
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        int i = indexFor(key, mask);
+        for (Object candidate; (candidate = ks[i]) != null; i = (i + 1) & mask) {
+            if (candidate.equals(key)) {
+                V previous = (V) values[i];
+                values[i] = value;
+                touch(i, address, time);
+                return previous;
+            }
+        }
+        ks[i] = key;
+        values[i] = value;
+        touch(i, address, time);
+        if (++size > threshold) {
+            resize(ks.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Mutates the state by removing the mapping of the key, returning the removed value or null
+     */
+    public V remove(Object key) {
+        int slot = indexOf(key);
+        return slot == ABSENT ? null : removeAt(slot);
+    }
+
+    /**
+     * Mutates the state by removing the mapping at the slot, returning its value.
+     * The following mappings shift back, so the slot may hold another mapping afterwards.
+     */
+    public V removeAt(int slot) {
+        V previous = valueAt(slot);
+        deleteSlot(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Mutates the state by dropping every mapping
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Visits every mapping without mutating the state
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Object[] ks = keys;
+        Object[] vs = values;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != null) {
+                action.accept((K) ks[i], (V) vs[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Mutates the state by growing the table ahead of adding mappings, so that it holds the given number of mappings
+     * without resizing. Mappings copied from another table arrive in the order of its slots, and would pile up in long
+     * probe chains if the table grew while they are added.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = keys.length;
+        while (loadThreshold(capacity) < expectedSize && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of slots, occupied or not
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isTimed() {
+        return times != null;
+    }
+
+    public boolean isAddressed() {
+        return addresses != null;
+    }
+
+    private void touch(int slot, long address, long time) {
+        if (times != null) {
+            times[slot << 1] = time;
+            times[(slot << 1) + 1] = time;
+        }
+        if (addresses != null) {
+            addresses[slot] = address;
+        }
+    }
+
+    /**
+     * Shifts back the entries following the freed slot so that every probe chain stays unbroken
+     */
+    private void deleteSlot(int slot) {
+        Object[] ks = keys;
+        Object[] vs = values;
+        int mask = ks.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; ks[i] != null; i = (i + 1) & mask) {
+            int home = indexFor(ks[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                ks[hole] = ks[i];
+                vs[hole] = vs[i];
+                if (times != null) {
+                    times[hole << 1] = times[i << 1];
+                    times[(hole << 1) + 1] = times[(i << 1) + 1];
+                }
+                if (addresses != null) {
+                    addresses[hole] = addresses[i];
+                }
+                hole = i;
+            }
+        }
+        ks[hole] = null;
+        vs[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldTimes = times;
+        long[] oldAddresses = addresses;
+        Object[] ks = new Object[capacity];
+        Object[] vs = new Object[capacity];
+        long[] ts = oldTimes == null ? null : new long[capacity << 1];
+        long[] as = oldAddresses == null ? null : new long[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = indexFor(oldKeys[j], mask);
+                while (ks[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                ks[i] = oldKeys[j];
+                vs[i] = oldValues[j];
+                if (ts != null) {
+                    ts[i << 1] = oldTimes[j << 1];
+                    ts[(i << 1) + 1] = oldTimes[(j << 1) + 1];
+                }
+                if (as != null) {
+                    as[i] = oldAddresses[j];
+                }
+            }
+        }
+        keys = ks;
+        values = vs;
+        times = ts;
+        addresses = as;
+        threshold = loadThreshold(capacity);
+    }
+
+    private static int loadThreshold(int capacity) {
+        return capacity - (capacity >>> 2);
+    }
+
+    /**
+     * Returns the home slot of the key, its hash with the high bits mixed into the low bits the slots are chosen by
+     */
+    static int indexFor(Object key, int mask) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
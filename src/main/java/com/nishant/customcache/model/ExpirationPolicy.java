@@ -0,0 +1,20 @@
+package com.nishant.customcache.model;
+
+/**
+ * What a time to live is measured against
+ */
+public enum ExpirationPolicy {
+    /**
+     * The whole key type partition expires once its time to live has elapsed since it was created,
+     * which resets the type safety rule of the key type
+     */
+    KEY_TYPE,
+    /**
+     * Every entry expires once its time to live has elapsed since it was last written
+     */
+    AFTER_WRITE,
+    /**
+     * Every entry expires once its time to live has elapsed since it was last written or read
+     */
+    AFTER_ACCESS
+}
@@ -0,0 +1,44 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+/**
+ * Memoized highest type of every value class, the class right below {@link Object} in its hierarchy.
+ * <p>
+ * The superclass chain of a class is walked once, later lookups are a {@link ClassValue} probe whatever the depth of
+ * the hierarchy. The resolved type is attached to the value class itself, so it does not keep a class loader alive
+ * once its classes are unloaded.
+ */
+@ThreadSafe
+public final class HighestTypes {
+
+    private static final ClassValue<Class<?>> HIGHEST_TYPES = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+            return walk(type);
+        }
+    };
+
+    private HighestTypes() {
+    }
+
+    /**
+     * Returns the class right below {@link Object} in the hierarchy of the class, or the class itself when it is
+     * {@link Object}, an interface or a primitive type
+     */
+    public static Class<?> of(Class<?> type) {
+        return HIGHEST_TYPES.get(type);
+    }
+
+    /**
+     * Walks up the superclass chain without memoizing, the baseline of {@link #of(Class)}
+     */
+    static Class<?> walk(Class<?> type) {
+        Class<?> highestType = type;
+        for (Class<?> superclass = type.getSuperclass(); superclass != null && superclass != Object.class;
+             superclass = superclass.getSuperclass()) {
+            highestType = superclass;
+        }
+        return highestType;
+    }
+}
@@ -2,73 +2,1231 @@ package com.nishant.customcache.model;
 
 import com.nishant.customcache.annotations.GuardedBy;
 import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.eviction.PolicyNode;
+import com.nishant.customcache.eviction.WindowTinyLfuPolicy;
 import com.nishant.customcache.interfaces.ExpirableItem;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import com.nishant.customcache.interfaces.Ticker;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import com.nishant.customcache.persistence.Journal;
+import com.nishant.customcache.services.RemovalNotifier;
+import com.nishant.customcache.services.TimingWheel;
+import com.nishant.customcache.stats.StatsCounter;
 
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
-@Getter
-@NoArgsConstructor
 @ThreadSafe
 public class KeyTypeCacheEntry<K, V> implements ExpirableItem {
 
-    public KeyTypeCacheEntry(Class<?> keyType, Class<?> valueType) {
+    /**
+     * Settings shared by every partition of a cache, built once from its {@link com.nishant.customcache.CacheBuilder}.
+     * Partitions are only created through {@link #newPartition(Class, Class, long, TimeUnit)}.
+     */
+    public static final class Settings<K, V> {
+        private ExpirationPolicy expirationPolicy = ExpirationPolicy.KEY_TYPE;
+        private WindowTinyLfuPolicy policy;
+        private long refreshNanos;
+        private BiConsumer<? super K, ? super V> refresher;
+        private Function<Class<?>, StatsCounter> stats = keyType -> StatsCounter.disabled();
+        private ValueSerializer<V> serializer;
+        private int slabSize;
+        private Journal<K, V> journal;
+        private RemovalNotifier<K, V> removals;
+        private Ticker ticker = Ticker.systemTicker();
+        private int segments = 1;
+        private Set<Class<?>> versionedKeyTypes = Collections.emptySet();
+
+        /**
+         * @param expirationPolicy whether the time to live applies to the partition as a whole or to each entry
+         */
+        public Settings<K, V> expirationPolicy(ExpirationPolicy expirationPolicy) {
+            this.expirationPolicy = expirationPolicy;
+            return this;
+        }
+
+        /**
+         * @param policy eviction policy shared by every partition of a size bounded cache, or null when unbounded
+         */
+        public Settings<K, V> evictionPolicy(WindowTinyLfuPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * @param refreshNanos age from which a read hands the entry to the refresher, zero to never refresh
+         * @param refresher    called outside of any lock with the key and value of an entry due for a refresh
+         */
+        public Settings<K, V> refresh(long refreshNanos, BiConsumer<? super K, ? super V> refresher) {
+            this.refreshNanos = refreshNanos;
+            this.refresher = refresher;
+            return this;
+        }
+
+        /**
+         * @param stats counter of a key type, outliving its partitions when they expire or empty
+         */
+        public Settings<K, V> stats(Function<Class<?>, StatsCounter> stats) {
+            this.stats = stats;
+            return this;
+        }
+
+        /**
+         * @param serializer serializer of the values to keep off-heap, or null to keep them on the heap
+         * @param slabSize   size of the off-heap slabs, a power of two bounding the largest serialized value
+         */
+        public Settings<K, V> offHeap(ValueSerializer<V> serializer, int slabSize) {
+            this.serializer = serializer;
+            this.slabSize = slabSize;
+            return this;
+        }
+
+        /**
+         * @param journal journal recording the mutations of the partitions, or null
+         */
+        public Settings<K, V> journal(Journal<K, V> journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * @param removals notifier of the entries leaving the partitions, or null
+         */
+        public Settings<K, V> removals(RemovalNotifier<K, V> removals) {
+            this.removals = removals;
+            return this;
+        }
+
+        /**
+         * @param ticker source of the time the entries expire and refresh by
+         */
+        public Settings<K, V> ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @param segments number of independently locked segments the entries are split into by key hash, a power of two
+         */
+        public Settings<K, V> segments(int segments) {
+            if (segments < 1 || Integer.bitCount(segments) != 1) {
+                throw new IllegalArgumentException("Segments should be a positive power of two");
+            }
+            this.segments = segments;
+            return this;
+        }
+
+        /**
+         * @param versionedKeyTypes key types whose partitions bump the version read by their {@link NearCache}
+         */
+        public Settings<K, V> versionedKeyTypes(Set<Class<?>> versionedKeyTypes) {
+            this.versionedKeyTypes = versionedKeyTypes;
+            return this;
+        }
+
+        /**
+         * Returns a new partition of the key type, without mutating the settings
+         *
+         * @param valueType type of the first value, the partition accepts the values of its hierarchy
+         * @param expiry    time to live of the partition or of its entries, depending on the expiration policy
+         */
+        public KeyTypeCacheEntry<K, V> newPartition(Class<?> keyType, Class<?> valueType, long expiry,
+                                                    TimeUnit expiryTimeUnit) {
+            return new KeyTypeCacheEntry<>(this, keyType, valueType, expiry, expiryTimeUnit);
+        }
+    }
+
+    KeyTypeCacheEntry(Settings<K, V> settings, Class<?> keyType, Class<?> valueType, long expiry,
+                      TimeUnit expiryTimeUnit) {
         this.keyType = keyType;
         this.valueType = getHighestType(valueType);
+        this.expiry = expiry;
+        this.expiryTimeUnit = expiryTimeUnit;
+        this.expirationPolicy = settings.expirationPolicy;
+        this.policy = settings.policy;
+        this.expiryNanos = expirationPolicy != ExpirationPolicy.KEY_TYPE && expiry > 0 ? expiryTimeUnit.toNanos(expiry) : 0L;
+        this.refresher = settings.refresher;
+        this.refreshNanos = refresher == null ? 0L : Math.max(0L, settings.refreshNanos);
+        this.stats = settings.stats.apply(keyType);
+        this.serializer = settings.serializer;
+        this.journal = settings.journal;
+        this.removals = settings.removals;
+        this.ticker = settings.ticker;
+        this.createdNanos = ticker.read();
+        this.versioned = settings.versionedKeyTypes.contains(keyType);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<K>[] segments = (Segment<K>[]) new Segment[settings.segments];
+        this.segments = segments;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(settings.segments);
+        boolean timed = this.expiryNanos > 0 || this.refreshNanos > 0;
+        for (int s = 0; s < this.segments.length; s++) {
+            this.segments[s] = new Segment<>(timed, serializer == null ? null : new OffHeapStore(settings.slabSize));
+        }
     }
 
-    private Class<?> keyType;
-    private Class<?> valueType;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    @GuardedBy("lock") private final Set<KeyValuePair<K, V>> children = new HashSet<>();
+    /**
+     * Stored value of the entries of an unbounded off-heap partition, their bytes are found through their address
+     */
+    private static final Object OFF_HEAP = new Object();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<KeyTypeCacheEntry> VERSION =
+            AtomicLongFieldUpdater.newUpdater(KeyTypeCacheEntry.class, "version");
 
-    public void addEntry(K key, V value) {
-        lock.writeLock().lock();
+    private final Class<?> keyType;
+    private final Class<?> valueType;
+    private final long expiry;
+    private final TimeUnit expiryTimeUnit;
+    private final ExpirationPolicy expirationPolicy;
+    private final WindowTinyLfuPolicy policy;
+    /**
+     * Time to live of every single entry, zero when entries do not expire on their own
+     */
+    private final long expiryNanos;
+    private final long refreshNanos;
+    private final BiConsumer<? super K, ? super V> refresher;
+    private final StatsCounter stats;
+    private final ValueSerializer<V> serializer;
+    /**
+     * Records are appended under the lock, so that the journal orders the mutations of a key the way they were
+     * applied. Puts, removes and evictions encode theirs before taking the lock; sweeps and retirements only learn
+     * which keys they drop under it, so they encode there.
+     */
+    private final Journal<K, V> journal;
+    /**
+     * Removals are reported under the lock, which only hands them to a buffer
+     */
+    private final RemovalNotifier<K, V> removals;
+    private final Ticker ticker;
+    /**
+     * Time of the {@link #ticker} the partition was created at, the start of its time to live
+     */
+    private final long createdNanos;
+    /**
+     * Entries split by the spread hash of their key, each segment under a lock of its own so that the writers of a
+     * hot key type do not all contend on one lock. The value type, the time to live and the retirement belong to the
+     * partition as a whole, so the type safety rule holds across segments.
+     */
+    private final Segment<K>[] segments;
+    /**
+     * Shift keeping the top bits of the spread hash that select a segment
+     */
+    private final int segmentShift;
+    /**
+     * Only written while holding the write lock of every segment, so reading it under any one of them is safe
+     */
+    @GuardedBy("segments") private boolean retired;
+    /**
+     * Pending expiry of the key type, cancelled once the partition is dropped for being empty
+     */
+    private volatile TimingWheel.Timeout expiration;
+    /**
+     * Next segment examined by {@link #sweepExpired(long, int)}
+     */
+    @GuardedBy("sweeping thread") private int sweepSegment;
+    /**
+     * Whether mutations bump the {@link #version}, only the partitions of key types with a near cache pay for it
+     */
+    private final boolean versioned;
+    /**
+     * Bumped after every mutation of a versioned partition, near caches drop the entries they copied at an earlier
+     * version. Writers of distinct segments bump it concurrently, hence the atomic increment.
+     */
+    private volatile long version;
+
+    /**
+     * Slice of the entries of the partition, guarded by a lock of its own
+     */
+    private static final class Segment<K> {
+        final StampedLock lock = new StampedLock();
+        /**
+         * Values of a bounded cache are wrapped in the {@link PolicyNode} tracking their eviction order.
+         * Values of an off-heap partition are replaced by the address of their bytes in the {@link #store}.
+         */
+        @GuardedBy("lock") final EntryTable<K, Object> children;
+        @GuardedBy("lock") final OffHeapStore store;
+        /**
+         * Next slot examined by {@link KeyTypeCacheEntry#sweepExpired(long, int)}
+         */
+        @GuardedBy("lock") int sweepCursor;
+
+        Segment(boolean timed, OffHeapStore store) {
+            this.children = new EntryTable<>(timed, store != null);
+            this.store = store;
+        }
+    }
+
+    /**
+     * Returns the index of the segment holding the key. The top bits of a hash spread differently from the one of
+     * {@link EntryTable} are used, so that the keys of a segment still spread over its whole table.
+     */
+    private int segmentIndex(Object key) {
+        return segments.length == 1 ? 0 : (key.hashCode() * 0x85EBCA6B) >>> segmentShift;
+    }
+
+    private Segment<K> segmentFor(Object key) {
+        return segments[segmentIndex(key)];
+    }
+
+    /**
+     * Returns the indices of the keys grouped by segment, keeping their order within a segment. The keys of segment
+     * {@code s} are found at the positions from {@code bounds[s]} to {@code bounds[s + 1]} of the grouping.
+     *
+     * @param bounds receives the start of the group of every segment, one more than the number of segments
+     */
+    private int[] groupBySegment(List<? extends K> keys, int[] bounds) {
+        int size = keys.size();
+        int[] order = new int[size];
+        if (segments.length == 1) {
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            bounds[1] = size;
+            return order;
+        }
+        int[] segmentOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            segmentOf[i] = segmentIndex(keys.get(i));
+            bounds[segmentOf[i] + 1]++;
+        }
+        for (int s = 1; s < bounds.length; s++) {
+            bounds[s] += bounds[s - 1];
+        }
+        int[] next = Arrays.copyOf(bounds, segments.length);
+        for (int i = 0; i < size; i++) {
+            order[next[segmentOf[i]]++] = i;
+        }
+        return order;
+    }
+
+    private boolean isTimed() {
+        return segments[0].children.isTimed();
+    }
+
+    /**
+     * Mutates the state by invalidating the copies near caches hold of the entries, called under the lock of the
+     * mutation
+     */
+    private void bumpVersion() {
+        if (versioned) {
+            VERSION.incrementAndGet(this);
+        }
+    }
+
+    public boolean addEntry(K key, V value) {
+        return addEntry(key, value, 1);
+    }
+
+    /**
+     * Mutates the state by adding the entry, unless the partition has been retired
+     *
+     * @param weight weight of the entry, only used by a bounded cache
+     * @return false when the partition is retired and the caller has to resolve a live one
+     */
+    public boolean addEntry(K key, V value, int weight) {
+        byte[] bytes = serialize(value);
+        byte[] record = journal == null ? null : journal.encodePut(key, value, System.currentTimeMillis());
+        Segment<K> segment = segmentFor(key);
+        long stamp = writeLock(segment);
         try {
-            KeyValuePair<K, V> pair = new KeyValuePair<>(key, value);
-            children.remove(pair);
-            children.add(pair);
+            if (retired) {
+                return false;
+            }
+            put(segment, key, value, bytes, weight, segment.children.isTimed() ? ticker.read() : 0L);
+            bumpVersion();
+            journal(record);
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            segment.lock.unlockWrite(stamp);
         }
+    }
 
+    /**
+     * Mutates the state by adding the entries under a single lock acquisition per segment, unless the partition has
+     * been retired
+     *
+     * @param weights weights of the entries, only used by a bounded cache
+     * @return false when the partition is retired and the caller has to resolve a live one
+     */
+    public boolean addEntries(List<? extends K> keys, List<? extends V> values, int[] weights) {
+        return restoreEntries(keys, values, weights, null, null, 0) >= 0;
     }
 
-    public Optional<V> getEntry(K key) {
-        lock.readLock().lock();
+    /**
+     * Mutates the state by adding entries that were written and read the given times ago, under a single lock
+     * acquisition per segment, unless the partition has been retired. Entries already past their time to live are
+     * skipped. The entries added to the segments locked before the partition was retired are dropped with it.
+     *
+     * @param weights    weights of the entries, only used by a bounded cache
+     * @param writeAges  nanoseconds elapsed since every entry was written, or null for entries written now
+     * @param accessAges nanoseconds elapsed since every entry was read, or null for entries written now
+     * @param expectedSize number of entries the partition is expected to hold once every batch is added, so that it
+     *                     is sized upfront
+     * @return number of entries added, or -1 when the partition is retired and the caller has to resolve a live one
+     */
+    public int restoreEntries(List<? extends K> keys, List<? extends V> values, int[] weights,
+                              long[] writeAges, long[] accessAges, int expectedSize) {
+        byte[][] serialized = null;
+        if (serializer != null) {
+            serialized = new byte[values.size()][];
+            for (int i = 0; i < serialized.length; i++) {
+                serialized[i] = serializer.serialize(values.get(i));
+            }
+        }
+        byte[][] records = null;
+        if (journal != null) {
+            records = new byte[keys.size()][];
+            long nowMillis = System.currentTimeMillis();
+            for (int i = 0; i < records.length; i++) {
+                long writeAge = writeAges == null ? 0L : writeAges[i];
+                records[i] = journal.encodePut(keys.get(i), values.get(i), nowMillis - TimeUnit.NANOSECONDS.toMillis(writeAge));
+            }
+        }
+        int[] bounds = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, bounds);
+        boolean timed = isTimed();
+        int added = 0;
+        for (int s = 0; s < segments.length; s++) {
+            if (s > 0 && bounds[s] == bounds[s + 1] && expectedSize == 0) {
+                continue;
+            }
+            Segment<K> segment = segments[s];
+            long stamp = writeLock(segment);
+            try {
+                if (retired) {
+                    return -1;
+                }
+                segment.children.ensureCapacity((expectedSize + segments.length - 1) / segments.length);
+                long now = timed ? ticker.read() : 0L;
+                int addedBefore = added;
+                for (int n = bounds[s]; n < bounds[s + 1]; n++) {
+                    int i = order[n];
+                    long writeAge = writeAges == null ? 0L : writeAges[i];
+                    long accessAge = accessAges == null ? 0L : accessAges[i];
+                    if (timed && isExpired(-writeAge, -accessAge, 0L)) {
+                        continue;
+                    }
+                    K key = keys.get(i);
+                    put(segment, key, values.get(i), serialized == null ? null : serialized[i], weights[i], now - writeAge);
+                    if (timed && accessAge != writeAge) {
+                        segment.children.setAccessTime(segment.children.indexOf(key), now - accessAge);
+                    }
+                    if (records != null) {
+                        journal(records[i]);
+                    }
+                    added++;
+                }
+                if (added > addedBefore) {
+                    bumpVersion();
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Mutates the state by mapping the key, storing the serialized bytes off-heap in place of the value if given
+     */
+    @GuardedBy("segment.lock")
+    private void put(Segment<K> segment, K key, V value, byte[] bytes, int weight, long now) {
+        EntryTable<K, Object> children = segment.children;
+        int slot = children.indexOf(key);
+        if (slot != EntryTable.ABSENT) {
+            notifyRemoval(segment, slot, RemovalCause.REPLACED);
+        }
+        long address = storeBytes(segment, slot, bytes);
+        if (policy == null) {
+            children.put(key, segment.store == null ? value : OFF_HEAP, address, now);
+            return;
+        }
+        Object nodeValue = segment.store == null ? value : null;
+        if (slot != EntryTable.ABSENT) {
+            PolicyNode existing = (PolicyNode) children.valueAt(slot);
+            existing.setValue(nodeValue);
+            if (policy.onUpdate(existing, weight)) {
+                children.put(key, existing, address, now);
+                return;
+            }
+        }
+        PolicyNode node = new PolicyNode(key, nodeValue, this);
+        children.put(key, node, address, now);
+        policy.onAdd(node, weight);
+    }
+
+    /**
+     * Mutates the state by storing the bytes off-heap in place of those of the slot, if any
+     *
+     * @return the address of the bytes, or {@link EntryTable#NO_ADDRESS} for an on-heap partition
+     */
+    @GuardedBy("segment.lock")
+    private long storeBytes(Segment<K> segment, int slot, byte[] bytes) {
+        if (segment.store == null) {
+            return EntryTable.NO_ADDRESS;
+        }
+        if (slot >= 0) {
+            segment.store.free(segment.children.addressAt(slot));
+        }
+        return segment.store.store(bytes);
+    }
+
+    /**
+     * Mutates the state by removing the mapping at the slot and freeing its off-heap bytes
+     *
+     * @return the stored value of the mapping
+     */
+    @GuardedBy("segment.lock")
+    private Object removeAt(Segment<K> segment, int slot) {
+        if (segment.store != null) {
+            segment.store.free(segment.children.addressAt(slot));
+        }
+        return segment.children.removeAt(slot);
+    }
+
+    private byte[] serialize(V value) {
+        return serializer == null ? null : serializer.serialize(value);
+    }
+
+    /**
+     * Mutates the state by appending the record of a mutation just applied to the journal, if any
+     */
+    @GuardedBy("segment.lock")
+    private void journal(byte[] record) {
+        if (journal != null) {
+            journal.append(record);
+        }
+    }
+
+    private byte[] journalRemove(K key, byte type) {
+        return journal == null ? null : journal.encodeRemove(key, type);
+    }
+
+    /**
+     * Reports the entry at the slot as leaving the partition for the cause, or as expired when it already outlived
+     * its time to live
+     */
+    @GuardedBy("segment.lock")
+    private void notifyRemoval(Segment<K> segment, int slot, RemovalCause cause) {
+        if (removals == null) {
+            return;
+        }
+        EntryTable<K, Object> children = segment.children;
+        if (cause != RemovalCause.EXPIRED && children.isTimed()
+                && isExpired(children.writeTimeAt(slot), children.accessTimeAt(slot), ticker.read())) {
+            cause = RemovalCause.EXPIRED;
+        }
+        removals.removed(children.keyAt(slot), reportedValueAt(segment, slot), cause);
+    }
+
+    /**
+     * Returns the value at the slot as reported to the removal notifier: the value itself, or a copy of its off-heap
+     * bytes that the notifier deserializes outside of the lock
+     */
+    @GuardedBy("segment.lock")
+    private Object reportedValueAt(Segment<K> segment, int slot) {
+        if (segment.store != null) {
+            return segment.store.read(segment.children.addressAt(slot));
+        }
+        Object value = segment.children.valueAt(slot);
+        return policy == null ? value : ((PolicyNode) value).getValue();
+    }
+
+    /**
+     * Returns the value mapped to the key, or null, without mutating the state.
+     * Seqlock style: probes optimistically and only falls back to the read lock when a writer interleaved.
+     * An entry past its time to live reads as absent and is left for {@link #sweepExpired(long, int)} to remove,
+     * an entry past its refresh age is still returned after being handed to the refresher.
+     */
+    public V getEntry(K key) {
+        Segment<K> segment = segmentFor(key);
+        EntryTable<K, Object> children = segment.children;
+        OffHeapStore store = segment.store;
+        boolean timed = children.isTimed();
+        long now = timed ? ticker.read() : 0L;
+        int slot = EntryTable.RETRY;
+        Object value = null;
+        byte[] bytes = null;
+        long writeTime = 0L;
+        long accessTime = 0L;
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            slot = children.indexOf(key, segment.lock, stamp);
+            if (slot >= 0) {
+                value = children.valueAt(slot);
+                if (store != null) {
+                    bytes = store.read(children.addressAt(slot));
+                }
+                if (timed) {
+                    writeTime = children.writeTimeAt(slot);
+                    accessTime = children.accessTimeAt(slot);
+                }
+                if (!segment.lock.validate(stamp)) {
+                    slot = EntryTable.RETRY;
+                }
+            }
+        }
+        if (slot == EntryTable.RETRY) {
+            stamp = readLock(segment);
+            try {
+                slot = children.indexOf(key);
+                if (slot >= 0) {
+                    value = children.valueAt(slot);
+                    if (store != null) {
+                        bytes = store.read(children.addressAt(slot));
+                    }
+                    if (timed) {
+                        writeTime = children.writeTimeAt(slot);
+                        accessTime = children.accessTimeAt(slot);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return present(segment, key, slot, value, bytes, writeTime, accessTime, now);
+    }
+
+    /**
+     * Visits the live entries of the keys without mutating the state, probing the keys of every segment under a
+     * single optimistic stamp and falling back to a single read lock acquisition when a writer interleaved
+     */
+    public void getEntries(List<? extends K> keys, BiConsumer<? super K, ? super V> action) {
+        int size = keys.size();
+        boolean timed = isTimed();
+        long now = timed ? ticker.read() : 0L;
+        int[] slots = new int[size];
+        Object[] values = new Object[size];
+        byte[][] serialized = serializer == null ? null : new byte[size][];
+        long[] times = timed ? new long[size << 1] : null;
+        int[] bounds = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, bounds);
+        for (int s = 0; s < segments.length; s++) {
+            if (bounds[s] == bounds[s + 1]) {
+                continue;
+            }
+            Segment<K> segment = segments[s];
+            long stamp = segment.lock.tryOptimisticRead();
+            if (stamp == 0L || !probe(segment, keys, order, bounds[s], bounds[s + 1], slots, values, serialized, times, stamp)
+                    || !segment.lock.validate(stamp)) {
+                stamp = readLock(segment);
+                try {
+                    probe(segment, keys, order, bounds[s], bounds[s + 1], slots, values, serialized, times, 0L);
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            K key = keys.get(i);
+            byte[] bytes = serialized == null ? null : serialized[i];
+            V value = timed
+                    ? present(segmentFor(key), key, slots[i], values[i], bytes, times[i << 1], times[(i << 1) + 1], now)
+                    : present(segmentFor(key), key, slots[i], values[i], bytes, 0L, 0L, now);
+            if (value != null) {
+                action.accept(key, value);
+            }
+        }
+    }
+
+    /**
+     * Visits the live entries among the slots following the cursor without mutating the state. The slots are
+     * copied under the read lock of their segment and visited after releasing it, so a writer waits for one batch
+     * at most.
+     *
+     * @param cursor   zero to start with, then the value returned by the previous call
+     * @param maxSlots most slots to examine
+     * @param visitor  receives every entry with the nanoseconds elapsed since it was written and last read
+     * @return the cursor to resume from, the segment in its upper half and the slot in its lower half, or -1 once the
+     * end of the last segment is reached
+     */
+    @SuppressWarnings("unchecked")
+    public long visitEntries(long cursor, int maxSlots, EntryVisitor<? super K, ? super V> visitor) {
+        int segmentIndex = (int) (cursor >>> 32);
+        int fromSlot = (int) cursor;
+        Segment<K> segment = segments[segmentIndex];
+        EntryTable<K, Object> children = segment.children;
+        Object[] keys = new Object[maxSlots];
+        Object[] stored = new Object[maxSlots];
+        long[] times = new long[maxSlots << 1];
+        int count = 0;
+        long next;
+        long now;
+        long stamp = readLock(segment);
         try {
-            return children.parallelStream()
-                    .filter(child -> child.getKey().equals(key))
-                    .map(child -> child.getValue()).findFirst();
+            boolean timed = children.isTimed();
+            now = timed ? ticker.read() : 0L;
+            int capacity = children.capacity();
+            int end = Math.min(capacity, fromSlot + maxSlots);
+            for (int slot = fromSlot; slot < end; slot++) {
+                K key = children.keyAt(slot);
+                if (key == null) {
+                    continue;
+                }
+                if (timed) {
+                    long writeTime = children.writeTimeAt(slot);
+                    long accessTime = children.accessTimeAt(slot);
+                    if (isExpired(writeTime, accessTime, now)) {
+                        continue;
+                    }
+                    times[count << 1] = writeTime;
+                    times[(count << 1) + 1] = accessTime;
+                }
+                keys[count] = key;
+                stored[count] = segment.store != null ? segment.store.read(children.addressAt(slot)) : children.valueAt(slot);
+                count++;
+            }
+            if (end < capacity) {
+                next = ((long) segmentIndex << 32) | end;
+            } else {
+                next = segmentIndex + 1 < segments.length ? (long) (segmentIndex + 1) << 32 : -1L;
+            }
         } finally {
-            lock.readLock().unlock();
+            segment.lock.unlockRead(stamp);
         }
+        for (int i = 0; i < count; i++) {
+            Object value = stored[i];
+            if (segment.store != null) {
+                value = serializer.deserialize((byte[]) value);
+            } else if (policy != null) {
+                value = ((PolicyNode) value).getValue();
+            }
+            visitor.visit((K) keys[i], (V) value, now - times[i << 1], now - times[(i << 1) + 1]);
+        }
+        return next;
+    }
+
+    /**
+     * Receiver of the entries of {@link #visitEntries(long, int, EntryVisitor)}
+     */
+    @FunctionalInterface
+    public interface EntryVisitor<K, V> {
+        /**
+         * @param writeAge  nanoseconds elapsed since the entry was written, zero when the partition keeps no times
+         * @param accessAge nanoseconds elapsed since the entry was last read, zero when the partition keeps no times
+         */
+        void visit(K key, V value, long writeAge, long accessAge);
+    }
+
+    /**
+     * Records the slot, stored value, off-heap bytes and times of the keys of the segment found between the given
+     * positions of the grouping, optimistically when given a stamp
+     *
+     * @return false when an optimistic probe raced with a writer
+     */
+    private boolean probe(Segment<K> segment, List<? extends K> keys, int[] order, int from, int to, int[] slots,
+                          Object[] values, byte[][] serialized, long[] times, long stamp) {
+        EntryTable<K, Object> children = segment.children;
+        for (int n = from; n < to; n++) {
+            int i = order[n];
+            int slot = stamp == 0L ? children.indexOf(keys.get(i)) : children.indexOf(keys.get(i), segment.lock, stamp);
+            if (slot == EntryTable.RETRY) {
+                return false;
+            }
+            slots[i] = slot;
+            if (slot >= 0) {
+                values[i] = children.valueAt(slot);
+                if (serialized != null) {
+                    serialized[i] = segment.store.read(children.addressAt(slot));
+                }
+                if (times != null) {
+                    times[i << 1] = children.writeTimeAt(slot);
+                    times[(i << 1) + 1] = children.accessTimeAt(slot);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of a probed slot, or null when absent or expired. Runs outside of the lock and records the
+     * read with the access time, the eviction policy and the refresher. Off-heap values are deserialized from the
+     * bytes copied under the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private V present(Segment<K> segment, K key, int slot, Object value, byte[] bytes, long writeTime,
+                      long accessTime, long now) {
+        if (slot == EntryTable.ABSENT || isExpired(writeTime, accessTime, now)) {
+            return null;
+        }
+        if (expirationPolicy == ExpirationPolicy.AFTER_ACCESS && expiryNanos > 0) {
+            touch(segment, key, now);
+        }
+        if (policy != null) {
+            PolicyNode node = (PolicyNode) value;
+            policy.recordAccess(node);
+            value = node.getValue();
+        }
+        if (serializer != null) {
+            value = serializer.deserialize(bytes);
+        }
+        if (refreshNanos > 0 && now - writeTime >= refreshNanos) {
+            refresher.accept(key, (V) value);
+        }
+        return (V) value;
+    }
+
+    /**
+     * Mutates the state by recording the read of the key. The slot is found again under the read lock, a slot probed
+     * optimistically may since have been handed to another key by a writer.
+     */
+    private void touch(Segment<K> segment, K key, long now) {
+        long stamp = readLock(segment);
+        try {
+            int slot = segment.children.indexOf(key);
+            if (slot >= 0) {
+                segment.children.setAccessTime(slot, now);
+            }
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Mutates the state by replacing the value of a live entry, only if it still holds the expected value.
+     * Off-heap values are copies, so they are compared with equals rather than identity.
+     *
+     * @param weight weight of the new value, only used by a bounded cache
+     * @return true if the value was replaced
+     */
+    public boolean replaceEntry(K key, V expected, V value, int weight) {
+        byte[] bytes = serialize(value);
+        byte[] record = journal == null ? null : journal.encodePut(key, value, System.currentTimeMillis());
+        Segment<K> segment = segmentFor(key);
+        EntryTable<K, Object> children = segment.children;
+        long stamp = writeLock(segment);
+        try {
+            int slot = children.indexOf(key);
+            if (retired || slot == EntryTable.ABSENT) {
+                return false;
+            }
+            boolean timed = children.isTimed();
+            long now = timed ? ticker.read() : 0L;
+            if (timed && isExpired(children.writeTimeAt(slot), children.accessTimeAt(slot), now)) {
+                return false;
+            }
+            if (!holds(segment, slot, expected)) {
+                return false;
+            }
+            notifyRemoval(segment, slot, RemovalCause.REPLACED);
+            if (policy == null) {
+                children.put(key, segment.store == null ? value : OFF_HEAP, storeBytes(segment, slot, bytes), now);
+                bumpVersion();
+                journal(record);
+                return true;
+            }
+            PolicyNode node = (PolicyNode) children.valueAt(slot);
+            node.setValue(segment.store == null ? value : null);
+            if (!policy.onUpdate(node, weight)) {
+                // already chosen for eviction
+                return false;
+            }
+            children.put(key, node, storeBytes(segment, slot, bytes), now);
+            bumpVersion();
+            journal(record);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns whether the slot holds the expected value without mutating the state
+     */
+    @GuardedBy("segment.lock")
+    private boolean holds(Segment<K> segment, int slot, V expected) {
+        if (segment.store != null) {
+            return expected.equals(serializer.deserialize(segment.store.read(segment.children.addressAt(slot))));
+        }
+        Object value = segment.children.valueAt(slot);
+        return (policy == null ? value : ((PolicyNode) value).getValue()) == expected;
     }
 
     public boolean removeEntry(K key) {
-        lock.writeLock().lock();
+        byte[] record = journalRemove(key, Journal.REMOVE);
+        Segment<K> segment = segmentFor(key);
+        long stamp = writeLock(segment);
+        try {
+            int slot = segment.children.indexOf(key);
+            if (slot == EntryTable.ABSENT) {
+                return false;
+            }
+            notifyRemoval(segment, slot, RemovalCause.EXPLICIT);
+            Object removed = removeAt(segment, slot);
+            bumpVersion();
+            journal(record);
+            if (policy != null) {
+                policy.onRemove((PolicyNode) removed);
+            }
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Mutates the state by removing the entries of the keys under a single lock acquisition per segment
+     *
+     * @return number of entries removed
+     */
+    public int removeEntries(List<? extends K> keys) {
+        byte[][] records = null;
+        if (journal != null) {
+            records = new byte[keys.size()][];
+            for (int i = 0; i < records.length; i++) {
+                records[i] = journal.encodeRemove(keys.get(i), Journal.REMOVE);
+            }
+        }
+        int[] bounds = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, bounds);
+        int removed = 0;
+        for (int s = 0; s < segments.length; s++) {
+            if (bounds[s] == bounds[s + 1]) {
+                continue;
+            }
+            Segment<K> segment = segments[s];
+            long stamp = writeLock(segment);
+            try {
+                for (int n = bounds[s]; n < bounds[s + 1]; n++) {
+                    int i = order[n];
+                    int slot = segment.children.indexOf(keys.get(i));
+                    if (slot != EntryTable.ABSENT) {
+                        notifyRemoval(segment, slot, RemovalCause.EXPLICIT);
+                        Object value = removeAt(segment, slot);
+                        bumpVersion();
+                        if (records != null) {
+                            journal(records[i]);
+                        }
+                        removed++;
+                        if (policy != null) {
+                            policy.onRemove((PolicyNode) value);
+                        }
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Mutates the state by removing an entry the eviction policy chose, unless it was replaced in the meantime
+     *
+     * @return true if the entry was removed
+     */
+    @SuppressWarnings("unchecked")
+    public boolean evictEntry(PolicyNode node) {
+        byte[] record = journalRemove((K) node.getKey(), Journal.REMOVE);
+        Segment<K> segment = segmentFor(node.getKey());
+        long stamp = writeLock(segment);
+        try {
+            int slot = segment.children.indexOf(node.getKey());
+            if (slot == EntryTable.ABSENT || segment.children.valueAt(slot) != node) {
+                return false;
+            }
+            notifyRemoval(segment, slot, RemovalCause.EVICTED);
+            removeAt(segment, slot);
+            bumpVersion();
+            journal(record);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Mutates the state by removing the expired entries among the next slots of the segments, resuming where the
+     * previous sweep stopped so that repeated calls cover every segment a bounded batch at a time
+     *
+     * @param now     time of the ticker at the sweep
+     * @param maxSlots most slots to examine
+     * @return number of slots examined
+     */
+    public int sweepExpired(long now, int maxSlots) {
+        if (expiryNanos <= 0) {
+            return 0;
+        }
+        int start = sweepSegment;
+        int scanned = 0;
+        int visited = 0;
+        for (; visited < segments.length && scanned < maxSlots; visited++) {
+            scanned += sweepExpired(segments[(start + visited) & (segments.length - 1)], now, maxSlots - scanned);
+        }
+        // a segment cut short by the budget is resumed first on the next sweep
+        sweepSegment = (start + visited - (scanned < maxSlots ? 0 : 1)) & (segments.length - 1);
+        return scanned;
+    }
+
+    private int sweepExpired(Segment<K> segment, long now, int maxSlots) {
+        EntryTable<K, Object> children = segment.children;
+        long stamp = writeLock(segment);
+        try {
+            int capacity = children.capacity();
+            int scanned = Math.min(maxSlots, capacity);
+            int slot = segment.sweepCursor;
+            int expired = 0;
+            for (int n = 0; n < scanned; n++) {
+                if (slot >= capacity) {
+                    slot = 0;
+                }
+                if (children.keyAt(slot) != null
+                        && isExpired(children.writeTimeAt(slot), children.accessTimeAt(slot), now)) {
+                    // the following entries shift back into the freed slot, examine it again
+                    journal(journalRemove(children.keyAt(slot), Journal.EXPIRE));
+                    notifyRemoval(segment, slot, RemovalCause.EXPIRED);
+                    Object removed = removeAt(segment, slot);
+                    if (policy != null) {
+                        policy.onRemove((PolicyNode) removed);
+                    }
+                    expired++;
+                } else {
+                    slot++;
+                }
+            }
+            segment.sweepCursor = slot;
+            if (expired > 0) {
+                bumpVersion();
+                stats.recordExpirations(expired);
+            }
+            return scanned;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns whether an entry written and read at the given times outlived its time to live, without mutating the state
+     */
+    private boolean isExpired(long writeTime, long accessTime, long now) {
+        if (expiryNanos <= 0) {
+            return false;
+        }
+        long since = expirationPolicy == ExpirationPolicy.AFTER_ACCESS ? accessTime : writeTime;
+        return now - since >= expiryNanos;
+    }
+
+    /**
+     * Mutates the state by retiring the partition and dropping all of its entries, journaled as the expiry of its
+     * key type. Every segment is locked at once, so no put lands in a segment already dropped. Retiring a partition
+     * already retired journals and reports nothing, since its successor may hold live entries of the key type.
+     *
+     * @return number of entries dropped
+     */
+    public int retire() {
+        long[] stamps = writeLockAll();
+        try {
+            if (retired) {
+                return 0;
+            }
+            retired = true;
+            bumpVersion();
+            if (journal != null) {
+                journal.append(journal.encodeExpireKeyType(keyType));
+            }
+            if (removals != null) {
+                notifyRetired();
+            }
+            int dropped = 0;
+            for (Segment<K> segment : segments) {
+                if (policy != null) {
+                    segment.children.forEach((key, node) -> policy.onRemove((PolicyNode) node));
+                }
+                dropped += segment.children.size();
+                segment.children.clear();
+                if (segment.store != null) {
+                    segment.store.clear();
+                }
+            }
+            return dropped;
+        } finally {
+            unlockWriteAll(stamps);
+        }
+    }
+
+    /**
+     * Reports every entry of the partition as expired at once, taking a single slot of the removal buffer
+     */
+    @GuardedBy("segments")
+    private void notifyRetired() {
+        int size = 0;
+        for (Segment<K> segment : segments) {
+            size += segment.children.size();
+        }
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int count = 0;
+        for (Segment<K> segment : segments) {
+            EntryTable<K, Object> children = segment.children;
+            for (int slot = 0, capacity = children.capacity(); slot < capacity && count < size; slot++) {
+                K key = children.keyAt(slot);
+                if (key != null) {
+                    keys[count] = key;
+                    values[count++] = reportedValueAt(segment, slot);
+                }
+            }
+        }
+        removals.removedAll(keys, values, count, RemovalCause.EXPIRED);
+    }
+
+    /**
+     * Mutates the state by retiring the partition only when it holds no entries. Every segment is locked at once, so
+     * a put racing with the check either lands before and keeps the partition, or finds it retired and resolves a
+     * new one, which is what resets the type safety rule of the key type.
+     *
+     * @return true if the partition is retired
+     */
+    public boolean retireIfEmpty() {
+        long[] stamps = writeLockAll();
         try {
-            return children.remove(new KeyValuePair<K, V>(key, null));
+            boolean empty = true;
+            for (Segment<K> segment : segments) {
+                empty &= segment.children.isEmpty();
+            }
+            if (empty && !retired) {
+                retired = true;
+                bumpVersion();
+            }
+            return retired;
         } finally {
-            lock.writeLock().unlock();
+            unlockWriteAll(stamps);
         }
     }
 
+    /**
+     * Mutates the state by keeping the pending expiry of the key type, so that it can be cancelled
+     */
+    public void setExpiration(TimingWheel.Timeout expiration) {
+        this.expiration = expiration;
+    }
 
-    private static Class<?> getHighestType(Class<?> valueClazz) {
-        Class<?> valueHighestType = valueClazz;
-        while (!valueClazz.equals(Object.class)) {
-            valueHighestType = valueClazz;
-            valueClazz = valueClazz.getSuperclass();
+    /**
+     * Mutates the state by cancelling the pending expiry of the key type, if any
+     */
+    public void cancelExpiration() {
+        TimingWheel.Timeout timeout = expiration;
+        if (timeout != null) {
+            timeout.cancel();
+            expiration = null;
         }
-        return valueHighestType;
     }
 
+    public Class<?> getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Highest type of the values the partition accepts
+     */
+    public Class<?> getValueType() {
+        return valueType;
+    }
+
+    @Override
+    public long getExpiry() {
+        return expiry;
+    }
+
+    @Override
+    public TimeUnit getExpiryTimeUnit() {
+        return expiryTimeUnit;
+    }
+
+    public ExpirationPolicy getExpirationPolicy() {
+        return expirationPolicy;
+    }
+
+    public long getExpiryNanos() {
+        return expiryNanos;
+    }
+
+    public StatsCounter getStats() {
+        return stats;
+    }
+
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    public boolean isVersioned() {
+        return versioned;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isRetired() {
+        Segment<K> segment = segments[0];
+        long stamp = readLock(segment);
+        try {
+            return retired;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * Acquires the write lock of the segment, recording the time spent waiting when another thread holds it
+     */
+    private long writeLock(Segment<K> segment) {
+        long stamp = segment.lock.tryWriteLock();
+        if (stamp == 0L) {
+            long start = System.nanoTime();
+            stamp = segment.lock.writeLock();
+            stats.recordLockWait(System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    /**
+     * Acquires the read lock of the segment, recording the time spent waiting when a writer holds it
+     */
+    private long readLock(Segment<K> segment) {
+        long stamp = segment.lock.tryReadLock();
+        if (stamp == 0L) {
+            long start = System.nanoTime();
+            stamp = segment.lock.readLock();
+            stats.recordLockWait(System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    /**
+     * Acquires the write locks of every segment in order, the only order they are ever held together in
+     */
+    private long[] writeLockAll() {
+        long[] stamps = new long[segments.length];
+        for (int s = 0; s < stamps.length; s++) {
+            stamps[s] = writeLock(segments[s]);
+        }
+        return stamps;
+    }
+
+    private void unlockWriteAll(long[] stamps) {
+        for (int s = stamps.length - 1; s >= 0; s--) {
+            segments[s].lock.unlockWrite(stamps[s]);
+        }
+    }
+
+    /**
+     * Returns the class right below {@link Object} in the hierarchy of the value class, the unit of type safety.
+     * Memoized per class by {@link HighestTypes}.
+     */
+    public static Class<?> getHighestType(Class<?> valueClazz) {
+        return HighestTypes.of(valueClazz);
+    }
+
+    /**
+     * Returns whether the value may be added under the type safety rule of the partition, without walking the
+     * hierarchy of its class when it is exactly the highest type
+     */
     public boolean matchesHighestTypeOfValue(V value) {
-        return this.valueType.equals(getHighestType(value.getClass()));
+        Class<?> valueClass = value.getClass();
+        return valueClass == valueType || HighestTypes.of(valueClass) == valueType;
     }
 
     @Override
@@ -84,12 +1242,40 @@ public class KeyTypeCacheEntry<K, V> implements ExpirableItem {
         return Objects.hash(keyType);
     }
 
+    /**
+     * Returns the number of entries without mutating the state, summed one segment at a time
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K> segment : segments) {
+            long stamp = readLock(segment);
+            try {
+                size += segment.children.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
     public boolean isEmpty() {
-        lock.readLock().lock();
-        try {
-            return children.isEmpty();
-        }finally {
-            lock.readLock().unlock();
+        for (Segment<K> segment : segments) {
+            long stamp = readLock(segment);
+            try {
+                if (!segment.children.isEmpty()) {
+                    return false;
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
         }
+        return true;
+    }
+
+    /**
+     * Returns the number of independently locked segments the entries are split into, without mutating the state
+     */
+    public int getSegmentCount() {
+        return segments.length;
     }
 }
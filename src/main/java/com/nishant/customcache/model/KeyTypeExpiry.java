@@ -0,0 +1,21 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.Immutable;
+import com.nishant.customcache.annotations.ThreadSafe;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to live configured for the partition of one key type
+ */
+@Getter
+@AllArgsConstructor
+@ThreadSafe
+@Immutable
+public class KeyTypeExpiry {
+    private final Class<?> keyType;
+    private final long expiry;
+    private final TimeUnit expiryTimeUnit;
+}
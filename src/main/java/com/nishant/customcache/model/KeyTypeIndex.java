@@ -0,0 +1,145 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+/**
+ * Open addressed index of key type partitions, hashed on the identity of the key {@link Class}.
+ * <p>
+ * Lookups are a constant time, allocation free and lock free linear probe. Key types are added and dropped
+ * rarely, so mutations copy the table and publish the copy with a volatile write. Removal uses backward shift
+ * deletion so the table never carries tombstones. Callers are responsible for serialising mutations.
+ */
+@ThreadSafe
+public class KeyTypeIndex<K, V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private volatile KeyTypeCacheEntry<K, V>[] table = newTable(INITIAL_CAPACITY);
+    private int size;
+
+    /**
+     * Returns the partition registered for the key type, or null without mutating the state
+     */
+    public KeyTypeCacheEntry<K, V> get(Class<?> keyType) {
+        KeyTypeCacheEntry<K, V>[] tab = table;
+        int mask = tab.length - 1;
+        for (int i = indexFor(keyType, mask); ; i = (i + 1) & mask) {
+            KeyTypeCacheEntry<K, V> entry = tab[i];
+            if (entry == null || entry.getKeyType() == keyType) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by registering the partition under its key type, replacing any previous one
+     */
+    public void add(KeyTypeCacheEntry<K, V> entry) {
+        KeyTypeCacheEntry<K, V>[] tab = copy(table, (size + 1) << 1 > table.length ? table.length << 1 : table.length);
+        int mask = tab.length - 1;
+        int i = indexFor(entry.getKeyType(), mask);
+        while (tab[i] != null) {
+            if (tab[i].getKeyType() == entry.getKeyType()) {
+                tab[i] = entry;
+                table = tab;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        tab[i] = entry;
+        size++;
+        table = tab;
+    }
+
+    /**
+     * Mutates the state by removing the given partition instance, if it is still the registered one
+     */
+    public boolean remove(KeyTypeCacheEntry<K, V> entry) {
+        KeyTypeCacheEntry<K, V>[] tab = table;
+        int mask = tab.length - 1;
+        for (int i = indexFor(entry.getKeyType(), mask); tab[i] != null; i = (i + 1) & mask) {
+            if (tab[i] == entry) {
+                KeyTypeCacheEntry<K, V>[] copy = copy(tab, tab.length);
+                deleteSlot(copy, i);
+                size--;
+                table = copy;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the registered partitions without mutating the state
+     */
+    public KeyTypeCacheEntry<K, V>[] snapshot() {
+        KeyTypeCacheEntry<K, V>[] tab = table;
+        int count = 0;
+        for (KeyTypeCacheEntry<K, V> entry : tab) {
+            if (entry != null) {
+                count++;
+            }
+        }
+        KeyTypeCacheEntry<K, V>[] entries = newTable(count);
+        int n = 0;
+        for (KeyTypeCacheEntry<K, V> entry : tab) {
+            if (entry != null) {
+                entries[n++] = entry;
+            }
+        }
+        return entries;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Shifts back the entries following the freed slot so that every probe chain stays unbroken
+     */
+    private static <K, V> void deleteSlot(KeyTypeCacheEntry<K, V>[] tab, int slot) {
+        int mask = tab.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; tab[i] != null; i = (i + 1) & mask) {
+            int home = indexFor(tab[i].getKeyType(), mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                tab[hole] = tab[i];
+                hole = i;
+            }
+        }
+        tab[hole] = null;
+    }
+
+    private static <K, V> KeyTypeCacheEntry<K, V>[] copy(KeyTypeCacheEntry<K, V>[] old, int capacity) {
+        if (capacity == old.length) {
+            return old.clone();
+        }
+        KeyTypeCacheEntry<K, V>[] tab = newTable(capacity);
+        int mask = capacity - 1;
+        for (KeyTypeCacheEntry<K, V> entry : old) {
+            if (entry != null) {
+                int i = indexFor(entry.getKeyType(), mask);
+                while (tab[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                tab[i] = entry;
+            }
+        }
+        return tab;
+    }
+
+    private static int indexFor(Class<?> keyType, int mask) {
+        int h = System.identityHashCode(keyType);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static <K, V> KeyTypeCacheEntry<K, V>[] newTable(int capacity) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        KeyTypeCacheEntry<K, V>[] table = (KeyTypeCacheEntry<K, V>[]) new KeyTypeCacheEntry[capacity];
+        return table;
+    }
+}
@@ -0,0 +1,132 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link EntryTable} specialised for long keys, stored unboxed in a long array.
+ * <p>
+ * Values are never null, so a null value marks a free slot and every long is a valid key, see {@link PrimitiveEntryTable}.
+ * Callers are responsible for guarding access, optimistic readers go through {@link #indexOf(long, StampedLock, long)}.
+ */
+@NotThreadSafe
+public class LongEntryTable<V> extends PrimitiveEntryTable<V> {
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /**
+     * Key array being filled by a resize, null otherwise
+     */
+    private long[] resizedKeys;
+
+    /**
+     * @param timed whether to keep the write and access time of every mapping
+     */
+    public LongEntryTable(boolean timed) {
+        super(timed);
+    }
+
+    /**
+     * Returns the value mapped to the key, or null, without mutating the state
+     */
+    public V get(long key) {
+        int slot = indexOf(key);
+        return slot == EntryTable.ABSENT ? null : valueAt(slot);
+    }
+
+    /**
+     * Returns the slot of the key, or {@link EntryTable#ABSENT}, without mutating the state
+     */
+    public int indexOf(long key) {
+        long[] ks = keys;
+        Object[] vs = values;
+        int mask = ks.length - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            if (vs[i] == null) {
+                return EntryTable.ABSENT;
+            }
+            if (ks[i] == key) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the key, {@link EntryTable#ABSENT} or {@link EntryTable#RETRY} without mutating the state.
+     * Same contract as {@link EntryTable#indexOf(Object, StampedLock, long)}: whatever the caller then reads from the
+     * slot has to be validated against the stamp again.
+     */
+    public int indexOf(long key, StampedLock lock, long stamp) {
+        long[] ks = keys;
+        Object[] vs = values;
+        int mask = Math.min(ks.length, vs.length) - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask) {
+            Object value = vs[i];
+            long candidate = ks[i];
+            if (!lock.validate(stamp)) {
+                return EntryTable.RETRY;
+            }
+            if (value == null) {
+                return EntryTable.ABSENT;
+            }
+            if (candidate == key) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by mapping the key to the non-null value written at the given time, returning the previous
+     * value or null
+     */
+    public V put(long key, V value, long time) {
+        long[] ks = keys;
+        Object[] vs = values;
+        int mask = ks.length - 1;
+        int i = indexFor(key, mask);
+        while (vs[i] != null && ks[i] != key) {
+            i = (i + 1) & mask;
+        }
+        ks[i] = key;
+        return store(i, value, time);
+    }
+
+    /**
+     * Mutates the state by removing the mapping of the key, returning the removed value or null
+     */
+    public V remove(long key) {
+        int slot = indexOf(key);
+        return slot == EntryTable.ABSENT ? null : removeAt(slot);
+    }
+
+    @Override
+    int homeOf(int slot, int mask) {
+        return indexFor(keys[slot], mask);
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void startResize(int capacity) {
+        resizedKeys = new long[capacity];
+    }
+
+    @Override
+    void transferKey(int from, int to) {
+        resizedKeys[to] = keys[from];
+    }
+
+    @Override
+    void finishResize() {
+        keys = resizedKeys;
+        resizedKeys = null;
+    }
+
+    static int indexFor(long key, int mask) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,87 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+/**
+ * Small direct mapped front holding copies of the entries of read-mostly key types, one per thread.
+ * <p>
+ * A hit probes an array owned by the calling thread and reads the version of the partition the entry was copied
+ * from: it takes no lock and writes no shared memory. Partitions of the key types served by a near cache bump their
+ * version after every put, remove, eviction or expiry, which invalidates every copy of their entries at once. The
+ * version is read before the entry is, so a copy is never stored with a version newer than its value.
+ * <p>
+ * Reads served by the front are not seen by an eviction policy, so size bounded caches have no near cache. A thread
+ * keeps its front, and the entries and partitions it references, until it dies or the slots are overwritten, so
+ * caches shared by many short lived or virtual threads should keep it small.
+ */
+@ThreadSafe
+public class NearCache<K, V> {
+
+    public static final int DEFAULT_SLOTS = 256;
+
+    private final ThreadLocal<Front<K, V>> fronts;
+
+    /**
+     * @param slots entries held per thread, rounded up to a power of two
+     */
+    public NearCache(int slots) {
+        int size = slots <= 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+        this.fronts = ThreadLocal.withInitial(() -> new Front<>(size));
+    }
+
+    /**
+     * Returns the value the calling thread copied for the key if its partition did not change since, or null,
+     * without mutating the state
+     */
+    public V get(K key) {
+        Front<K, V> front = fronts.get();
+        int slot = spread(key) & front.mask;
+        Object candidate = front.keys[slot];
+        if (candidate == null || (candidate != key && !candidate.equals(key))
+                || front.partitions[slot].getVersion() != front.versions[slot]) {
+            return null;
+        }
+        return front.values[slot];
+    }
+
+    /**
+     * Mutates the front of the calling thread by copying the entry, read from the partition at the given version,
+     * in place of the one sharing its slot
+     */
+    public void put(K key, V value, KeyTypeCacheEntry<K, V> partition, long version) {
+        Front<K, V> front = fronts.get();
+        int slot = spread(key) & front.mask;
+        front.keys[slot] = key;
+        front.values[slot] = value;
+        front.partitions[slot] = partition;
+        front.versions[slot] = version;
+    }
+
+    private static int spread(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Entries copied by one thread, in parallel arrays indexed by the hash of their key
+     */
+    private static final class Front<K, V> {
+        final int mask;
+        final Object[] keys;
+        final V[] values;
+        final KeyTypeCacheEntry<K, V>[] partitions;
+        final long[] versions;
+
+        Front(int size) {
+            @SuppressWarnings("unchecked")
+            V[] values = (V[]) new Object[size];
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            KeyTypeCacheEntry<K, V>[] partitions = (KeyTypeCacheEntry<K, V>[]) new KeyTypeCacheEntry[size];
+            this.mask = size - 1;
+            this.keys = new Object[size];
+            this.values = values;
+            this.partitions = partitions;
+            this.versions = new long[size];
+        }
+    }
+}
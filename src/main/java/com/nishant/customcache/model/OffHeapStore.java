@@ -0,0 +1,189 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores byte arrays outside of the Java heap, in direct {@link ByteBuffer} slabs.
+ * <p>
+ * Every array is copied into a power of two chunk, prefixed with its length, and identified by a long address packing
+ * the slab index and the offset of the chunk. Freed chunks go to the free list of their size class and are reused by
+ * later arrays of the same class, so the garbage collector never sees the stored bytes, only the slab array.
+ * Slabs are released to the garbage collector all at once by {@link #clear()}.
+ * <p>
+ * Callers are responsible for guarding mutations. {@link #read(long)} tolerates running concurrently with a writer
+ * under an optimistic stamp: it never fails on an inconsistent address, but its result has to be validated.
+ */
+@NotThreadSafe
+public class OffHeapStore {
+
+    /**
+     * Default size of a slab, 4MB
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1 << 22;
+
+    private static final int MIN_CHUNK_SHIFT = 4;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final int slabSize;
+    private final int sizeClasses;
+    private final long[][] freeChunks;
+    private final int[] freeCounts;
+    private ByteBuffer[] slabs = new ByteBuffer[4];
+    private int slabCount;
+    /**
+     * Offset of the first never allocated byte of the last slab
+     */
+    private int top;
+    private long usedBytes;
+
+    public OffHeapStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize size in bytes of every slab, a power of two bounding the largest storable array
+     */
+    public OffHeapStore(int slabSize) {
+        if (slabSize < (1 << MIN_CHUNK_SHIFT) || Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("Slab size should be a power of two of at least 16 bytes");
+        }
+        this.slabSize = slabSize;
+        this.sizeClasses = Integer.numberOfTrailingZeros(slabSize) - MIN_CHUNK_SHIFT + 1;
+        this.freeChunks = new long[sizeClasses][];
+        this.freeCounts = new int[sizeClasses];
+        this.top = slabSize;
+    }
+
+    /**
+     * Mutates the state by copying the bytes into a free chunk
+     *
+     * @return the address of the bytes
+     */
+    public long store(byte[] bytes) {
+        int sizeClass = sizeClassOf(bytes.length + LENGTH_BYTES);
+        if (sizeClass >= sizeClasses) {
+            throw new IllegalArgumentException("Value of " + bytes.length + " bytes does not fit a slab of " + slabSize + " bytes");
+        }
+        long address = freeCounts[sizeClass] > 0 ? freeChunks[sizeClass][--freeCounts[sizeClass]] : allocate(sizeClass);
+        ByteBuffer slab = slabs[(int) (address >>> 32)];
+        int offset = (int) address;
+        slab.putInt(offset, bytes.length);
+        ByteBuffer view = slab.duplicate();
+        ((Buffer) view).position(offset + LENGTH_BYTES);
+        view.put(bytes);
+        usedBytes += chunkSize(sizeClass);
+        return address;
+    }
+
+    /**
+     * Returns a copy of the bytes at the address without mutating the state, or null when an optimistic reader
+     * raced with a writer and the address does not point to a chunk anymore
+     */
+    public byte[] read(long address) {
+        ByteBuffer[] ss = slabs;
+        int index = (int) (address >>> 32);
+        int offset = (int) address;
+        if (address < 0 || index >= ss.length || ss[index] == null || offset < 0 || offset > slabSize - LENGTH_BYTES) {
+            return null;
+        }
+        ByteBuffer slab = ss[index];
+        int length = slab.getInt(offset);
+        if (length < 0 || length > slabSize - offset - LENGTH_BYTES) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = slab.duplicate();
+        ((Buffer) view).position(offset + LENGTH_BYTES);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Mutates the state by handing the chunk at the address back to the free list of its size class
+     */
+    public void free(long address) {
+        int length = slabs[(int) (address >>> 32)].getInt((int) address);
+        int sizeClass = sizeClassOf(length + LENGTH_BYTES);
+        push(sizeClass, address);
+        usedBytes -= chunkSize(sizeClass);
+    }
+
+    /**
+     * Mutates the state by dropping every slab, their memory is released once the garbage collector reclaims them
+     */
+    public void clear() {
+        slabs = new ByteBuffer[4];
+        slabCount = 0;
+        top = slabSize;
+        usedBytes = 0L;
+        Arrays.fill(freeCounts, 0);
+        Arrays.fill(freeChunks, null);
+    }
+
+    /**
+     * Bytes taken by the stored chunks, including their length prefix and rounding
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Bytes of direct memory held by the slabs
+     */
+    public long reservedBytes() {
+        return (long) slabCount * slabSize;
+    }
+
+    /**
+     * Carves a new chunk out of the last slab, opening a new slab when it is full
+     */
+    private long allocate(int sizeClass) {
+        int size = chunkSize(sizeClass);
+        if (top + size > slabSize) {
+            if (slabCount > 0) {
+                // hand the tail of the full slab to the free lists rather than leaking it
+                for (int remaining = slabSize - top; remaining >= 1 << MIN_CHUNK_SHIFT; ) {
+                    int tailClass = 31 - Integer.numberOfLeadingZeros(remaining) - MIN_CHUNK_SHIFT;
+                    push(tailClass, address(slabCount - 1, top));
+                    top += chunkSize(tailClass);
+                    remaining -= chunkSize(tailClass);
+                }
+            }
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabCount << 1);
+            }
+            slabs[slabCount++] = ByteBuffer.allocateDirect(slabSize);
+            top = 0;
+        }
+        long address = address(slabCount - 1, top);
+        top += size;
+        return address;
+    }
+
+    private void push(int sizeClass, long address) {
+        long[] chunks = freeChunks[sizeClass];
+        if (chunks == null) {
+            chunks = freeChunks[sizeClass] = new long[8];
+        } else if (freeCounts[sizeClass] == chunks.length) {
+            chunks = freeChunks[sizeClass] = Arrays.copyOf(chunks, chunks.length << 1);
+        }
+        chunks[freeCounts[sizeClass]++] = address;
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int sizeClassOf(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1 << MIN_CHUNK_SHIFT) - 1);
+        return shift - MIN_CHUNK_SHIFT;
+    }
+
+    private static int chunkSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_CHUNK_SHIFT);
+    }
+}
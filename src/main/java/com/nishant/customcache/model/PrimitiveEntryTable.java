@@ -0,0 +1,209 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * Slots shared by the {@link EntryTable}s specialised for primitive keys: values, times, sizing, backward shift
+ * deletion and resizing. Subclasses only keep the key array, unboxed, and probe it.
+ * <p>
+ * Values are never null, so a null value marks a free slot and every primitive is a valid key. The write and access
+ * times of a slot sit side by side in one array, like in {@link EntryTable}.
+ */
+@NotThreadSafe
+public abstract class PrimitiveEntryTable<V> {
+
+    static final int INITIAL_CAPACITY = 16;
+
+    Object[] values = new Object[INITIAL_CAPACITY];
+    /**
+     * Write time of slot {@code s} at {@code 2s}, access time at {@code 2s + 1}, null when the table keeps no times
+     */
+    long[] times;
+    int size;
+    int threshold = loadThreshold(INITIAL_CAPACITY);
+
+    /**
+     * @param timed whether to keep the write and access time of every mapping
+     */
+    PrimitiveEntryTable(boolean timed) {
+        if (timed) {
+            times = new long[INITIAL_CAPACITY << 1];
+        }
+    }
+
+    /**
+     * Returns the slot the key held by the slot hashes to in a table of the given mask, without mutating the state
+     */
+    abstract int homeOf(int slot, int mask);
+
+    /**
+     * Mutates the state by copying the key of a slot into another one
+     */
+    abstract void moveKey(int from, int to);
+
+    /**
+     * Mutates the state by allocating the key array of a resize, the current one stays readable meanwhile
+     */
+    abstract void startResize(int capacity);
+
+    /**
+     * Mutates the state by copying the key of a slot of the current key array to a slot of the one being resized to
+     */
+    abstract void transferKey(int from, int to);
+
+    /**
+     * Mutates the state by publishing the key array being resized to
+     */
+    abstract void finishResize();
+
+    /**
+     * Returns the value at the slot. Optimistic readers may race with a resize, hence the bounds check.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        Object[] vs = values;
+        return slot < vs.length ? (V) vs[slot] : null;
+    }
+
+    public long writeTimeAt(int slot) {
+        long[] ts = times;
+        return (slot << 1) < ts.length ? ts[slot << 1] : 0L;
+    }
+
+    public long accessTimeAt(int slot) {
+        long[] ts = times;
+        return (slot << 1) + 1 < ts.length ? ts[(slot << 1) + 1] : 0L;
+    }
+
+    /**
+     * Mutates the state by recording a read of the slot, see {@link EntryTable#setAccessTime(int, long)}
+     */
+    public void setAccessTime(int slot, long time) {
+        long[] ts = times;
+        if ((slot << 1) + 1 < ts.length) {
+            ts[(slot << 1) + 1] = time;
+        }
+    }
+
+    /**
+     * Mutates the state by removing the mapping at the slot, returning its value.
+     * The following mappings shift back, so the slot may hold another mapping afterwards.
+     */
+    public V removeAt(int slot) {
+        V previous = valueAt(slot);
+        deleteSlot(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Mutates the state by dropping every mapping
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of slots, occupied or not
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isTimed() {
+        return times != null;
+    }
+
+    /**
+     * Returns whether the slot holds a mapping without mutating the state
+     */
+    public boolean isOccupied(int slot) {
+        return values[slot] != null;
+    }
+
+    /**
+     * Mutates the state by storing the value of a key the caller already stored at the slot, growing the table once
+     * a new mapping crosses the load threshold
+     *
+     * @return the previous value of the slot, or null for a new mapping
+     */
+    @SuppressWarnings("unchecked")
+    V store(int slot, V value, long time) {
+        Object[] vs = values;
+        V previous = (V) vs[slot];
+        vs[slot] = value;
+        if (times != null) {
+            times[slot << 1] = time;
+            times[(slot << 1) + 1] = time;
+        }
+        if (previous == null && ++size > threshold) {
+            resize(vs.length << 1);
+        }
+        return previous;
+    }
+
+    /**
+     * Shifts back the entries following the freed slot so that every probe chain stays unbroken
+     */
+    private void deleteSlot(int slot) {
+        Object[] vs = values;
+        long[] ts = times;
+        int mask = vs.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; vs[i] != null; i = (i + 1) & mask) {
+            int home = homeOf(i, mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                moveKey(i, hole);
+                vs[hole] = vs[i];
+                if (ts != null) {
+                    ts[hole << 1] = ts[i << 1];
+                    ts[(hole << 1) + 1] = ts[(i << 1) + 1];
+                }
+                hole = i;
+            }
+        }
+        vs[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldValues = values;
+        long[] oldTimes = times;
+        Object[] vs = new Object[capacity];
+        long[] ts = oldTimes == null ? null : new long[capacity << 1];
+        int mask = capacity - 1;
+        startResize(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = homeOf(j, mask);
+                while (vs[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                transferKey(j, i);
+                vs[i] = oldValues[j];
+                if (ts != null) {
+                    ts[i << 1] = oldTimes[j << 1];
+                    ts[(i << 1) + 1] = oldTimes[(j << 1) + 1];
+                }
+            }
+        }
+        finishResize();
+        values = vs;
+        times = ts;
+        threshold = loadThreshold(capacity);
+    }
+
+    private static int loadThreshold(int capacity) {
+        return capacity - (capacity >>> 2);
+    }
+}
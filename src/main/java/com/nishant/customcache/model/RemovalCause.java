@@ -0,0 +1,23 @@
+package com.nishant.customcache.model;
+
+/**
+ * Why an entry left the cache
+ */
+public enum RemovalCause {
+    /**
+     * Removed by a call to remove or removeAll
+     */
+    EXPLICIT,
+    /**
+     * Its value was replaced by a put, a bulk put or a refresh
+     */
+    REPLACED,
+    /**
+     * Its time to live elapsed, or that of its whole key type partition
+     */
+    EXPIRED,
+    /**
+     * Chosen by the eviction policy of a size or weight bounded cache
+     */
+    EVICTED
+}
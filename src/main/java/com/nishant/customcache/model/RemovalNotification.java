@@ -0,0 +1,24 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.annotations.Immutable;
+import com.nishant.customcache.annotations.ThreadSafe;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Entry that left the cache, with the value it held at that time
+ */
+@Getter
+@AllArgsConstructor
+@ThreadSafe
+@Immutable
+public class RemovalNotification<K, V> {
+    private final K key;
+    private final V value;
+    private final RemovalCause cause;
+
+    @Override
+    public String toString() {
+        return cause + " " + key + "=" + value;
+    }
+}
@@ -0,0 +1,520 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.ValueSerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the mutations of a cache, split in numbered segments, replayed on start to rebuild the cache
+ * after a crash.
+ * <p>
+ * Mutations append their record to an in-memory buffer, a single flusher thread writes the buffer to the current
+ * segment and forces it to disk once per sync interval, or earlier when the buffer fills up. A put never waits for
+ * the disk, and a single fsync covers every record appended since the previous one: a crash loses at most the last
+ * sync interval. Records are framed with their length and a CRC32, so a record torn by a crash ends the replay of
+ * its segment.
+ * <p>
+ * Compaction rolls to a new segment and writes a snapshot of the cache numbered after it, then drops the older
+ * segments and snapshots: replay starts from the latest snapshot and applies the segments written since. Records are
+ * appended under the lock of the partition they mutate, so replaying them in order yields the last value of every key.
+ * <p>
+ * Layout of a segment, big endian: {@link #MAGIC} and {@link #VERSION}, then per record its length, its CRC32 and a
+ * body made of the record type followed by, for a {@link #PUT}, the wall clock time of the write and the serialized
+ * key and value, for a {@link #REMOVE} or {@link #EXPIRE} the serialized key, and for an {@link #EXPIRE_KEY_TYPE}
+ * the class name of the keys. Byte arrays are prefixed with their length.
+ */
+@ThreadSafe
+public class Journal<K, V> implements Closeable {
+
+    static final int MAGIC = 0x43434a4c;
+    static final int VERSION = 1;
+    public static final byte PUT = 1;
+    public static final byte REMOVE = 2;
+    public static final byte EXPIRE = 3;
+    public static final byte EXPIRE_KEY_TYPE = 4;
+    static final int MAX_RECORD_SIZE = Integer.MAX_VALUE - 16;
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    /**
+     * Segments written since the last compaction that trigger the next one
+     */
+    private static final int COMPACTION_SEGMENTS = 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d{16})\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{16})\\.snap");
+
+    private final Path directory;
+    private final ValueSerializer<? super K> keySerializer;
+    private final ValueSerializer<? super V> valueSerializer;
+    private final long syncIntervalNanos;
+    private final long segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    /**
+     * Sequence of the latest snapshot, every segment numbered below it is covered by the snapshot
+     */
+    private final long snapshotSequence;
+    private final List<Long> segments;
+
+    @GuardedBy("lock") private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+    @GuardedBy("lock") private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private volatile boolean appending;
+    @GuardedBy("lock") private boolean closed;
+    @GuardedBy("lock") private IOException failure;
+    /**
+     * Records appended, and records forced to disk
+     */
+    @GuardedBy("lock") private long appended;
+    @GuardedBy("lock") private long durable;
+    @GuardedBy("lock") private boolean rollRequested;
+    /**
+     * Sequence of the segment the requested roll opened, zero until the flusher rolled
+     */
+    @GuardedBy("lock") private long rolledSequence;
+
+    @GuardedBy("flusher thread") private FileChannel channel;
+    @GuardedBy("flusher thread") private long sequence;
+    @GuardedBy("flusher thread") private long segmentBytes;
+    @GuardedBy("flusher thread") private long bytesSinceCompaction;
+    private Runnable compactionTrigger;
+    private Thread flusher;
+
+    private Journal(Path directory, ValueSerializer<? super K> keySerializer, ValueSerializer<? super V> valueSerializer,
+                    long syncIntervalNanos, long segmentSize, long snapshotSequence, List<Long> segments) {
+        this.directory = directory;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.syncIntervalNanos = syncIntervalNanos;
+        this.segmentSize = segmentSize;
+        this.snapshotSequence = snapshotSequence;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens the journal kept in the directory, creating the directory if needed. Nothing is appended before
+     * {@link #start(Runnable)}, so that replaying the journal does not journal the replayed mutations again.
+     */
+    public static <K, V> Journal<K, V> open(Path directory, ValueSerializer<? super K> keySerializer,
+                                            ValueSerializer<? super V> valueSerializer,
+                                            long syncInterval, TimeUnit unit, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        long snapshotSequence = 0L;
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher segment = SEGMENT.matcher(name);
+                Matcher snapshot = SNAPSHOT.matcher(name);
+                if (segment.matches()) {
+                    segments.add(Long.parseLong(segment.group(1)));
+                } else if (snapshot.matches()) {
+                    snapshotSequence = Math.max(snapshotSequence, Long.parseLong(snapshot.group(1)));
+                } else if (name.startsWith("snapshot-") && name.endsWith(".tmp")) {
+                    // left behind by a compaction interrupted by a crash
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Collections.sort(segments);
+        return new Journal<>(directory, keySerializer, valueSerializer, unit.toNanos(syncInterval), segmentSize,
+                snapshotSequence, segments);
+    }
+
+    /**
+     * Latest snapshot written by a compaction, to restore before replaying the segments, or null
+     */
+    public Path getSnapshot() {
+        return snapshotSequence == 0L ? null : directory.resolve(snapshotName(snapshotSequence));
+    }
+
+    /**
+     * Reads the records of the segments written since the latest snapshot, in the order they were appended
+     */
+    public void replay(Consumer<JournalReader> visitor) throws IOException {
+        for (long segment : segments) {
+            if (segment >= snapshotSequence) {
+                try (JournalReader reader = JournalReader.open(directory.resolve(segmentName(segment)))) {
+                    while (reader.next()) {
+                        visitor.accept(reader);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a new segment and starts appending the mutations and flushing them in the background
+     *
+     * @param compactionTrigger called on the flusher thread once enough segments were written since the last
+     *                          compaction, expected to hand {@link #compact(Consumer)} over to another thread
+     */
+    public void start(Runnable compactionTrigger) throws IOException {
+        this.compactionTrigger = compactionTrigger;
+        long last = segments.isEmpty() ? 0L : segments.get(segments.size() - 1);
+        openSegment(Math.max(last, snapshotSequence) + 1);
+        appending = true;
+        flusher = new Thread(this::flushLoop, "custom-cache-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns the record of a put, encoded outside of any lock, or null while nothing is appended
+     *
+     * @param writeMillis wall clock time the entry was written at
+     */
+    public byte[] encodePut(K key, V value, long writeMillis) {
+        if (!appending) {
+            return null;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        ByteBuffer record = newRecord(1 + Long.BYTES + Integer.BYTES * 2 + keyBytes.length + valueBytes.length);
+        record.put(PUT).putLong(writeMillis);
+        record.putInt(keyBytes.length).put(keyBytes);
+        record.putInt(valueBytes.length).put(valueBytes);
+        return seal(record);
+    }
+
+    /**
+     * Returns the record of the removal of a key, {@link #REMOVE} or {@link #EXPIRE}, or null while nothing is appended
+     */
+    public byte[] encodeRemove(K key, byte type) {
+        if (!appending) {
+            return null;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        ByteBuffer record = newRecord(1 + Integer.BYTES + keyBytes.length);
+        record.put(type).putInt(keyBytes.length).put(keyBytes);
+        return seal(record);
+    }
+
+    /**
+     * Returns the record of the expiry of every key of the class, or null while nothing is appended
+     */
+    public byte[] encodeExpireKeyType(Class<?> keyType) {
+        if (!appending) {
+            return null;
+        }
+        byte[] name = keyType.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = newRecord(1 + Integer.BYTES + name.length);
+        record.put(EXPIRE_KEY_TYPE).putInt(name.length).put(name);
+        return seal(record);
+    }
+
+    /**
+     * Mutates the state by appending the record to the buffer of the next flush. Called under the lock of the
+     * partition the record mutates, which only waits for the flusher when the buffer is full. Once closed, the
+     * journal drops the record like it does while replaying: the partition was already mutated.
+     *
+     * @param record encoded record, ignored when null
+     * @throws UncheckedIOException once the flusher failed to write to the journal
+     */
+    public void append(byte[] record) {
+        if (record == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                failIfBroken();
+            }
+            if (closed || !appending) {
+                return;
+            }
+            while (active.remaining() < record.length) {
+                failIfBroken();
+                if (closed) {
+                    return;
+                }
+                if (active.position() == 0) {
+                    // larger than the whole buffer
+                    active = ByteBuffer.allocate(record.length);
+                    break;
+                }
+                flushNeeded.signal();
+                flushed.awaitUninterruptibly();
+            }
+            active.put(record);
+            appended++;
+            if (active.position() >= active.capacity() >>> 1) {
+                flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every record appended so far is forced to disk
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            long target = appended;
+            while (durable < target) {
+                failIfBroken();
+                flushNeeded.signal();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compacts the journal into a snapshot, unless a compaction is already running: rolls to a new segment, has
+     * the cache written to the snapshot file numbered after that segment, then deletes the older segments and
+     * snapshots. Records appended during the snapshot go to the new segment and are replayed over it.
+     *
+     * @param snapshotWriter writes the whole cache to the given file
+     * @return false when another compaction was running
+     */
+    public boolean compact(Consumer<Path> snapshotWriter) throws IOException {
+        if (!compacting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            long checkpoint = roll();
+            snapshotWriter.accept(directory.resolve(snapshotName(checkpoint)));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    Matcher segment = SEGMENT.matcher(name);
+                    Matcher snapshot = SNAPSHOT.matcher(name);
+                    if (segment.matches() && Long.parseLong(segment.group(1)) < checkpoint
+                            || snapshot.matches() && Long.parseLong(snapshot.group(1)) < checkpoint) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Flushes the records appended so far, stops the flusher and closes the current segment
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // records encoded from now on are null
+            appending = false;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks the flusher to write the pending records and to open a new segment
+     *
+     * @return sequence of the new segment, every record appended before the call belongs to an older one
+     */
+    private long roll() throws IOException {
+        lock.lock();
+        try {
+            rollRequested = true;
+            rolledSequence = 0L;
+            flushNeeded.signal();
+            while (rolledSequence == 0L) {
+                if (failure != null || closed) {
+                    throw new IOException("Journal is closed", failure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+            return rolledSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private void failIfBroken() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal stopped after a write failure", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * Group commit: swaps the buffer filled by the appenders for an empty one, then writes and forces it outside of
+     * the lock while the appenders keep filling the other buffer
+     */
+    private void flushLoop() {
+        boolean done = false;
+        while (!done) {
+            ByteBuffer batch;
+            long target;
+            boolean roll;
+            lock.lock();
+            try {
+                if (!closed && !rollRequested && active.position() < active.capacity() >>> 1) {
+                    flushNeeded.awaitNanos(syncIntervalNanos);
+                }
+                batch = active;
+                active = spare;
+                target = appended;
+                roll = rollRequested;
+                done = closed;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            long rolled = 0L;
+            try {
+                ((Buffer) batch).flip();
+                if (batch.hasRemaining()) {
+                    segmentBytes += batch.remaining();
+                    bytesSinceCompaction += batch.remaining();
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    channel.force(false);
+                }
+                if (!done && (roll || segmentBytes >= segmentSize)) {
+                    openSegment(sequence + 1);
+                    rolled = roll ? sequence : 0L;
+                }
+                if (done) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    appending = false;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            ((Buffer) batch).clear();
+            lock.lock();
+            try {
+                spare = batch.capacity() == BUFFER_SIZE ? batch : ByteBuffer.allocate(BUFFER_SIZE);
+                durable = target;
+                if (rolled != 0L) {
+                    rollRequested = false;
+                    rolledSequence = rolled;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (rolled != 0L) {
+                bytesSinceCompaction = 0L;
+            } else if (bytesSinceCompaction >= segmentSize * COMPACTION_SEGMENTS && !compacting.get()) {
+                bytesSinceCompaction = 0L;
+                try {
+                    compactionTrigger.run();
+                } catch (RuntimeException e) {
+                    // compaction is retried once as many segments are written again
+                }
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by closing the current segment and creating the next one, on the flusher thread or before
+     * it starts
+     */
+    private void openSegment(long next) throws IOException {
+        FileChannel previous = channel;
+        Path file = directory.resolve(segmentName(next));
+        FileChannel created = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2);
+        header.putInt(MAGIC).putInt(VERSION);
+        ((Buffer) header).flip();
+        while (header.hasRemaining()) {
+            created.write(header);
+        }
+        created.force(true);
+        channel = created;
+        sequence = next;
+        segmentBytes = 0L;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private static ByteBuffer newRecord(int bodyLength) {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + bodyLength);
+        ((Buffer) record).position(Integer.BYTES * 2);
+        return record;
+    }
+
+    /**
+     * Fills in the length and the checksum of the body of the record
+     */
+    private static byte[] seal(ByteBuffer record) {
+        byte[] bytes = record.array();
+        int bodyLength = bytes.length - Integer.BYTES * 2;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, Integer.BYTES * 2, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return bytes;
+    }
+
+    static String segmentName(long sequence) {
+        return String.format("journal-%016d.log", sequence);
+    }
+
+    static String snapshotName(long sequence) {
+        return String.format("snapshot-%016d.snap", sequence);
+    }
+}
@@ -0,0 +1,156 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of one journal segment written by {@link Journal}, in the order they were appended.
+ * <p>
+ * A crash can leave the last record of a segment half written: reading stops at the first record that is truncated
+ * or whose checksum does not match, everything after it is ignored.
+ * <pre>
+ * while (reader.next()) {
+ *     switch (reader.getType()) { ... }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public class JournalReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataInputStream in;
+    private final CRC32 crc = new CRC32();
+    private byte[] body = new byte[256];
+    private byte type;
+    private long writeMillis;
+    private byte[] key;
+    private byte[] value;
+    private String keyType;
+
+    private JournalReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Opens the segment and checks its header
+     *
+     * @throws IOException when the file is not a journal segment of a supported version
+     */
+    public static JournalReader open(Path segment) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), BUFFER_SIZE));
+        try {
+            if (in.readInt() != Journal.MAGIC) {
+                throw new IOException("Not a cache journal: " + segment);
+            }
+            int version = in.readInt();
+            if (version != Journal.VERSION) {
+                throw new IOException("Unsupported journal version " + version + ": " + segment);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new JournalReader(in);
+    }
+
+    /**
+     * Moves to the next record
+     *
+     * @return false at the end of the segment or at a torn record
+     */
+    public boolean next() throws IOException {
+        int length;
+        int checksum;
+        try {
+            length = in.readInt();
+            checksum = in.readInt();
+            if (length <= 0 || length > Journal.MAX_RECORD_SIZE) {
+                return false;
+            }
+            if (body.length < length) {
+                body = new byte[Math.max(length, body.length << 1)];
+            }
+            in.readFully(body, 0, length);
+        } catch (EOFException e) {
+            return false;
+        }
+        crc.reset();
+        crc.update(body, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.wrap(body, 0, length);
+        type = record.get();
+        switch (type) {
+            case Journal.PUT:
+                writeMillis = record.getLong();
+                key = bytes(record);
+                value = bytes(record);
+                return true;
+            case Journal.REMOVE:
+            case Journal.EXPIRE:
+                key = bytes(record);
+                return true;
+            case Journal.EXPIRE_KEY_TYPE:
+                keyType = new String(bytes(record), StandardCharsets.UTF_8);
+                return true;
+            default:
+                throw new IOException("Corrupted journal, unexpected record " + type);
+        }
+    }
+
+    /**
+     * One of {@link Journal#PUT}, {@link Journal#REMOVE}, {@link Journal#EXPIRE} or {@link Journal#EXPIRE_KEY_TYPE}
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Wall clock time the entry of a {@link Journal#PUT} was written at
+     */
+    public long getWriteMillis() {
+        return writeMillis;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Class name of the keys of a {@link Journal#EXPIRE_KEY_TYPE}
+     */
+    public String getKeyType() {
+        return keyType;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static byte[] bytes(ByteBuffer record) throws IOException {
+        int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new IOException("Corrupted journal, bad length " + length);
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,220 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a snapshot written by {@link SnapshotWriter} through memory mapped windows of the file, so restoring neither
+ * copies the file through a stream buffer nor maps more than a window of it at a time.
+ * <pre>
+ * while (reader.nextPartition()) {
+ *     while (reader.nextEntry()) {
+ *         ... reader.getKey(), reader.getValue() ...
+ *     }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public class SnapshotReader implements Closeable {
+
+    private static final long WINDOW = 1L << 28;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long snapshotMillis;
+    /**
+     * Type of the record following the one last read
+     */
+    private byte next;
+    private long entries;
+    private long remainingNanos;
+    private int expectedEntries;
+    private long writeAge;
+    private long accessAge;
+    private byte[] key;
+    private byte[] value;
+
+    private SnapshotReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Opens the snapshot and checks its header
+     *
+     * @throws IOException when the file is not a snapshot of a supported version
+     */
+    public static SnapshotReader open(Path file) throws IOException {
+        SnapshotReader reader = new SnapshotReader(FileChannel.open(file, StandardOpenOption.READ));
+        try {
+            reader.ensure(Integer.BYTES * 2 + Long.BYTES + 1);
+            if (reader.window.getInt() != SnapshotWriter.MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            int version = reader.window.getInt();
+            if (version != SnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            reader.snapshotMillis = reader.window.getLong();
+            reader.next = reader.window.get();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Wall clock time the snapshot was written at
+     */
+    public long getSnapshotMillis() {
+        return snapshotMillis;
+    }
+
+    /**
+     * Moves to the next key type, skipping the entries of the current one that were not read
+     *
+     * @return false once every key type was read
+     */
+    public boolean nextPartition() throws IOException {
+        while (next == SnapshotWriter.ENTRY) {
+            skipEntry();
+        }
+        if (next == SnapshotWriter.END) {
+            ensure(Long.BYTES);
+            long written = window.getLong();
+            if (written != entries) {
+                throw new IOException("Snapshot holds " + entries + " entries instead of " + written);
+            }
+            return false;
+        }
+        if (next != SnapshotWriter.PARTITION) {
+            throw new IOException("Corrupted snapshot, unexpected record " + next);
+        }
+        ensure(Long.BYTES + Integer.BYTES + 1);
+        remainingNanos = window.getLong();
+        expectedEntries = window.getInt();
+        if (expectedEntries < 0) {
+            throw new IOException("Corrupted snapshot, negative size " + expectedEntries);
+        }
+        next = window.get();
+        return true;
+    }
+
+    /**
+     * Remaining time to live of the current key type when the snapshot was written, or {@link SnapshotWriter#NEVER}
+     */
+    public long getRemainingNanos() {
+        return remainingNanos;
+    }
+
+    /**
+     * Number of entries the current key type held when the dump started, the snapshot may hold a few more or less
+     */
+    public int getExpectedEntries() {
+        return expectedEntries;
+    }
+
+    /**
+     * Moves to the next entry of the current key type
+     *
+     * @return false once every entry of the key type was read
+     */
+    public boolean nextEntry() throws IOException {
+        if (next != SnapshotWriter.ENTRY) {
+            return false;
+        }
+        ensure(Long.BYTES * 2 + Integer.BYTES);
+        writeAge = window.getLong();
+        accessAge = window.getLong();
+        key = readBytes(window.getInt());
+        ensure(Integer.BYTES);
+        value = readBytes(window.getInt());
+        ensure(1);
+        next = window.get();
+        entries++;
+        return true;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Nanoseconds elapsed between the last write of the entry and the snapshot
+     */
+    public long getWriteAge() {
+        return writeAge;
+    }
+
+    /**
+     * Nanoseconds elapsed between the last read of the entry and the snapshot
+     */
+    public long getAccessAge() {
+        return accessAge;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void skipEntry() throws IOException {
+        ensure(Long.BYTES * 2 + Integer.BYTES);
+        skip(Long.BYTES * 2);
+        skip(window.getInt());
+        ensure(Integer.BYTES);
+        skip(window.getInt());
+        ensure(1);
+        next = window.get();
+        entries++;
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupted snapshot, negative length " + length);
+        }
+        ensure(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return bytes;
+    }
+
+    private void skip(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupted snapshot, negative length " + length);
+        }
+        ensure(length);
+        ((Buffer) window).position(window.position() + length);
+    }
+
+    /**
+     * Maps the window following the current position when fewer than the given bytes are left in the current one
+     */
+    private void ensure(int bytes) throws IOException {
+        if (window != null && window.remaining() >= bytes) {
+            return;
+        }
+        long position = window == null ? 0L : windowStart + window.position();
+        if (position + bytes > size) {
+            throw new EOFException("Truncated snapshot");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(WINDOW, bytes), size - position));
+        windowStart = position;
+    }
+}
@@ -0,0 +1,138 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.NotThreadSafe;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Streams a snapshot of the cache to a temporary file next to the target, moved over the target by {@link #finish()}
+ * so that a crash in the middle of a dump never leaves a truncated snapshot behind.
+ * <p>
+ * Layout, big endian: a header with {@link #MAGIC}, {@link #VERSION} and the wall clock time of the dump, then per key
+ * type a {@link #PARTITION} record with the remaining time to live and the size of the key type, followed by one {@link #ENTRY}
+ * record per entry with its write and access ages and the serialized key and value, and a closing {@link #END}
+ * record with the number of entries.
+ */
+@NotThreadSafe
+public class SnapshotWriter implements Closeable {
+
+    static final int MAGIC = 0x43435350;
+    static final int VERSION = 1;
+    static final byte END = 0;
+    static final byte PARTITION = 1;
+    static final byte ENTRY = 2;
+    /**
+     * Remaining time to live of a key type that does not expire as a whole
+     */
+    public static final long NEVER = -1L;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final Path temporary;
+    private final DataOutputStream out;
+    private long entries;
+    private boolean finished;
+
+    private SnapshotWriter(Path file, Path temporary, DataOutputStream out) {
+        this.file = file;
+        this.temporary = temporary;
+        this.out = out;
+    }
+
+    /**
+     * Opens a snapshot of the given file and writes its header
+     */
+    public static SnapshotWriter open(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE));
+        SnapshotWriter writer = new SnapshotWriter(file, temporary, out);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    /**
+     * Starts the entries of a key type
+     *
+     * @param remainingNanos time left before the key type expires as a whole, or {@link #NEVER}
+     * @param expectedEntries number of entries of the key type when the dump started, a hint for sizing it on restore
+     */
+    public void startPartition(long remainingNanos, int expectedEntries) {
+        try {
+            out.writeByte(PARTITION);
+            out.writeLong(remainingNanos);
+            out.writeInt(expectedEntries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes an entry of the current key type
+     *
+     * @param writeAge  nanoseconds elapsed since the entry was written
+     * @param accessAge nanoseconds elapsed since the entry was last read
+     */
+    public void writeEntry(byte[] key, byte[] value, long writeAge, long accessAge) {
+        try {
+            out.writeByte(ENTRY);
+            out.writeLong(writeAge);
+            out.writeLong(accessAge);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(value.length);
+            out.write(value);
+            entries++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Completes the snapshot and moves it over the target file
+     *
+     * @return number of entries written
+     */
+    public long finish() throws IOException {
+        out.writeByte(END);
+        out.writeLong(entries);
+        out.close();
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finished = true;
+        return entries;
+    }
+
+    /**
+     * Drops the temporary file unless the snapshot was finished
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
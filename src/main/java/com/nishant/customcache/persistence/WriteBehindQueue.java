@@ -0,0 +1,311 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.CacheWriter;
+import com.nishant.customcache.services.ExpirationService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of the puts and removes of a cache waiting to be written to its {@link CacheWriter} in the background.
+ * <p>
+ * Mutations are coalesced per key, only the last one of a key is written, and grouped per key type so that every
+ * flush hands the writer one {@link CacheWriter#writeAll(Map)} and one {@link CacheWriter#deleteAll(java.util.Collection)}
+ * per key type. A flush runs on the executor once as many keys as the batch size are pending, or once the oldest
+ * pending mutation waited for the flush delay. Flushes run one at a time, so the store sees the mutations of a key
+ * in the order they were queued.
+ * <p>
+ * A key type the writer failed on is queued again, behind any newer mutation of its keys, and retried after the
+ * flush delay.
+ * <p>
+ * Once closed, the queue writes its mutations through on the calling thread, after any flush in progress, so that an
+ * older batch never overwrites them. Mutations the final flush failed on stay queued until {@link #flush()} is called
+ * again, a key written through meanwhile drops its queued mutation.
+ */
+@ThreadSafe
+public class WriteBehindQueue<K, V> {
+
+    /**
+     * Pending value of a removed key
+     */
+    private static final Object DELETE = new Object();
+
+    private final CacheWriter<K, V> writer;
+    private final int batchSize;
+    private final long flushDelayNanos;
+    private final Executor executor;
+    private final ExpirationService timer;
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Taken for the whole of a flush, so that flushes do not overtake each other
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @GuardedBy("lock") private Map<Class<?>, Map<K, Object>> pending = new LinkedHashMap<>();
+    @GuardedBy("lock") private int pendingCount;
+    @GuardedBy("lock") private boolean flushSubmitted;
+    @GuardedBy("lock") private boolean closed;
+
+    /**
+     * @param batchSize  number of pending keys that triggers a flush
+     * @param flushDelay longest time a mutation waits before a flush starts
+     * @param executor   executor running the flushes
+     * @param timer      service firing the flush delay
+     */
+    public WriteBehindQueue(CacheWriter<K, V> writer, int batchSize, long flushDelay, TimeUnit unit, Executor executor,
+                            ExpirationService timer) {
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.flushDelayNanos = unit.toNanos(flushDelay);
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    /**
+     * Mutates the state by queuing the write of the value, replacing any mutation of the key still pending
+     */
+    public void write(K key, V value) {
+        enqueue(key, value);
+    }
+
+    /**
+     * Mutates the state by queuing the deletion of the key, replacing any mutation of the key still pending
+     */
+    public void delete(K key) {
+        enqueue(key, DELETE);
+    }
+
+    private void enqueue(K key, Object value) {
+        boolean writeThrough;
+        boolean first = false;
+        boolean full = false;
+        lock.lock();
+        try {
+            writeThrough = closed;
+            if (!writeThrough) {
+                first = pendingCount == 0;
+                if (pending.computeIfAbsent(key.getClass(), keyType -> new LinkedHashMap<>()).put(key, value) == null) {
+                    pendingCount++;
+                }
+                full = pendingCount >= batchSize && !flushSubmitted;
+                if (full) {
+                    flushSubmitted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (writeThrough) {
+            writeThrough(key, value);
+            return;
+        }
+        if (first) {
+            scheduleFlush();
+        }
+        if (full) {
+            submitFlush();
+        }
+    }
+
+    /**
+     * Writes the mutation of a closed queue on the calling thread, once any flush in progress has written its older
+     * batch, dropping the mutation of the key its failure may have left queued
+     */
+    @SuppressWarnings("unchecked")
+    private void writeThrough(K key, Object value) {
+        flushLock.lock();
+        try {
+            lock.lock();
+            try {
+                Map<K, Object> group = pending.get(key.getClass());
+                if (group != null && group.remove(key) != null) {
+                    pendingCount--;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (value == DELETE) {
+                writer.delete(key);
+            } else {
+                writer.write(key, (V) value);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of keys waiting to be written, without mutating the state
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every mutation queued so far on the calling thread, waiting for a flush in progress to finish first
+     *
+     * @throws RuntimeException thrown by the writer, the mutations of the failed key types stay queued and are
+     *                          retried after the flush delay
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Class<?>, Map<K, Object>> batch;
+            lock.lock();
+            try {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                pendingCount = 0;
+                flushSubmitted = false;
+            } finally {
+                lock.unlock();
+            }
+            List<Map<K, Object>> groups = new ArrayList<>(batch.values());
+            for (int i = 0; i < groups.size(); i++) {
+                try {
+                    writeGroup(groups.get(i));
+                } catch (RuntimeException | Error e) {
+                    if (requeue(groups.subList(i, groups.size()))) {
+                        scheduleFlush();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Mutates the state by writing every mutation queued so far, later mutations are written through
+     *
+     * @throws RuntimeException thrown by the writer, the mutations of the failed key types stay queued until the next
+     *                          {@link #flush()}, no retry is scheduled
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    /**
+     * Hands the pending mutations of one key type to the writer, writes first then deletes
+     */
+    @SuppressWarnings("unchecked")
+    private void writeGroup(Map<K, Object> group) {
+        Map<K, V> writes = new LinkedHashMap<>();
+        List<K> deletes = new ArrayList<>();
+        for (Map.Entry<K, Object> mutation : group.entrySet()) {
+            if (mutation.getValue() == DELETE) {
+                deletes.add(mutation.getKey());
+            } else {
+                writes.put(mutation.getKey(), (V) mutation.getValue());
+            }
+        }
+        if (!writes.isEmpty()) {
+            writer.writeAll(writes);
+        }
+        if (!deletes.isEmpty()) {
+            writer.deleteAll(deletes);
+        }
+    }
+
+    /**
+     * Mutates the state by queuing failed mutations again, unless their key was mutated since the flush started
+     *
+     * @return false once the queue is closed, the mutations then wait for an explicit flush
+     */
+    private boolean requeue(List<Map<K, Object>> groups) {
+        lock.lock();
+        try {
+            for (Map<K, Object> group : groups) {
+                for (Map.Entry<K, Object> mutation : group.entrySet()) {
+                    K key = mutation.getKey();
+                    if (pending.computeIfAbsent(key.getClass(), keyType -> new LinkedHashMap<>())
+                            .putIfAbsent(key, mutation.getValue()) == null) {
+                        pendingCount++;
+                    }
+                }
+            }
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush run on the executor, a failure was queued again by {@link #flush()}
+     */
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            return;
+        }
+        boolean full;
+        lock.lock();
+        try {
+            // keys queued while the flush was running
+            full = pendingCount >= batchSize && !flushSubmitted;
+            if (full) {
+                flushSubmitted = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full) {
+            submitFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        timer.schedule(this::flushIfPending, flushDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs on the expiration thread when the flush delay elapsed, hands the flush over to the executor
+     */
+    private void flushIfPending() {
+        lock.lock();
+        try {
+            if (pendingCount == 0 || flushSubmitted) {
+                return;
+            }
+            flushSubmitted = true;
+        } finally {
+            lock.unlock();
+        }
+        submitFlush();
+    }
+
+    private void submitFlush() {
+        try {
+            executor.execute(this::flushInBackground);
+        } catch (RejectedExecutionException e) {
+            lock.lock();
+            try {
+                flushSubmitted = false;
+            } finally {
+                lock.unlock();
+            }
+            scheduleFlush();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nishant.customcache.services;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded ring buffer with many producers and a single consumer.
+ * <p>
+ * Producers claim a slot by advancing the producer index with a compare and set, then publish their element into it,
+ * an offer never blocks and fails once the buffer is full. The consumer reads the slots in order, a claimed slot not
+ * published yet ends the drain until the next one.
+ */
+@ThreadSafe
+public class BoundedMpscBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private volatile long consumerIndex;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public BoundedMpscBuffer(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Mutates the state by adding the element, unless the buffer is full
+     *
+     * @return false when the buffer is full
+     */
+    public boolean offer(E element) {
+        for (;;) {
+            long index = producerIndex.get();
+            if (index - consumerIndex > mask) {
+                return false;
+            }
+            if (producerIndex.compareAndSet(index, index + 1)) {
+                slots.set((int) index & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Mutates the state by handing the published elements to the action in order, at most the given number
+     *
+     * @return number of elements drained
+     */
+    @GuardedBy("consumer thread")
+    public int drain(Consumer<? super E> action, int limit) {
+        long index = consumerIndex;
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) index & mask;
+            E element = slots.get(slot);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(slot, null);
+            // frees the slot for the producers only once it is cleared
+            consumerIndex = ++index;
+            drained++;
+            action.accept(element);
+        }
+        return drained;
+    }
+
+    /**
+     * Returns whether no element was offered since the last drain, without mutating the state
+     */
+    public boolean isEmpty() {
+        return producerIndex.get() == consumerIndex;
+    }
+}
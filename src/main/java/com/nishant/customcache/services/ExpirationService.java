@@ -4,14 +4,131 @@ import com.nishant.customcache.annotations.ThreadSafe;
 import com.nishant.customcache.interfaces.ExpirableItem;
 import com.nishant.customcache.interfaces.Expirable;
 
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Expires items through a {@link TimingWheel}, so a single ticker thread serves any number of scheduled items.
+ * Expirations and sweeps take the locks of the cache, given an executor they run on it instead of the ticker thread,
+ * so that a lock held for long never delays the other timers.
+ * <p>
+ * Unless given a wheel of their own, the services of every cache share one wheel and its ticker thread for the whole
+ * JVM. Each service keeps track of the tasks it scheduled, so that {@link #close()} cancels them without touching the
+ * timers of the other caches.
+ */
 @ThreadSafe
-public class ExpirationService {
-    ScheduledExecutorService scheduledService = new ScheduledThreadPoolExecutor(10);
+public class ExpirationService implements AutoCloseable {
+    private static final long TICK_MILLIS = 10;
 
-    public void schedule(Expirable expirable, ExpirableItem item) {
-        scheduledService.schedule(()-> expirable.expire(item),expirable.getExpiry(), expirable.getExpiryTimeUnit());
+    private final TimingWheel timingWheel;
+    private final Executor executor;
+    /**
+     * Tasks scheduled and not run yet, cancelled on close
+     */
+    private final Set<TimingWheel.Timeout> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public ExpirationService() {
+        this(null);
+    }
+
+    /**
+     * @param executor executor running the expirations and sweeps, or null to run them on the ticker thread
+     */
+    public ExpirationService(Executor executor) {
+        this(sharedWheel(), executor);
+    }
+
+    /**
+     * @param timingWheel wheel firing the timers
+     * @param executor    executor running the expirations and sweeps, or null to run them on the ticker thread
+     */
+    public ExpirationService(TimingWheel timingWheel, Executor executor) {
+        this.timingWheel = timingWheel;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the wheel shared by the services not given one, its ticker thread starts on first use
+     */
+    public static TimingWheel sharedWheel() {
+        return SharedWheel.INSTANCE;
+    }
+
+    /**
+     * Schedules the item to expire after its own time to live
+     *
+     * @return the pending expiration, or null if the item never expires or the service is closed
+     */
+    public TimingWheel.Timeout schedule(Expirable expirable, ExpirableItem item) {
+        if (item.getExpiry() <= 0) {
+            return null;
+        }
+        return scheduleWork(() -> expirable.expire(item), item.getExpiry(), item.getExpiryTimeUnit());
+    }
+
+    /**
+     * Schedules a short task to run once on the expiration thread after the delay
+     *
+     * @return the pending task, or null once the service is closed
+     */
+    public TimingWheel.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            return null;
+        }
+        TimingWheel.Timeout timeout = timingWheel.schedule(task, delay, unit, pending);
+        if (closed) {
+            // raced with close, which may have missed it
+            timeout.cancel();
+        }
+        return timeout;
+    }
+
+    /**
+     * Schedules a task that may wait for locks to run once on the executor after the delay
+     *
+     * @return the pending task, or null once the service is closed
+     */
+    public TimingWheel.Timeout scheduleWork(Runnable task, long delay, TimeUnit unit) {
+        if (executor == null) {
+            return schedule(task, delay, unit);
+        }
+        return schedule(() -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // an expiration must not be lost, run it late on the ticker thread
+                task.run();
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Returns the number of tasks scheduled and not run yet, without mutating the state
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Mutates the state by cancelling every pending task, later schedules are ignored. The wheel keeps running for
+     * the other services sharing it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (TimingWheel.Timeout timeout : pending) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Holder of the shared wheel, created on first use
+     */
+    private static final class SharedWheel {
+        static final TimingWheel INSTANCE = new TimingWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, "custom-cache-expiration");
     }
 }
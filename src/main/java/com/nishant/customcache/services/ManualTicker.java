@@ -0,0 +1,31 @@
+package com.nishant.customcache.services;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ticker whose time only moves when advanced, for tests and simulations driving a manual {@link TimingWheel}
+ */
+@ThreadSafe
+public class ManualTicker implements Ticker {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+
+    /**
+     * Mutates the state by moving the time forward by the duration
+     */
+    public void advance(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Time only moves forward");
+        }
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+}
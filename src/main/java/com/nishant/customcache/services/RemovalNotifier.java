@@ -0,0 +1,212 @@
+package com.nishant.customcache.services;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.RemovalListener;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import com.nishant.customcache.model.RemovalCause;
+import com.nishant.customcache.model.RemovalNotification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the removals of a cache to its {@link RemovalListener} in batches, on a thread of its own.
+ * <p>
+ * Partitions report their removals under their write lock, which only offers them to a {@link BoundedMpscBuffer}:
+ * no listener code and no deserialization run under a lock of the cache, and a put or remove never waits for the
+ * listener. Once the listener falls behind by a full buffer, further removals are dropped and counted, and the
+ * listener is told how many it missed. The expiry of a whole key type partition takes a single slot.
+ */
+@ThreadSafe
+public class RemovalNotifier<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /**
+     * Removals collected before handing a batch to the listener
+     */
+    private static final int BATCH = 256;
+    /**
+     * Longest sleep of an idle delivery thread, in case it missed a wake up
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RemovalListener<K, V> listener;
+    /**
+     * Serializer of the values, which arrive as off-heap bytes when not null
+     */
+    private final ValueSerializer<V> serializer;
+    private final BoundedMpscBuffer<Pending> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean idle;
+    private volatile boolean closed;
+    private Thread deliverer;
+
+    @GuardedBy("delivery thread") private final List<RemovalNotification<K, V>> batch = new ArrayList<>(BATCH);
+
+    /**
+     * @param serializer serializer of the values of an off-heap cache, reported as their bytes, or null
+     * @param capacity   removals buffered until the listener catches up
+     */
+    public RemovalNotifier(RemovalListener<K, V> listener, ValueSerializer<V> serializer, int capacity) {
+        this.listener = listener;
+        this.serializer = serializer;
+        this.buffer = new BoundedMpscBuffer<>(capacity);
+    }
+
+    /**
+     * Starts delivering in the background. Removals reported before are ignored, so that rebuilding a cache from
+     * its journal does not notify the listener.
+     */
+    public void start() {
+        deliverer = new Thread(this::deliverLoop, "custom-cache-removals");
+        deliverer.setDaemon(true);
+        deliverer.start();
+        started = true;
+    }
+
+    /**
+     * Stops accepting removals, then waits for the delivery thread to hand the buffered ones to the listener and stop.
+     * Does not wait when called by the listener itself.
+     */
+    public void close() {
+        if (!started || closed) {
+            return;
+        }
+        started = false;
+        closed = true;
+        LockSupport.unpark(deliverer);
+        if (Thread.currentThread() != deliverer) {
+            try {
+                deliverer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reports the removal of an entry, called under the lock of its partition
+     *
+     * @param value the removed value, or a copy of its bytes for an off-heap cache
+     */
+    public void removed(K key, Object value, RemovalCause cause) {
+        if (started) {
+            enqueue(new Removed(key, value, cause));
+        }
+    }
+
+    /**
+     * Reports the removal of the first entries of the arrays at once, called under the lock of their partition
+     *
+     * @param values the removed values, or copies of their bytes for an off-heap cache
+     */
+    public void removedAll(Object[] keys, Object[] values, int count, RemovalCause cause) {
+        if (started && count > 0) {
+            enqueue(new RemovedAll(keys, values, count, cause));
+        }
+    }
+
+    private void enqueue(Pending pending) {
+        if (!buffer.offer(pending)) {
+            dropped.incrementAndGet();
+        } else if (idle) {
+            LockSupport.unpark(deliverer);
+        }
+    }
+
+    private void deliverLoop() {
+        Consumer<Pending> collect = pending -> pending.addTo(batch);
+        while (true) {
+            int drained;
+            try {
+                drained = buffer.drain(collect, BATCH);
+            } catch (RuntimeException e) {
+                // a value that failed to deserialize is left out
+                drained = 1;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    listener.onRemovals(Collections.unmodifiableList(batch));
+                } catch (Throwable e) {
+                    // a failing listener must not stop the deliveries, not even with an error
+                }
+                batch.clear();
+            }
+            if (dropped.get() > 0L) {
+                try {
+                    listener.onDropped(dropped.getAndSet(0L));
+                } catch (Throwable e) {
+                    // as above
+                }
+            }
+            if (drained == 0) {
+                if (closed && buffer.isEmpty()) {
+                    return;
+                }
+                idle = true;
+                if (buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueOf(Object reported) {
+        return serializer == null ? (V) reported : serializer.deserialize((byte[]) reported);
+    }
+
+    /**
+     * Removals taking one slot of the buffer, turned into notifications on the delivery thread
+     */
+    private abstract class Pending {
+        abstract void addTo(List<RemovalNotification<K, V>> notifications);
+    }
+
+    private final class Removed extends Pending {
+        private final K key;
+        private final Object value;
+        private final RemovalCause cause;
+
+        Removed(K key, Object value, RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+
+        @Override
+        void addTo(List<RemovalNotification<K, V>> notifications) {
+            notifications.add(new RemovalNotification<>(key, valueOf(value), cause));
+        }
+    }
+
+    private final class RemovedAll extends Pending {
+        private final Object[] keys;
+        private final Object[] values;
+        private final int count;
+        private final RemovalCause cause;
+
+        RemovedAll(Object[] keys, Object[] values, int count, RemovalCause cause) {
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+            this.cause = cause;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void addTo(List<RemovalNotification<K, V>> notifications) {
+            for (int i = 0; i < count; i++) {
+                notifications.add(new RemovalNotification<>((K) keys[i], valueOf(values[i]), cause));
+            }
+        }
+    }
+}
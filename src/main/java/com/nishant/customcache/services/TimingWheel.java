@@ -0,0 +1,327 @@
+package com.nishant.customcache.services;
+
+import com.nishant.customcache.annotations.GuardedBy;
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.Ticker;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel driven by a single ticker thread.
+ * <p>
+ * Each level has 64 buckets; a bucket of level n spans 64^n ticks, so five levels cover 2^30 ticks.
+ * Timers are kept in intrusive doubly linked bucket lists: scheduling and cancelling are constant time
+ * hand-offs to the ticker thread, which files them into buckets and cascades them down a level whenever
+ * the lower level wraps around. Tasks run on the ticker thread and must be short.
+ * <p>
+ * A wheel is meant to be shared by many owners, closing it stops its ticker thread for all of them.
+ * <p>
+ * A manual wheel has no ticker thread: it reads the time from its {@link Ticker} and fires the timers due when
+ * {@link #advance()} is called, so tests and simulations run expirations deterministically and as fast as they can
+ * move the ticker.
+ */
+@ThreadSafe
+public class TimingWheel implements AutoCloseable {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 5;
+    private static final long MAX_SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+    private final long tickNanos;
+    private final String threadName;
+    private final Ticker ticker;
+    private final long startNanos;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread tickerThread;
+    private volatile boolean closed;
+
+    @GuardedBy("ticker thread") private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    @GuardedBy("ticker thread") private long currentTick;
+
+    public TimingWheel(long tickDuration, TimeUnit unit, String threadName) {
+        this(tickDuration, unit, Ticker.systemTicker(), threadName);
+    }
+
+    /**
+     * Creates a manual wheel, whose timers only fire when {@link #advance()} is called
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, Ticker ticker) {
+        this(tickDuration, unit, ticker, null);
+    }
+
+    private TimingWheel(long tickDuration, TimeUnit unit, Ticker ticker, String threadName) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.threadName = threadName;
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+    }
+
+    /**
+     * Schedules the task to run once after the delay, starting the ticker thread on first use
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, unit, null);
+    }
+
+    /**
+     * Schedules the task to run once after the delay, keeping its timeout in the group until it runs or is cancelled
+     *
+     * @param group concurrent set of the pending timeouts of one owner, or null
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit, Set<Timeout> group) {
+        long elapsed = ticker.read() - startNanos;
+        long deadline = elapsed + Math.min(unit.toNanos(Math.max(0, delay)), Long.MAX_VALUE - elapsed - tickNanos);
+        Timeout timeout = new Timeout(this, task, (deadline + tickNanos - 1) / tickNanos, group);
+        if (group != null) {
+            group.add(timeout);
+        }
+        pending.add(timeout);
+        if (threadName != null && !started.get() && started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::run, threadName);
+            thread.setDaemon(true);
+            tickerThread = thread;
+            thread.start();
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the ticker the wheel reads the time from, without mutating the state
+     */
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Stops the ticker thread, the timers still pending and the ones scheduled later never run
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = tickerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Fires on the calling thread the timers of a manual wheel due by the current time of its ticker, including the
+     * timers those schedule for the time already reached. Calls must not overlap.
+     */
+    public void advance() {
+        if (threadName != null) {
+            throw new IllegalStateException("The wheel is driven by its ticker thread");
+        }
+        long elapsedTicks;
+        do {
+            elapsedTicks = (ticker.read() - startNanos) / tickNanos;
+            advanceTo(elapsedTicks);
+            transferCancelled();
+            transferPending();
+        } while (!pending.isEmpty());
+    }
+
+    private void run() {
+        while (!closed) {
+            advanceTo((ticker.read() - startNanos) / tickNanos);
+            long wakeUp = startNanos + (currentTick + 1) * tickNanos;
+            LockSupport.parkNanos(this, wakeUp - ticker.read());
+        }
+    }
+
+    @GuardedBy("ticker thread")
+    private void advanceTo(long elapsedTicks) {
+        while (currentTick < elapsedTicks) {
+            transferCancelled();
+            transferPending();
+            nextTick();
+        }
+    }
+
+    /**
+     * Moves to the next tick: cascades the upper levels that wrapped around, then fires the due bucket
+     */
+    private void nextTick() {
+        long tick = ++currentTick;
+        for (int level = 1; level < LEVELS && (tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++) {
+            Bucket bucket = wheels[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK];
+            for (Timeout timeout = bucket.clear(); timeout != null; ) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+        Bucket due = wheels[0][(int) tick & WHEEL_MASK];
+        for (Timeout timeout = due.clear(); timeout != null; ) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            if (timeout.deadlineTick > tick) {
+                // deadline was beyond the span of the wheel when filed, file it again
+                place(timeout);
+            } else {
+                timeout.expire();
+            }
+            timeout = next;
+        }
+    }
+
+    private void transferPending() {
+        for (Timeout timeout; (timeout = pending.poll()) != null; ) {
+            if (timeout.state.get() == Timeout.ST_INIT) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void transferCancelled() {
+        for (Timeout timeout; (timeout = cancelled.poll()) != null; ) {
+            if (timeout.bucket != null) {
+                timeout.bucket.unlink(timeout);
+            }
+        }
+    }
+
+    /**
+     * Files the timer into the lowest level whose span covers its remaining delay
+     */
+    private void place(Timeout timeout) {
+        long delay = timeout.deadlineTick - currentTick;
+        if (delay <= 0) {
+            timeout.expire();
+            return;
+        }
+        long tick = delay >= MAX_SPAN ? currentTick + MAX_SPAN - 1 : timeout.deadlineTick;
+        int level = 0;
+        while (tick - currentTick >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK].link(timeout);
+    }
+
+    /**
+     * Handle of a scheduled task, cancellable in constant time
+     */
+    @ThreadSafe
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadlineTick;
+        private final Set<Timeout> group;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        @GuardedBy("ticker thread") private Timeout prev;
+        @GuardedBy("ticker thread") private Timeout next;
+        @GuardedBy("ticker thread") private Bucket bucket;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadlineTick, Set<Timeout> group) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+            this.group = group;
+        }
+
+        /**
+         * Cancels the task if it has not run yet
+         *
+         * @return true if this call cancelled the task
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            leaveGroup();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        private void leaveGroup() {
+            if (group != null) {
+                group.remove(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                leaveGroup();
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    // keep the ticker alive for every other timer, even when a task fails with an error
+                    Thread ticker = Thread.currentThread();
+                    ticker.getUncaughtExceptionHandler().uncaughtException(ticker, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of timers, only touched by the ticker thread
+     */
+    private static final class Bucket {
+        private Timeout head;
+
+        void link(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void unlink(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Detaches and returns the whole list, linked through {@code next}
+         */
+        Timeout clear() {
+            Timeout first = head;
+            head = null;
+            for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+                timeout.prev = null;
+            }
+            return first;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.Immutable;
+import com.nishant.customcache.annotations.ThreadSafe;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Snapshot of the statistics of a cache, or of one of its key types. Times are in nanoseconds.
+ */
+@Getter
+@AllArgsConstructor
+@ThreadSafe
+@Immutable
+public class CacheStats {
+
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0,
+            LatencyHistogram.Snapshot.EMPTY, LatencyHistogram.Snapshot.EMPTY);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long expirationCount;
+    /**
+     * Lock acquisitions that had to wait for another thread
+     */
+    private final long lockWaitCount;
+    private final long totalLockWaitTime;
+    private final LatencyHistogram.Snapshot getLatency;
+    private final LatencyHistogram.Snapshot putLatency;
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Ratio of reads that found a value, 1 when there was no read
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public double getMissRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    public double getAverageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    public double getAverageLockWait() {
+        return lockWaitCount == 0 ? 0.0 : (double) totalLockWaitTime / lockWaitCount;
+    }
+
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime, evictionCount + other.evictionCount,
+                expirationCount + other.expirationCount, lockWaitCount + other.lockWaitCount,
+                totalLockWaitTime + other.totalLockWaitTime, getLatency.plus(other.getLatency),
+                putLatency.plus(other.putLatency));
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", loadSuccessCount=" + loadSuccessCount
+                + ", loadFailureCount=" + loadFailureCount + ", totalLoadTime=" + totalLoadTime
+                + ", evictionCount=" + evictionCount + ", expirationCount=" + expirationCount
+                + ", lockWaitCount=" + lockWaitCount + ", totalLockWaitTime=" + totalLockWaitTime + '}';
+    }
+}
@@ -0,0 +1,99 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the statistics of a cache in the platform MBean server under
+ * {@code com.nishant.customcache:type=CustomCache,name=<name>}
+ */
+@ThreadSafe
+public class CacheStatsMBean implements CacheStatsMXBean {
+
+    private final Supplier<CacheStats> stats;
+    private final Supplier<Map<Class<?>, CacheStats>> statsByKeyType;
+
+    public CacheStatsMBean(Supplier<CacheStats> stats, Supplier<Map<Class<?>, CacheStats>> statsByKeyType) {
+        this.stats = stats;
+        this.statsByKeyType = statsByKeyType;
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server
+     *
+     * @return the name to unregister the MBean with
+     */
+    public static ObjectName register(String name, Supplier<CacheStats> stats,
+                                      Supplier<Map<Class<?>, CacheStats>> statsByKeyType) {
+        try {
+            ObjectName objectName = new ObjectName("com.nishant.customcache:type=CustomCache,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheStatsMBean(stats, statsByKeyType), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the statistics of cache [" + name + "]", e);
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return stats.get();
+    }
+
+    @Override
+    public Map<String, CacheStats> getStatsByKeyType() {
+        Map<String, CacheStats> byName = new LinkedHashMap<>();
+        statsByKeyType.get().forEach((keyType, keyTypeStats) -> byName.put(keyType.getName(), keyTypeStats));
+        return byName;
+    }
+
+    @Override
+    public long getHitCount() {
+        return stats.get().getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return stats.get().getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return stats.get().getHitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return stats.get().getEvictionCount();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return stats.get().getExpirationCount();
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return stats.get().getAverageLoadPenalty();
+    }
+
+    @Override
+    public double getAverageLockWait() {
+        return stats.get().getAverageLockWait();
+    }
+
+    @Override
+    public long getGetLatencyP99() {
+        return stats.get().getGetLatency().getP99();
+    }
+
+    @Override
+    public long getPutLatencyP99() {
+        return stats.get().getPutLatency().getP99();
+    }
+}
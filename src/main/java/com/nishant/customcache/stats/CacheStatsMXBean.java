@@ -0,0 +1,35 @@
+package com.nishant.customcache.stats;
+
+import java.util.Map;
+
+/**
+ * Management view of the statistics of a cache. Besides the snapshots, the figures worth graphing are exposed
+ * as plain attributes.
+ */
+public interface CacheStatsMXBean {
+
+    CacheStats getStats();
+
+    /**
+     * Snapshots per key type, keyed by class name
+     */
+    Map<String, CacheStats> getStatsByKeyType();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    long getExpirationCount();
+
+    double getAverageLoadPenalty();
+
+    double getAverageLockWait();
+
+    long getGetLatencyP99();
+
+    long getPutLatencyP99();
+}
@@ -0,0 +1,79 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter striped with {@link LongAdder}s so that threads recording concurrently do not contend on a shared word
+ */
+@ThreadSafe
+public class ConcurrentStatsCounter implements StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final LongAdder lockWaitCount = new LongAdder();
+    private final LongAdder totalLockWaitTime = new LongAdder();
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadNanos);
+    }
+
+    @Override
+    public void recordEvictions(int count) {
+        evictionCount.add(count);
+    }
+
+    @Override
+    public void recordExpirations(int count) {
+        expirationCount.add(count);
+    }
+
+    @Override
+    public void recordLockWait(long waitNanos) {
+        lockWaitCount.increment();
+        totalLockWaitTime.add(waitNanos);
+    }
+
+    @Override
+    public void recordGetLatency(long nanos) {
+        getLatency.record(nanos);
+    }
+
+    @Override
+    public void recordPutLatency(long nanos) {
+        putLatency.record(nanos);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), expirationCount.sum(), lockWaitCount.sum(),
+                totalLockWaitTime.sum(), getLatency.snapshot(), putLatency.snapshot());
+    }
+}
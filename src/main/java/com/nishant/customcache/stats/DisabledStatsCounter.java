@@ -0,0 +1,52 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+/**
+ * Counter of a cache not recording statistics
+ */
+@ThreadSafe
+enum DisabledStatsCounter implements StatsCounter {
+    INSTANCE;
+
+    @Override
+    public void recordHits(int count) {
+    }
+
+    @Override
+    public void recordMisses(int count) {
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadNanos) {
+    }
+
+    @Override
+    public void recordLoadFailure(long loadNanos) {
+    }
+
+    @Override
+    public void recordEvictions(int count) {
+    }
+
+    @Override
+    public void recordExpirations(int count) {
+    }
+
+    @Override
+    public void recordLockWait(long waitNanos) {
+    }
+
+    @Override
+    public void recordGetLatency(long nanos) {
+    }
+
+    @Override
+    public void recordPutLatency(long nanos) {
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.EMPTY;
+    }
+}
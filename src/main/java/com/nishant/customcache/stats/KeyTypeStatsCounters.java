@@ -0,0 +1,109 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counters of the key types of a cache. They outlive the key type caches so that expiry does not reset them, but hold
+ * their key {@link Class} weakly: a key class whose loader is collected is not pinned by the cache, its counts are
+ * folded into the statistics of the whole cache once the class is gone.
+ */
+@ThreadSafe
+public class KeyTypeStatsCounters {
+
+    private final ConcurrentMap<KeyTypeReference, StatsCounter> counters = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Class<?>> unloaded = new ReferenceQueue<>();
+    /**
+     * Statistics of the key types whose class was unloaded
+     */
+    private final AtomicReference<CacheStats> folded = new AtomicReference<>(CacheStats.EMPTY);
+
+    /**
+     * Returns the counter of the key type, mutating the state by creating it on first use
+     */
+    public StatsCounter counterFor(Class<?> keyType) {
+        expungeUnloaded();
+        StatsCounter counter = counters.get(new KeyTypeReference(keyType, null));
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(new KeyTypeReference(keyType, unloaded), reference -> new ConcurrentStatsCounter());
+    }
+
+    /**
+     * Returns the statistics of every key type, unloaded ones included, without mutating the state
+     */
+    public CacheStats total() {
+        expungeUnloaded();
+        CacheStats stats = folded.get();
+        for (StatsCounter counter : counters.values()) {
+            stats = stats.plus(counter.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of every key type whose class is still loaded, without mutating the state
+     */
+    public Map<Class<?>, CacheStats> byKeyType() {
+        expungeUnloaded();
+        Map<Class<?>, CacheStats> stats = new HashMap<>();
+        counters.forEach((reference, counter) -> {
+            Class<?> keyType = reference.get();
+            if (keyType != null) {
+                stats.put(keyType, counter.snapshot());
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * Mutates the state by folding the counters of the unloaded key classes into the total
+     */
+    private void expungeUnloaded() {
+        for (Reference<? extends Class<?>> reference; (reference = unloaded.poll()) != null; ) {
+            StatsCounter counter = counters.remove(reference);
+            if (counter != null) {
+                CacheStats stats = counter.snapshot();
+                folded.accumulateAndGet(stats, CacheStats::plus);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a key class, equal to another reference to the same class while it is loaded
+     */
+    private static final class KeyTypeReference extends WeakReference<Class<?>> {
+        private final int hash;
+
+        KeyTypeReference(Class<?> keyType, ReferenceQueue<Class<?>> queue) {
+            super(keyType, queue);
+            this.hash = System.identityHashCode(keyType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof KeyTypeReference)) {
+                return false;
+            }
+            Class<?> keyType = get();
+            return keyType != null && keyType == ((KeyTypeReference) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.nishant.customcache.stats;
+
+import com.nishant.customcache.annotations.Immutable;
+import com.nishant.customcache.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in power of two nanosecond buckets: bucket i counts the latencies in [2^(i-1), 2^i).
+ * Recording is a leading zero count and a striped increment, precise enough to tell a nanosecond probe
+ * from a microsecond lock wait.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[bucketOf(nanos)].increment();
+    }
+
+    /**
+     * Returns the counts recorded so far without mutating the state
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts);
+    }
+
+    static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    @ThreadSafe
+    @Immutable
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[BUCKETS]);
+
+        private final long[] counts;
+        private final long count;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Count of every power of two bucket
+         */
+        public long[] getCounts() {
+            return counts.clone();
+        }
+
+        /**
+         * Returns the upper bound in nanoseconds of the bucket holding the quantile, 0 when nothing was recorded
+         */
+        public long percentile(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        public long getMedian() {
+            return percentile(0.5);
+        }
+
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        public long getP999() {
+            return percentile(0.999);
+        }
+
+        public Snapshot plus(Snapshot other) {
+            long[] sum = Arrays.copyOf(counts, BUCKETS);
+            for (int i = 0; i < BUCKETS; i++) {
+                sum[i] += other.counts[i];
+            }
+            return new Snapshot(sum);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.nishant.customcache.stats;
+
+/**
+ * Accumulates the statistics of a cache, or of one of its key types
+ */
+public interface StatsCounter {
+
+    void recordHits(int count);
+
+    void recordMisses(int count);
+
+    void recordLoadSuccess(long loadNanos);
+
+    void recordLoadFailure(long loadNanos);
+
+    void recordEvictions(int count);
+
+    void recordExpirations(int count);
+
+    /**
+     * Records a lock acquisition that had to wait for another thread
+     */
+    void recordLockWait(long waitNanos);
+
+    void recordGetLatency(long nanos);
+
+    void recordPutLatency(long nanos);
+
+    /**
+     * Returns the statistics recorded so far without mutating the state
+     */
+    CacheStats snapshot();
+
+    /**
+     * Returns the counter of a cache not recording statistics, which ignores everything
+     */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+}
@@ -4,18 +4,56 @@ import com.nishant.customcache.common.Rectangle;
 import com.nishant.customcache.common.Shape;
 import com.nishant.customcache.common.ShapeKey;
 import com.nishant.customcache.common.Square;
+import com.nishant.customcache.interfaces.CacheLoader;
+import com.nishant.customcache.interfaces.RemovalListener;
+import com.nishant.customcache.interfaces.ValueSerializer;
+import com.nishant.customcache.model.RemovalCause;
+import com.nishant.customcache.model.RemovalNotification;
+import com.nishant.customcache.persistence.InMemoryStore;
+import com.nishant.customcache.services.ManualTicker;
+import com.nishant.customcache.services.TimingWheel;
+import com.nishant.customcache.stats.CacheStats;
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * @author cannot disclose
@@ -176,9 +214,11 @@ public class CustomCacheTest {
 
     }
 
-    @Test(timeout = 25000)
+    @Test(timeout = 10000)
     public void testWrapperTypesThreaded() throws Exception {
-        CustomCache customCache = new CustomCache();
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache customCache = CustomCache.builder().ticker(ticker).timingWheel(wheel).build();
         Double aDouble = Double.valueOf(100);
         Double aDouble1 = Double.valueOf(101);
         List<Thread> list = Arrays.asList(
@@ -215,7 +255,8 @@ public class CustomCacheTest {
         Assert.assertEquals("World", customCache.get("Hello"));
         Assert.assertEquals(aDouble1, customCache.get(aDouble));
 
-        Thread.sleep(TimeUnit.SECONDS.toMillis(15));
+        ticker.advance(15, TimeUnit.SECONDS);
+        wheel.advance();
 
         Assert.assertEquals(null, customCache.get(21));
         Assert.assertEquals(null, customCache.get(20));
@@ -228,6 +269,1376 @@ public class CustomCacheTest {
 
     }
 
+    @Test(timeout = 10000)
+    public void testConcurrentPutGetRemoveLoseNoUpdate() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().expireAfter(1, TimeUnit.MINUTES).build();
+        int threads = 4;
+        int keysPerThread = 2000;
+        int rounds = 5;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int round = 0; round < rounds; round++) {
+                        // the keys of the workers interleave, so they share probe chains and resizes of one partition
+                        for (int i = 0; i < keysPerThread; i++) {
+                            int key = i * threads + worker;
+                            customCache.put(key, round);
+                            Assert.assertEquals(round, customCache.get(key));
+                            if (key % 3 == 0) {
+                                Assert.assertTrue(customCache.remove(key));
+                                Assert.assertNull(customCache.get(key));
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertNull(failure.get());
+
+        int expectedSize = 0;
+        for (int key = 0; key < threads * keysPerThread; key++) {
+            if (key % 3 == 0) {
+                Assert.assertNull(customCache.get(key));
+            } else {
+                Assert.assertEquals(rounds - 1, customCache.get(key));
+                expectedSize++;
+            }
+        }
+        Assert.assertEquals(expectedSize, customCache.estimatedSize());
+    }
+
+    @Test(timeout = 5000)
+    public void testKeyTypeExpiry() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(1, TimeUnit.HOURS)
+                .expireAfter(ShapeKey.class, 200, TimeUnit.MILLISECONDS)
+                .expireAfter(String.class, 0, TimeUnit.MILLISECONDS)
+                .build();
+        ShapeKey keyOne = new ShapeKey(101);
+        Shape shape = new Shape(0, "Generic Shape");
+        customCache.put(keyOne, shape);
+        customCache.put(20, 11);
+        customCache.put("Hello", "World");
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+
+        Assert.assertEquals(null, customCache.get(keyOne));
+        Assert.assertEquals(11, customCache.get(20));
+        Assert.assertEquals("World", customCache.get("Hello"));
+
+        customCache.put(keyOne, "Type safety reset as ShapeKey expired");
+        Assert.assertEquals("Type safety reset as ShapeKey expired", customCache.get(keyOne));
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfterWrite(300, TimeUnit.MILLISECONDS)
+                .expireAfter(String.class, 0, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .build();
+        ShapeKey keyOne = new ShapeKey(101);
+        ShapeKey keyTwo = new ShapeKey(102);
+        Square square = new Square(1, "Square", 2);
+        customCache.put(keyOne, new Shape(0, "Generic Shape"));
+        customCache.put("Hello", "World");
+        ticker.advance(200, TimeUnit.MILLISECONDS);
+        customCache.put(keyTwo, square);
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+
+        // only the entry written before the time to live expires, not its whole key type
+        Assert.assertEquals(null, customCache.get(keyOne));
+        Assert.assertEquals(square, customCache.get(keyTwo));
+        Assert.assertEquals("World", customCache.get("Hello"));
+        ticker.advance(199, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(square, customCache.get(keyTwo));
+
+        // the background sweeps, a bounded batch of slots every 250 ms, remove the expired entries and drop the empty
+        // key type, resetting type safety
+        for (int i = 0; i < 10; i++) {
+            ticker.advance(100, TimeUnit.MILLISECONDS);
+            wheel.advance();
+        }
+        Assert.assertEquals(1, customCache.estimatedSize());
+        customCache.put(keyOne, "Type safety reset as ShapeKey entries expired");
+        Assert.assertEquals("Type safety reset as ShapeKey entries expired", customCache.get(keyOne));
+        customCache.close();
+    }
+
+    @Test
+    public void testExpireAfterAccess() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfterAccess(300, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .build();
+        customCache.put(1, "read");
+        customCache.put(2, "idle");
+        for (int i = 0; i < 6; i++) {
+            ticker.advance(100, TimeUnit.MILLISECONDS);
+            // the sweep only drops what was not read within the time to live
+            wheel.advance();
+            Assert.assertEquals("read", customCache.get(1));
+        }
+        Assert.assertEquals(null, customCache.get(2));
+        Assert.assertEquals(1, customCache.estimatedSize());
+
+        customCache.put(2, "written again");
+        Assert.assertEquals("written again", customCache.get(2));
+        customCache.close();
+    }
+
+    @Test
+    public void testManualTickerDrivesExpiration() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .expireAfter(ShapeKey.class, 30, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .build();
+        customCache.put(1, "early");
+        ticker.advance(59, TimeUnit.MINUTES);
+        customCache.put(2, "late");
+        wheel.advance();
+        Assert.assertEquals("early", customCache.get(1));
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        Assert.assertEquals(null, customCache.get(1));
+        Assert.assertEquals("late", customCache.get(2));
+
+        // the sweep drops the expired entry, the later one stays until its own hour is up
+        wheel.advance();
+        Assert.assertEquals(1, customCache.estimatedSize());
+        ticker.advance(59, TimeUnit.MINUTES);
+        wheel.advance();
+        Assert.assertEquals(0, customCache.estimatedSize());
+        customCache.put(1, 'x');
+        Assert.assertEquals('x', customCache.get(1));
+        customCache.close();
+    }
+
+    @Test
+    public void testTickerRequiresTimingWheelReadingIt() {
+        ManualTicker ticker = new ManualTicker();
+        try {
+            CustomCache.builder().ticker(ticker).build();
+            Assert.fail("Expected the shared wheel to be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Ticker and timing wheel must be configured together", e.getMessage());
+        }
+        try {
+            CustomCache.builder().timingWheel(new TimingWheel(10, TimeUnit.MILLISECONDS, ticker)).build();
+            Assert.fail("Expected the system ticker to be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Ticker and timing wheel must be configured together", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSegmentedCacheKeepsTypeSafetyAcrossSegments() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .segments(16)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .build();
+        Map<Object, Object> shapes = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            shapes.put(new ShapeKey(i), i % 2 == 0 ? new Rectangle(i, "Rectangle", 2, 3) : new Square(i, "Square", 2));
+        }
+        customCache.putAll(shapes);
+        customCache.put(1000, "other key type");
+        Assert.assertEquals(1001, customCache.estimatedSize());
+        Assert.assertEquals(shapes, customCache.getAll(shapes.keySet()));
+
+        // the value type is the one of the key type, whichever segment a key falls in
+        for (int i = 1000; i < 1016; i++) {
+            try {
+                customCache.put(new ShapeKey(i), "Not a Shape object should fail");
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertEquals(null, customCache.get(new ShapeKey(i)));
+            }
+        }
+
+        Path file = Files.createTempFile("custom-cache", ".snapshot");
+        try {
+            Assert.assertEquals(1001, customCache.writeSnapshot(file, ValueSerializer.java(), ValueSerializer.java()));
+            CustomCache<Object, Object> restored = CustomCache.builder().segments(4).build();
+            Assert.assertEquals(1001, restored.readSnapshot(file, ValueSerializer.java(), ValueSerializer.java()));
+            Assert.assertEquals("Square", ((Shape) restored.get(new ShapeKey(999))).getName());
+            restored.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        // entries expire segment by segment, the key type goes once every segment is empty
+        ticker.advance(1, TimeUnit.HOURS);
+        customCache.put(new ShapeKey(0), new Shape(0, "Fresh"));
+        for (int i = 0; i < 100 && customCache.estimatedSize() > 1; i++) {
+            ticker.advance(250, TimeUnit.MILLISECONDS);
+            wheel.advance();
+        }
+        Assert.assertEquals(1, customCache.estimatedSize());
+        Assert.assertEquals(1, customCache.removeAll(Collections.singletonList(new ShapeKey(0))));
+        customCache.put(new ShapeKey(1), "Should work this time as all Shape's removed");
+        Assert.assertEquals("Should work this time as all Shape's removed", customCache.get(new ShapeKey(1)));
+        customCache.close();
+
+        try {
+            CustomCache.builder().segments(3);
+            Assert.fail("Segments that are not a power of two should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testNearCacheSeesEveryMutationOfItsKeyType() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(ShapeKey.class, 1, TimeUnit.MINUTES)
+                .nearCache(ShapeKey.class)
+                .nearCacheSlots(16)
+                .ticker(ticker)
+                .timingWheel(wheel)
+                .build();
+        ShapeKey key = new ShapeKey(1);
+        Rectangle rectangle = new Rectangle(1, "Rectangle One", 5, 3);
+        customCache.put(key, rectangle);
+        Assert.assertEquals(rectangle, customCache.get(key));
+        Assert.assertSame(rectangle, customCache.get(key));
+
+        Square square = new Square(1, "Square One", 5);
+        customCache.put(key, square);
+        Assert.assertSame(square, customCache.get(key));
+
+        // a write from another thread invalidates the copy this thread holds
+        Shape shape = new Shape(1, "Generic Shape");
+        Thread writer = new Thread(() -> customCache.put(key, shape));
+        writer.start();
+        writer.join();
+        Assert.assertSame(shape, customCache.get(key));
+        customCache.put(new ShapeKey(2), square);
+        Assert.assertSame(shape, customCache.get(key));
+
+        Assert.assertTrue(customCache.remove(key));
+        Assert.assertEquals(null, customCache.get(key));
+        customCache.put(key, rectangle);
+        Assert.assertSame(rectangle, customCache.get(key));
+
+        // the expiry of the key type drops its copies and resets its type safety rule
+        ticker.advance(1, TimeUnit.MINUTES);
+        wheel.advance();
+        Assert.assertEquals(null, customCache.get(key));
+        customCache.put(key, "Should work this time as all Shape's expired");
+        Assert.assertEquals("Should work this time as all Shape's expired", customCache.get(key));
+        customCache.close();
+
+        try {
+            CustomCache.builder().nearCache(ShapeKey.class).expireAfterWrite(1, TimeUnit.MINUTES).build();
+            Assert.fail("A near cache over entries expiring on their own should be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Near cache requires key type expiration, no refresh and on-heap values", e.getMessage());
+        }
+        try {
+            CustomCache.builder().nearCache(ShapeKey.class).maximumSize(100).build();
+            Assert.fail("A near cache hiding hits from the eviction policy should be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Near cache cannot be combined with a maximum size or weight", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testLoadingGetRunsOneLoadPerKey() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().build();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        Object[] results = new Object[16];
+        for (int i = 0; i < results.length; i++) {
+            int reader = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                results[reader] = customCache.get(7, key -> {
+                    loads.incrementAndGet();
+                    sleep(200);
+                    return "Loaded " + key;
+                });
+            });
+            thread.start();
+            readers.add(thread);
+        }
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertEquals(1, loads.get());
+        for (Object result : results) {
+            Assert.assertEquals("Loaded 7", result);
+        }
+        Assert.assertEquals("Loaded 7", customCache.get(7));
+        Assert.assertEquals("Loaded 7", customCache.get(7, key -> "Not loaded again"));
+    }
+
+    @Test(timeout = 5000)
+    public void testLoadingGetRespectsTypeSafety() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().build();
+        customCache.put(1, 1);
+        try {
+            customCache.get(2, key -> "Not an Integer");
+            Assert.fail("Load of a value breaking the type safety rule should fail");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Object of class [class java.lang.String] not allowable"));
+        }
+        Assert.assertEquals(null, customCache.get(2));
+        Assert.assertEquals(null, customCache.get(3, key -> null));
+
+        try {
+            customCache.get(4, key -> customCache.get(4, other -> 4));
+            Assert.fail("Recursive load of the same key should fail");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Recursive load of key [4]", e.getMessage());
+        }
+        Assert.assertEquals(5, customCache.get(5, key -> 5));
+    }
+
+    @Test(timeout = 5000)
+    public void testAsyncLoadingGet() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CustomCache<Object, Object> customCache = CustomCache.builder().executor(executor).build();
+            AtomicInteger loads = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            Function<Object, Object> loader = key -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "Loaded " + key;
+            };
+            CompletableFuture<Object> first = customCache.getAsync("key", loader);
+            CompletableFuture<Object> second = customCache.getAsync("key", loader);
+            first.cancel(false);
+            release.countDown();
+
+            Assert.assertEquals("Loaded key", second.get());
+            Assert.assertEquals(1, loads.get());
+            Assert.assertEquals("Loaded key", customCache.get("key"));
+            Assert.assertEquals("Loaded key", customCache.getAsync("key", loader).get());
+
+            CompletableFuture<Object> failed = customCache.getAsync("other", key -> {
+                throw new IllegalStateException("Load failed");
+            });
+            try {
+                failed.get();
+                Assert.fail("Failed load should complete exceptionally");
+            } catch (ExecutionException e) {
+                Assert.assertEquals("Load failed", e.getCause().getMessage());
+            }
+            Assert.assertEquals(null, customCache.get("other"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRefreshAfterWriteServesStaleValueDuringOneReload() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AtomicInteger loads = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            CustomCache<Integer, String> customCache = CustomCache.builder()
+                    .expireAfterWrite(1, TimeUnit.HOURS)
+                    .refreshAfterWrite(100, TimeUnit.MILLISECONDS)
+                    .executor(executor)
+                    .loader((Integer key) -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "Reloaded " + loads.incrementAndGet();
+                    })
+                    .build();
+            customCache.put(1, "Written");
+            Assert.assertEquals("Written", customCache.get(1));
+            Thread.sleep(150);
+
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals("Written", customCache.get(1));
+            }
+            release.countDown();
+            while (!"Reloaded 1".equals(customCache.get(1))) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().build();
+        Map<Object, Object> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            entries.put(i, i * 10);
+            entries.put("" + i, "Value " + i);
+        }
+        customCache.putAll(entries);
+        Assert.assertEquals(90, customCache.get(9));
+        Assert.assertEquals("Value 9", customCache.get("9"));
+
+        List<Object> keys = Arrays.asList(1, "1", 2L, 3, "missing", new ShapeKey(1));
+        Map<Object, Object> found = customCache.getAll(keys);
+        Assert.assertEquals(3, found.size());
+        Assert.assertEquals(10, found.get(1));
+        Assert.assertEquals("Value 1", found.get("1"));
+        Assert.assertEquals(30, found.get(3));
+
+        List<Object> visited = new ArrayList<>();
+        customCache.getAll(keys, (key, value) -> visited.add(key));
+        Assert.assertEquals(3, visited.size());
+
+        Map<Object, Object> mismatch = new LinkedHashMap<>();
+        mismatch.put(1, 1000);
+        mismatch.put("1", 1000);
+        try {
+            customCache.putAll(mismatch);
+            Assert.fail("Value breaking the type safety rule should fail the bulk put");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Object of class [class java.lang.Integer] not allowable"));
+        }
+        // no entry of an existing key type cache is written before the type safety rule is checked for all
+        Assert.assertEquals(10, customCache.get(1));
+
+        List<Object> strings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            strings.add("" + i);
+        }
+        strings.add("missing");
+        Assert.assertEquals(100, customCache.removeAll(strings));
+        Assert.assertEquals(null, customCache.get("1"));
+        // every String key was removed, so its type safety rule is reset
+        customCache.put("1", 1);
+        Assert.assertEquals(1, customCache.get("1"));
+    }
+
+    @Test
+    public void testGetAllLoadsMissesInOneBatch() throws Exception {
+        CustomCache<Integer, String> customCache = CustomCache.builder().build();
+        customCache.put(1, "Cached 1");
+        List<Set<? extends Integer>> batches = new ArrayList<>();
+        CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+            @Override
+            public String load(Integer key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Map<Integer, String> loadAll(Set<? extends Integer> keys) {
+                batches.add(new HashSet<>(keys));
+                Map<Integer, String> values = new HashMap<>();
+                for (Integer key : keys) {
+                    if (key != 4) {
+                        values.put(key, "Loaded " + key);
+                    }
+                }
+                return values;
+            }
+        };
+
+        Map<Integer, String> values = customCache.getAll(Arrays.asList(1, 2, 3, 4, 2), loader);
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(2, 3, 4)), batches.get(0));
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals("Cached 1", values.get(1));
+        Assert.assertEquals("Loaded 2", values.get(2));
+        Assert.assertEquals("Loaded 3", customCache.get(3));
+        Assert.assertEquals(null, customCache.get(4));
+    }
+
+    @Test(timeout = 5000)
+    public void testStats() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().maximumSize(2).recordStats().build();
+        customCache.put(1, "1");
+        customCache.put(2, "2");
+        Assert.assertEquals("1", customCache.get(1));
+        Assert.assertEquals(null, customCache.get(3));
+        Assert.assertEquals(null, customCache.get("missing"));
+        Assert.assertEquals("Loaded 4", customCache.get(4, key -> "Loaded " + key));
+        Assert.assertEquals(null, customCache.get(5, key -> null));
+        customCache.getAll(Arrays.asList(6, "other"));
+
+        CacheStats stats = customCache.stats();
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(6, stats.getMissCount());
+        Assert.assertEquals(1, stats.getLoadSuccessCount());
+        Assert.assertEquals(1, stats.getLoadFailureCount());
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(5, stats.getGetLatency().getCount());
+        Assert.assertEquals(3, stats.getPutLatency().getCount());
+
+        Map<Class<?>, CacheStats> byKeyType = customCache.statsByKeyType();
+        Assert.assertEquals(2, byKeyType.get(String.class).getMissCount());
+        Assert.assertEquals(4, byKeyType.get(Integer.class).getMissCount());
+
+        ObjectName name = customCache.registerStatsMBean("testStats");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(1L, server.getAttribute(name, "HitCount"));
+            Assert.assertEquals(1L, server.getAttribute(name, "EvictionCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStatsDoNotPinUnloadableKeyTypes() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().expireAfter(0, TimeUnit.SECONDS)
+                .recordStats().build();
+        WeakReference<ClassLoader> loader = useKeyTypeOfOwnLoader(customCache);
+        Assert.assertEquals(1, customCache.statsByKeyType().size());
+
+        while (loader.get() != null) {
+            System.gc();
+            sleep(10);
+        }
+        // the counts of the unloaded key type are kept in the total
+        Assert.assertEquals(0, customCache.statsByKeyType().size());
+        Assert.assertEquals(1, customCache.stats().getHitCount());
+        Assert.assertEquals(1, customCache.stats().getMissCount());
+    }
+
+    /**
+     * Puts, reads and removes a key whose class is defined by a loader of its own, which nothing else references
+     */
+    private static WeakReference<ClassLoader> useKeyTypeOfOwnLoader(CustomCache<Object, Object> customCache)
+            throws Exception {
+        String name = UnloadableKey.class.getName();
+        byte[] bytes;
+        try (InputStream in = UnloadableKey.class.getResourceAsStream(
+                "/" + name.replace('.', '/') + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            bytes = out.toByteArray();
+        }
+        ClassLoader loader = new ClassLoader(CustomCacheTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+                return className.equals(name) ? defineClass(name, bytes, 0, bytes.length)
+                        : super.loadClass(className, resolve);
+            }
+        };
+        Object key = loader.loadClass(name).getConstructor().newInstance();
+        Assert.assertNotSame(UnloadableKey.class, key.getClass());
+        customCache.put(key, "Value");
+        Assert.assertEquals("Value", customCache.get(key));
+        Assert.assertTrue(customCache.remove(key));
+        Assert.assertNull(customCache.get(key));
+        return new WeakReference<>(loader);
+    }
+
+    public static final class UnloadableKey {
+    }
+
+    @Test
+    public void testStatsAreOptIn() {
+        CustomCache<Object, Object> customCache = CustomCache.builder().expireAfter(100, TimeUnit.MILLISECONDS).build();
+        customCache.put(1, "1");
+        customCache.get(1);
+        Assert.assertSame(CacheStats.EMPTY, customCache.stats());
+        try {
+            customCache.registerStatsMBean("testStatsAreOptIn");
+            Assert.fail("Registering the statistics of a cache not recording them should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        CustomCache<Object, Object> recording = CustomCache.builder().expireAfter(100, TimeUnit.MILLISECONDS)
+                .recordStats().build();
+        recording.put(1, "1");
+        recording.put(2, "2");
+        sleep(400);
+        Assert.assertEquals(2, recording.stats().getExpirationCount());
+    }
+
+    @Test
+    public void testOffHeapValues() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder().offHeap(ValueSerializer.java(), 4096).build();
+        Shape shape = new Shape(1, "Square");
+        customCache.put(new ShapeKey(1), shape);
+        Object stored = customCache.get(new ShapeKey(1));
+        Assert.assertEquals(shape, stored);
+        Assert.assertNotSame(shape, stored);
+        for (int i = 0; i < 1000; i++) {
+            customCache.put(i, "Value " + i);
+        }
+        customCache.put(7, "Replaced");
+        Assert.assertEquals("Replaced", customCache.get(7));
+        Assert.assertEquals("Value 999", customCache.get(999));
+        Assert.assertEquals(2, customCache.getAll(Arrays.asList(1, 2, 5000)).size());
+        customCache.remove(7);
+        Assert.assertEquals(null, customCache.get(7));
+        // type safety still applies to values that only exist as bytes
+        try {
+            customCache.put(8, 8);
+            Assert.fail("Value breaking the type safety rule should fail");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Object of class [class java.lang.Integer] not allowable"));
+        }
+
+        CustomCache<Integer, String> bounded = CustomCache.builder().maximumSize(100)
+                .offHeap(ValueSerializer.<String>java()).build();
+        for (int i = 0; i < 1000; i++) {
+            bounded.put(i, "Value " + i);
+        }
+        int present = 0;
+        for (int i = 0; i < 1000; i++) {
+            String value = bounded.get(i);
+            if (value != null) {
+                Assert.assertEquals("Value " + i, value);
+                present++;
+            }
+        }
+        Assert.assertTrue(present <= 100);
+    }
+
+    @Test(timeout = 5000)
+    public void testIntKeyCache() throws Exception {
+        IntKeyCache<Shape> intKeyCache = CustomCache.builder().expireAfter(200, TimeUnit.MILLISECONDS)
+                .buildIntKeyCache();
+        Square square = new Square(1, "Square", 1);
+        intKeyCache.put(0, square);
+        intKeyCache.put(-1, new Rectangle(2, "Rectangle", 1, 2));
+        Assert.assertSame(square, intKeyCache.get(0));
+        Assert.assertEquals(null, intKeyCache.get(1));
+
+        // values must share the highest type of the first value, like the values of a key type
+        IntKeyCache<Object> mixed = CustomCache.builder().buildIntKeyCache();
+        mixed.put(1, "1");
+        try {
+            mixed.put(2, 2);
+            Assert.fail("Value breaking the type safety rule should fail");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Object of class [class java.lang.Integer] not allowable for this Key Type [int]"));
+        }
+        Assert.assertTrue(mixed.remove(1));
+        Assert.assertFalse(mixed.remove(1));
+        // the emptied cache accepts another value type
+        mixed.put(2, 2);
+        Assert.assertEquals(2, mixed.get(2));
+
+        // the whole cache expires at once
+        sleep(400);
+        Assert.assertEquals(null, intKeyCache.get(0));
+        Assert.assertEquals(null, intKeyCache.get(-1));
+        intKeyCache.put(3, square);
+        Assert.assertSame(square, intKeyCache.get(3));
+    }
+
+    @Test(timeout = 5000)
+    public void testLongKeyCacheExpireAfterWrite() throws Exception {
+        LongKeyCache<String> longKeyCache = CustomCache.builder().expireAfterWrite(10, TimeUnit.SECONDS)
+                .expireAfter(Long.class, 200, TimeUnit.MILLISECONDS).buildLongKeyCache();
+        longKeyCache.put(Long.MIN_VALUE, "min");
+        sleep(100);
+        longKeyCache.put(Long.MAX_VALUE, "max");
+        sleep(150);
+        Assert.assertEquals(null, longKeyCache.get(Long.MIN_VALUE));
+        Assert.assertEquals("max", longKeyCache.get(Long.MAX_VALUE));
+
+        try {
+            CustomCache.builder().maximumSize(10).buildLongKeyCache();
+            Assert.fail("Settings primitive key caches do not support should be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            CustomCache.builder().segments(4).buildLongKeyCache();
+            Assert.fail("Segments should be rejected by primitive key caches");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSnapshotWarmStart() throws Exception {
+        Path file = Files.createTempFile("custom-cache", ".snapshot");
+        try {
+            CustomCache<Object, Object> customCache = CustomCache.builder().expireAfter(10, TimeUnit.SECONDS)
+                    .expireAfter(Integer.class, 1, TimeUnit.SECONDS).build();
+            for (int i = 0; i < 3000; i++) {
+                customCache.put(i, i * 10);
+                customCache.put("" + i, "Value " + i);
+            }
+            customCache.put(new ShapeKey(1), new Square(1, "Square", 1));
+            Assert.assertEquals(6001, customCache.writeSnapshot(file, ValueSerializer.java(), ValueSerializer.java()));
+
+            CustomCache<Object, Object> restored = CustomCache.builder().expireAfter(10, TimeUnit.SECONDS).build();
+            Assert.assertEquals(6001, restored.readSnapshot(file, ValueSerializer.java(), ValueSerializer.java()));
+            Assert.assertEquals(2990, restored.get(299));
+            Assert.assertEquals("Value 2999", restored.get("2999"));
+            Assert.assertEquals(new Square(1, "Square", 1).getName(), ((Shape) restored.get(new ShapeKey(1))).getName());
+            // the remaining time to live of a key type survives the restore
+            sleep(1100);
+            Assert.assertEquals(null, restored.get(299));
+            Assert.assertEquals("Value 2999", restored.get("2999"));
+
+            // entries keep their age, an entry that outlived its time to live is not restored
+            CustomCache<Object, Object> perEntry = CustomCache.builder().expireAfterWrite(200, TimeUnit.MILLISECONDS).build();
+            perEntry.put(1, "Old");
+            sleep(100);
+            perEntry.put(2, "New");
+            perEntry.writeSnapshot(file, ValueSerializer.java(), ValueSerializer.java());
+            sleep(120);
+            CustomCache<Object, Object> restoredPerEntry = CustomCache.builder().expireAfterWrite(200, TimeUnit.MILLISECONDS).build();
+            Assert.assertEquals(1, restoredPerEntry.readSnapshot(file, ValueSerializer.java(), ValueSerializer.java()));
+            Assert.assertEquals("New", restoredPerEntry.get(2));
+
+            Files.write(file, new byte[]{1, 2, 3});
+            try {
+                restored.readSnapshot(file, ValueSerializer.java(), ValueSerializer.java());
+                Assert.fail("A file that is not a snapshot should be rejected");
+            } catch (UncheckedIOException e) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testJournalReplaysAfterCrash() throws Exception {
+        Path directory = Files.createTempDirectory("custom-cache-journal");
+        try {
+            CustomCache<Object, Object> customCache = journaled(directory).build();
+            for (int i = 0; i < 3000; i++) {
+                customCache.put(i, i * 10);
+                customCache.put("" + i, "Value " + i);
+            }
+            customCache.remove(7);
+            customCache.removeAll(Arrays.asList("8", "9"));
+            customCache.put(1, 11);
+            customCache.put(new ShapeKey(1), new Square(1, "Square", 1));
+            customCache.syncJournal();
+
+            // the first cache is never closed, as if the process crashed
+            CustomCache<Object, Object> recovered = journaled(directory).build();
+            Assert.assertEquals(11, recovered.get(1));
+            Assert.assertEquals(2990, recovered.get(299));
+            Assert.assertEquals(null, recovered.get(7));
+            Assert.assertEquals(null, recovered.get("8"));
+            Assert.assertEquals("Value 2999", recovered.get("2999"));
+            Assert.assertEquals("Square", ((Shape) recovered.get(new ShapeKey(1))).getName());
+
+            // compaction replaces the segments with a snapshot, mutations journaled afterwards are replayed over it
+            recovered.compactJournal();
+            recovered.put(2, 22);
+            recovered.remove("10");
+            recovered.syncJournal();
+            try (Stream<Path> files = Files.list(directory)) {
+                Assert.assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count());
+            }
+            // a record torn by a crash ends the replay of its segment
+            Path last;
+            try (Stream<Path> files = Files.list(directory)) {
+                last = files.filter(file -> file.getFileName().toString().startsWith("journal-")).max(Path::compareTo).get();
+            }
+            Files.write(last, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+            CustomCache<Object, Object> compacted = journaled(directory).build();
+            Assert.assertEquals(22, compacted.get(2));
+            Assert.assertEquals(11, compacted.get(1));
+            Assert.assertEquals(null, compacted.get("10"));
+            Assert.assertEquals(null, compacted.get(7));
+            Assert.assertEquals("Value 2999", compacted.get("2999"));
+
+            // the expiry of a key type is journaled, even when the key type lives longer once rebuilt
+            Path expiring = directory.resolve("expiring");
+            CustomCache<Object, Object> shortLived = journaled(expiring).expireAfter(Integer.class, 200, TimeUnit.MILLISECONDS).build();
+            shortLived.put(1, 1);
+            shortLived.put("1", "1");
+            sleep(500);
+            shortLived.syncJournal();
+            CustomCache<Object, Object> expired = journaled(expiring).build();
+            Assert.assertEquals(null, expired.get(1));
+            Assert.assertEquals("1", expired.get("1"));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPutsRacingCloseOfTheJournalSucceed() throws Exception {
+        Path directory = Files.createTempDirectory("custom-cache-journal");
+        try {
+            CustomCache<Object, Object> customCache = journaled(directory).build();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            AtomicBoolean closed = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; !closed.get() || i % 1000 != 0; i++) {
+                        customCache.put(i & 1023, i);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            writer.start();
+            sleep(50);
+            customCache.close();
+            closed.set(true);
+            writer.join();
+            Assert.assertNull(failure.get());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPartitionDroppedWhenEmptyNeverExpiresItsSuccessor() throws Exception {
+        Path directory = Files.createTempDirectory("custom-cache-journal");
+        try {
+            ManualTicker ticker = new ManualTicker();
+            TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, ticker);
+            CustomCache<Object, Object> customCache = journaled(directory).expireAfter(10, TimeUnit.SECONDS)
+                    .ticker(ticker)
+                    .timingWheel(wheel)
+                    .build();
+            customCache.put(1, "a");
+            customCache.remove(1);
+            ticker.advance(5, TimeUnit.SECONDS);
+            wheel.advance();
+            customCache.put(2, "b");
+            // the expiry of the dropped partition is due now, the one of its successor in four seconds
+            ticker.advance(6, TimeUnit.SECONDS);
+            wheel.advance();
+            Assert.assertEquals("b", customCache.get(2));
+            customCache.syncJournal();
+
+            CustomCache<Object, Object> recovered = journaled(directory).build();
+            Assert.assertEquals("b", recovered.get(2));
+            recovered.close();
+            customCache.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testExpirationsRunOnExpirationExecutor() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CustomCache<Object, Object> customCache = CustomCache.builder()
+                    .expireAfter(100, TimeUnit.MILLISECONDS)
+                    .expirationExecutor(task -> {
+                        tasks.incrementAndGet();
+                        executor.execute(task);
+                    })
+                    .build();
+            customCache.put(1, 1);
+            while (customCache.get(1) != null) {
+                sleep(5);
+            }
+            Assert.assertEquals(1, tasks.get());
+            // the expiry reset the type safety rule
+            customCache.put(1, "1");
+            Assert.assertEquals("1", customCache.get(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteBehindCoalescesAndBatchesPerKeyType() throws Exception {
+        InMemoryStore<Object, Object> store = new InMemoryStore<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .writer(store)
+                .writeBehind(1000, 1, TimeUnit.HOURS)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            customCache.put(1, i);
+        }
+        customCache.put(2, 2);
+        customCache.put("1", "1");
+        customCache.remove(2);
+        customCache.putAll(Collections.singletonMap("2", "2"));
+        Assert.assertEquals(0, store.getWriteCount());
+
+        customCache.flushWrites();
+        // one key type writes 1 and deletes 2, the other writes "1" and "2"
+        Assert.assertEquals(3, store.getWriteCount());
+        Assert.assertEquals(1, store.getDeleteCount());
+        Assert.assertEquals(3, store.getBatchCount());
+        Assert.assertEquals(99, store.load(1));
+        Assert.assertEquals(null, store.load(2));
+        Assert.assertEquals("2", store.load("2"));
+
+        // values loaded from the store are not written back
+        Assert.assertEquals("2", customCache.get("2", store::load));
+        customCache.remove("2");
+        Assert.assertEquals("2", customCache.get("2", store::load));
+        customCache.flushWrites();
+        Assert.assertEquals(null, store.load("2"));
+        Assert.assertEquals(3, store.getWriteCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteBehindFlushesOnSizeAndDelay() throws Exception {
+        InMemoryStore<Object, Object> store = new InMemoryStore<>();
+        CustomCache<Object, Object> bySize = CustomCache.builder()
+                .writer(store)
+                .writeBehind(10, 1, TimeUnit.HOURS)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            bySize.put(i, i);
+        }
+        while (store.size() < 10) {
+            sleep(5);
+        }
+        Assert.assertEquals(1, store.getBatchCount());
+
+        InMemoryStore<Object, Object> delayed = new InMemoryStore<>();
+        CustomCache<Object, Object> byDelay = CustomCache.builder()
+                .writer(delayed)
+                .writeBehind(1000, 100, TimeUnit.MILLISECONDS)
+                .build();
+        byDelay.put(1, 1);
+        Assert.assertEquals(null, delayed.load(1));
+        while (delayed.load(1) == null) {
+            sleep(5);
+        }
+
+        // written through without a write behind queue
+        InMemoryStore<Object, Object> writeThrough = new InMemoryStore<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder().writer(writeThrough).build();
+        customCache.put(1, 1);
+        Assert.assertEquals(1, writeThrough.load(1));
+        customCache.removeAll(Arrays.asList(1, 2));
+        Assert.assertEquals(2, writeThrough.getDeleteCount());
+        Assert.assertEquals(0, writeThrough.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testRacingWritesReachTheStoreInCacheOrder() throws Exception {
+        InMemoryStore<Object, Object> store = new InMemoryStore<Object, Object>() {
+            @Override
+            public void write(Object key, Object value) {
+                // widens the window between the mutation of the cache and the write to the store
+                Thread.yield();
+                super.write(key, value);
+            }
+        };
+        CustomCache<Object, Object> customCache = CustomCache.builder().writer(store).build();
+        int rounds = 2000;
+        CyclicBarrier barrier = new CyclicBarrier(4, () -> Assert.assertEquals(customCache.get(1), store.load(1)));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < rounds; i++) {
+                        switch ((i + writer) & 3) {
+                            case 0:
+                                customCache.remove(1);
+                                break;
+                            case 1:
+                                customCache.putAll(Collections.singletonMap(1, writer));
+                                break;
+                            default:
+                                customCache.put(1, writer);
+                        }
+                        barrier.await();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // the barrier action asserts after every round, its failure breaks the barrier of every writer
+        Assert.assertNull(failure.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testWritesFailedOnCloseStayQueued() throws Exception {
+        AtomicInteger failures = new AtomicInteger(1);
+        InMemoryStore<Object, Object> store = new InMemoryStore<Object, Object>() {
+            @Override
+            public void writeAll(Map<?, ?> entries) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Store unavailable");
+                }
+                super.writeAll(entries);
+            }
+        };
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .writer(store)
+                .writeBehind(1000, 1, TimeUnit.HOURS)
+                .build();
+        customCache.put(1, 1);
+        customCache.put(2, 2);
+        try {
+            customCache.close();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Store unavailable", e.getMessage());
+        }
+        // a key written through after the close drops its queued mutation
+        customCache.put(2, 22);
+        Assert.assertEquals(22, store.load(2));
+        customCache.flushWrites();
+        Assert.assertEquals(1, store.load(1));
+        Assert.assertEquals(22, store.load(2));
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteThroughAfterCloseWaitsForTheFlushInProgress() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryStore<Object, Object> store = new InMemoryStore<Object, Object>() {
+            @Override
+            public void writeAll(Map<?, ?> entries) {
+                flushing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.writeAll(entries);
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CustomCache<Object, Object> customCache = CustomCache.builder()
+                    .writer(store)
+                    .writeBehind(1, 1, TimeUnit.HOURS)
+                    .executor(executor)
+                    .build();
+            customCache.put(1, "Old");
+            flushing.await();
+            // the background flush is writing the old value, the close waits for it
+            Thread closer = new Thread(customCache::close);
+            closer.start();
+            awaitBlockedOrDone(closer);
+            Thread writer = new Thread(() -> customCache.put(1, "New"));
+            writer.start();
+            awaitBlockedOrDone(writer);
+            release.countDown();
+            closer.join();
+            writer.join();
+            Assert.assertEquals("New", store.load(1));
+            Assert.assertEquals("New", customCache.get(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitBlockedOrDone(Thread thread) {
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TERMINATED) {
+            Thread.yield();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteBehindRetriesFailedWrites() throws Exception {
+        AtomicInteger failures = new AtomicInteger(1);
+        InMemoryStore<Object, Object> store = new InMemoryStore<Object, Object>() {
+            @Override
+            public void writeAll(Map<?, ?> entries) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Store unavailable");
+                }
+                super.writeAll(entries);
+            }
+        };
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .writer(store)
+                .writeBehind(1000, 50, TimeUnit.MILLISECONDS)
+                .build();
+        customCache.put(1, 1);
+        try {
+            customCache.flushWrites();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Store unavailable", e.getMessage());
+        }
+        // the newer value queued meanwhile wins over the failed one
+        customCache.put(1, 2);
+        while (store.load(1) == null) {
+            sleep(5);
+        }
+        Assert.assertEquals(2, store.load(1));
+    }
+
+    private static CacheBuilder<Object, Object> journaled(Path directory) {
+        return CustomCache.builder().expireAfter(1, TimeUnit.MINUTES)
+                .journal(directory, ValueSerializer.java(), ValueSerializer.java())
+                .journalSyncInterval(10, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRemovalListenerReportsExplicitReplacedAndEvicted() throws Exception {
+        List<RemovalNotification<Object, Object>> notifications = new CopyOnWriteArrayList<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(0, TimeUnit.SECONDS)
+                .maximumSize(10)
+                .removalListener((key, value, cause) -> notifications.add(new RemovalNotification<>(key, value, cause)))
+                .build();
+        ShapeKey shapeKey = new ShapeKey(1);
+        Shape shape = new Shape(1, "Shape");
+        customCache.put(shapeKey, shape);
+        customCache.put(shapeKey, new Square(1, "Square", 2));
+        Assert.assertTrue(customCache.remove(shapeKey));
+        for (int i = 0; i < 100; i++) {
+            customCache.put(i, i);
+        }
+
+        while (count(notifications, RemovalCause.EXPLICIT) == 0 || count(notifications, RemovalCause.EVICTED) == 0) {
+            sleep(10);
+        }
+        Assert.assertEquals(shapeKey, notifications.get(0).getKey());
+        Assert.assertEquals(shape, notifications.get(0).getValue());
+        Assert.assertEquals(RemovalCause.REPLACED, notifications.get(0).getCause());
+        Assert.assertEquals(new Square(1, "Square", 2), notifications.get(1).getValue());
+        Assert.assertEquals(RemovalCause.EXPLICIT, notifications.get(1).getCause());
+        for (RemovalNotification<Object, Object> notification : notifications) {
+            if (notification.getCause() == RemovalCause.EVICTED) {
+                Assert.assertEquals(notification.getKey(), notification.getValue());
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRemovalListenerReportsExpiredEntriesAndKeyTypes() throws Exception {
+        List<RemovalNotification<Object, Object>> notifications = new CopyOnWriteArrayList<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfterWrite(100, TimeUnit.MILLISECONDS)
+                .expireAfter(ShapeKey.class, 100, TimeUnit.MILLISECONDS)
+                .removalListener(new RemovalListener<Object, Object>() {
+                    @Override
+                    public void onRemoval(Object key, Object value, RemovalCause cause) {
+                        notifications.add(new RemovalNotification<>(key, value, cause));
+                    }
+                })
+                .build();
+        customCache.put("Key", "Value");
+        customCache.put(new ShapeKey(1), new Shape(1, "First"));
+        customCache.put(new ShapeKey(2), new Shape(2, "Second"));
+
+        while (count(notifications, RemovalCause.EXPIRED) < 3) {
+            sleep(10);
+        }
+        Set<Object> keys = new HashSet<>();
+        for (RemovalNotification<Object, Object> notification : notifications) {
+            Assert.assertEquals(RemovalCause.EXPIRED, notification.getCause());
+            keys.add(notification.getKey());
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("Key", new ShapeKey(1), new ShapeKey(2))), keys);
+        Assert.assertEquals(null, customCache.get("Key"));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemovalListenerFailingWithAnErrorKeepsReceiving() throws Exception {
+        List<Object> removed = new CopyOnWriteArrayList<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .removalListener((key, value, cause) -> {
+                    removed.add(key);
+                    if (key.equals(1)) {
+                        throw new AssertionError("Listener failed");
+                    }
+                })
+                .build();
+        customCache.put(1, 1);
+        customCache.remove(1);
+        while (removed.isEmpty()) {
+            sleep(10);
+        }
+        customCache.put(2, 2);
+        customCache.remove(2);
+        while (removed.size() < 2) {
+            sleep(10);
+        }
+        Assert.assertEquals(Arrays.asList(1, 2), removed);
+        customCache.close();
+    }
+
+    @Test(timeout = 5000)
+    public void testCachesShareOneExpirationThread() throws Exception {
+        List<CustomCache<Object, Object>> caches = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CustomCache<Object, Object> customCache = CustomCache.builder().expireAfter(1, TimeUnit.HOURS).build();
+            customCache.put(i, i);
+            caches.add(customCache);
+        }
+        long expirationThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("custom-cache-expiration"))
+                .count();
+        Assert.assertEquals(1, expirationThreads);
+        for (CustomCache<Object, Object> customCache : caches) {
+            customCache.close();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseStopsExpirationsAndFlushesWrites() throws Exception {
+        List<RemovalNotification<Object, Object>> notifications = new CopyOnWriteArrayList<>();
+        InMemoryStore<Object, Object> store = new InMemoryStore<>();
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(100, TimeUnit.MILLISECONDS)
+                .writer(store)
+                .writeBehind(100, 1, TimeUnit.HOURS)
+                .removalListener((key, value, cause) -> notifications.add(new RemovalNotification<>(key, value, cause)))
+                .build();
+        customCache.put("Key", "Value");
+        customCache.put("Other", "Value");
+        Assert.assertTrue(customCache.remove("Other"));
+        Assert.assertEquals(0, store.size());
+
+        customCache.close();
+        customCache.close();
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(1, notifications.size());
+        Assert.assertEquals(RemovalCause.EXPLICIT, notifications.get(0).getCause());
+
+        sleep(300);
+        Assert.assertEquals("Value", customCache.get("Key"));
+        Assert.assertEquals(1, notifications.size());
+        customCache.put("Later", "Value");
+        Assert.assertEquals("Value", store.load("Later"));
+    }
+
+    private static long count(List<RemovalNotification<Object, Object>> notifications, RemovalCause cause) {
+        return notifications.stream().filter(notification -> notification.getCause() == cause).count();
+    }
+
+    @Test
+    public void testMaximumSizeKeepsFrequentEntries() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(0, TimeUnit.SECONDS)
+                .maximumSize(100)
+                .build();
+        ShapeKey hotKey = new ShapeKey(1);
+        Shape hotShape = new Shape(1, "Hot Shape");
+        customCache.put(hotKey, hotShape);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(hotShape, customCache.get(hotKey));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            customCache.put(i, i);
+            customCache.put("" + i, "" + i);
+            if (i % 100 == 0) {
+                Assert.assertEquals(hotShape, customCache.get(hotKey));
+            }
+        }
+
+        int present = 0;
+        for (int i = 0; i < 10_000; i++) {
+            present += customCache.get(i) == null ? 0 : 1;
+            present += customCache.get("" + i) == null ? 0 : 1;
+        }
+        Assert.assertTrue("Expected at most 99 scanned entries but found " + present, present <= 99);
+        Assert.assertEquals(hotShape, customCache.get(hotKey));
+    }
+
+    @Test
+    public void testMaximumWeightEvictsWholeKeyType() throws Exception {
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(0, TimeUnit.SECONDS)
+                .maximumWeight(10)
+                .weigher((key, value) -> value.toString().length())
+                .build();
+        customCache.put(1, "12345");
+        customCache.put(2, "12345");
+        customCache.put("Key", "1234567890");
+        // the first write is rejected by admission as "Key" is not more popular than the Integer keys yet
+        Assert.assertEquals(null, customCache.get("Key"));
+        customCache.put("Key", "1234567890");
+
+        Assert.assertEquals(null, customCache.get(1));
+        Assert.assertEquals(null, customCache.get(2));
+        Assert.assertEquals("1234567890", customCache.get("Key"));
+
+        // Integer keys were all evicted, so their type safety rule is reset
+        customCache.put(1, 'x');
+        Assert.assertEquals('x', customCache.get(1));
+    }
+
+    @Test(timeout = 5000)
+    public void testLargeMaximumWeightSizesTheSketchFromEntries() throws Exception {
+        // a byte weigher, the maximum is four gigabytes and no entry count
+        CustomCache<Object, Object> customCache = CustomCache.builder()
+                .expireAfter(0, TimeUnit.SECONDS)
+                .maximumWeight(1L << 32)
+                .weigher((key, value) -> ((byte[]) value).length)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            customCache.put(i, new byte[1 << 10]);
+        }
+        Assert.assertEquals(1000, customCache.estimatedSize());
+        Assert.assertEquals(1 << 10, ((byte[]) customCache.get(999)).length);
+    }
+
     @Test(timeout = 7000)
     public void testWrapperTypesConcurrentReadAndWrite() throws Exception {
         CustomCache customCache = new CustomCache();
@@ -0,0 +1,28 @@
+package com.nishant.customcache.eviction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testTableGrowsWithEntriesUpToItsMaximum() throws Exception {
+        FrequencySketch sketch = new FrequencySketch();
+        int initialCapacity = sketch.capacity();
+        sketch.increment(1);
+        sketch.increment(1);
+        Assert.assertEquals(2, sketch.frequency(1));
+
+        // already large enough, the counts survive
+        sketch.ensureCapacity(initialCapacity);
+        Assert.assertEquals(initialCapacity, sketch.capacity());
+        Assert.assertEquals(2, sketch.frequency(1));
+
+        sketch.ensureCapacity(1000);
+        Assert.assertEquals(1024, sketch.capacity());
+        Assert.assertEquals(0, sketch.frequency(1));
+
+        sketch.ensureCapacity(1L << 40);
+        Assert.assertEquals(FrequencySketch.MAXIMUM_CAPACITY, sketch.capacity());
+    }
+}
@@ -0,0 +1,71 @@
+package com.nishant.customcache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class EntryTableTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        EntryTable<String, Integer> table = new EntryTable<>();
+        Assert.assertNull(table.put("one", 1));
+        Assert.assertEquals(Integer.valueOf(1), table.put("one", 11));
+        Assert.assertEquals(Integer.valueOf(11), table.get("one"));
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(Integer.valueOf(11), table.remove("one"));
+        Assert.assertNull(table.get("one"));
+        Assert.assertNull(table.remove("one"));
+        Assert.assertTrue(table.isEmpty());
+    }
+
+    /**
+     * Colliding keys and random removals exercise resizing and backward shift deletion
+     */
+    @Test
+    public void testRandomOperationsMatchReference() throws Exception {
+        EntryTable<Integer, Integer> table = new EntryTable<>();
+        Map<Integer, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            Integer key = random.nextInt(5_000) << 10;
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(reference.remove(key), table.remove(key));
+            } else {
+                Assert.assertEquals(reference.put(key, i), table.put(key, i));
+            }
+        }
+        Assert.assertEquals(reference.size(), table.size());
+        for (int key = 0; key < 5_000; key++) {
+            Assert.assertEquals(reference.get(key << 10), table.get(key << 10));
+        }
+    }
+
+    /**
+     * Write times have to follow their mapping when removals shift it back and when the table grows
+     */
+    @Test
+    public void testTimesFollowShiftedEntries() throws Exception {
+        EntryTable<Integer, Integer> table = new EntryTable<>(true);
+        Random random = new Random(7);
+        Map<Integer, Long> reference = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            Integer key = random.nextInt(2_000) << 10;
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                reference.remove(key);
+            } else {
+                table.put(key, key, i);
+                reference.put(key, (long) i);
+            }
+        }
+        for (Map.Entry<Integer, Long> entry : reference.entrySet()) {
+            int slot = table.indexOf(entry.getKey());
+            Assert.assertEquals(entry.getValue().longValue(), table.writeTimeAt(slot));
+            Assert.assertEquals(entry.getValue().longValue(), table.accessTimeAt(slot));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.nishant.customcache.model;
+
+import com.nishant.customcache.common.Rectangle;
+import com.nishant.customcache.common.Shape;
+import com.nishant.customcache.common.Square;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class HighestTypesTest {
+
+    @Test
+    public void testHighestTypeIsRightBelowObject() {
+        Assert.assertSame(Shape.class, HighestTypes.of(Square.class));
+        Assert.assertSame(Shape.class, HighestTypes.of(Rectangle.class));
+        Assert.assertSame(Shape.class, HighestTypes.of(Shape.class));
+        Assert.assertSame(Number.class, HighestTypes.of(BigDecimal.class));
+        Assert.assertSame(Object.class, HighestTypes.of(Object.class));
+        Assert.assertSame(String[].class, HighestTypes.of(String[].class));
+        Assert.assertSame(Serializable.class, HighestTypes.of(Serializable.class));
+        for (Class<?> type : new Class<?>[]{Square.class, Integer.class, ArrayList.class, String.class, Object.class}) {
+            Assert.assertSame(HighestTypes.walk(type), HighestTypes.of(type));
+        }
+    }
+
+    @Test
+    public void testPartitionMatchesValuesOfItsHierarchy() {
+        KeyTypeCacheEntry<Integer, Object> partition = new KeyTypeCacheEntry.Settings<Integer, Object>()
+                .newPartition(Integer.class, Rectangle.class, 0, TimeUnit.SECONDS);
+        Assert.assertSame(Shape.class, partition.getValueType());
+        Assert.assertTrue(partition.matchesHighestTypeOfValue(new Shape(1, "Shape")));
+        Assert.assertTrue(partition.matchesHighestTypeOfValue(new Square(2, "Square", 2)));
+        Assert.assertFalse(partition.matchesHighestTypeOfValue("Shape"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.nishant.customcache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntEntryTableTest {
+
+    /**
+     * Zero, negative and colliding keys, with random removals exercising resizing and backward shift deletion
+     */
+    @Test
+    public void testRandomOperationsMatchReference() throws Exception {
+        IntEntryTable<Integer> ints = new IntEntryTable<>(false);
+        LongEntryTable<Integer> longs = new LongEntryTable<>(true);
+        Map<Integer, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int key = (random.nextInt(5_000) - 2_500) << 10;
+            long longKey = (long) key << 32;
+            if (random.nextInt(3) == 0) {
+                Integer expected = reference.remove(key);
+                Assert.assertEquals(expected, ints.remove(key));
+                Assert.assertEquals(expected, longs.remove(longKey));
+            } else {
+                Integer expected = reference.put(key, i);
+                Assert.assertEquals(expected, ints.put(key, i, 0L));
+                Assert.assertEquals(expected, longs.put(longKey, i, i));
+            }
+        }
+        Assert.assertEquals(reference.size(), ints.size());
+        Assert.assertEquals(reference.size(), longs.size());
+        for (int key = -2_500 << 10; key < 2_500 << 10; key += 1 << 10) {
+            Assert.assertEquals(reference.get(key), ints.get(key));
+            int slot = longs.indexOf((long) key << 32);
+            Assert.assertEquals(reference.get(key), slot == EntryTable.ABSENT ? null : longs.valueAt(slot));
+            if (slot != EntryTable.ABSENT) {
+                // times move along with their entry
+                Assert.assertEquals(reference.get(key).longValue(), longs.writeTimeAt(slot));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.nishant.customcache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class KeyTypeIndexTest {
+
+    private final KeyTypeCacheEntry.Settings<Object, Object> settings = new KeyTypeCacheEntry.Settings<>();
+
+    @Test
+    public void testAddGetRemove() throws Exception {
+        KeyTypeIndex<Object, Object> index = new KeyTypeIndex<>();
+        KeyTypeCacheEntry<Object, Object> first = partition(Integer.class);
+        KeyTypeCacheEntry<Object, Object> second = partition(Integer.class);
+        index.add(first);
+        Assert.assertSame(first, index.get(Integer.class));
+        Assert.assertNull(index.get(String.class));
+
+        // a key type added again replaces its partition, the stale instance can no longer be removed
+        index.add(second);
+        Assert.assertEquals(1, index.size());
+        Assert.assertSame(second, index.get(Integer.class));
+        Assert.assertFalse(index.remove(first));
+        Assert.assertSame(second, index.get(Integer.class));
+
+        Assert.assertTrue(index.remove(second));
+        Assert.assertNull(index.get(Integer.class));
+        Assert.assertFalse(index.remove(second));
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(0, index.snapshot().length);
+    }
+
+    /**
+     * Key types hashing to the last slot of the initial table wrap around to its first slots, removing the head of
+     * the chain has to shift them back across the end of the table
+     */
+    @Test
+    public void testBackwardShiftAcrossWrapAround() throws Exception {
+        int mask = 7;
+        List<Class<?>> lastSlot = new ArrayList<>();
+        Class<?> firstSlot = null;
+        for (Class<?> keyType : keyTypes(1000)) {
+            int home = home(keyType, mask);
+            if (home == mask && lastSlot.size() < 2) {
+                lastSlot.add(keyType);
+            } else if (home == 0 && firstSlot == null) {
+                firstSlot = keyType;
+            }
+        }
+        Assert.assertEquals(2, lastSlot.size());
+        Assert.assertNotNull(firstSlot);
+
+        // three entries stay within the initial eight slots: 7, then 0 and 1 after wrapping around
+        KeyTypeIndex<Object, Object> index = new KeyTypeIndex<>();
+        KeyTypeCacheEntry<Object, Object> head = partition(lastSlot.get(0));
+        KeyTypeCacheEntry<Object, Object> wrapped = partition(lastSlot.get(1));
+        KeyTypeCacheEntry<Object, Object> displaced = partition(firstSlot);
+        index.add(head);
+        index.add(wrapped);
+        index.add(displaced);
+
+        Assert.assertTrue(index.remove(head));
+        Assert.assertNull(index.get(lastSlot.get(0)));
+        Assert.assertSame(wrapped, index.get(lastSlot.get(1)));
+        Assert.assertSame(displaced, index.get(firstSlot));
+
+        Assert.assertTrue(index.remove(wrapped));
+        Assert.assertSame(displaced, index.get(firstSlot));
+        Assert.assertEquals(1, index.size());
+    }
+
+    /**
+     * Colliding key types, resizing and removals of current and stale partitions, first within a few slots then
+     * across a table grown to hundreds
+     */
+    @Test
+    public void testRandomOperationsMatchReference() throws Exception {
+        for (int keyTypeCount : new int[]{12, 300}) {
+            List<Class<?>> keyTypes = keyTypes(keyTypeCount);
+            Map<Class<?>, List<KeyTypeCacheEntry<Object, Object>>> partitions = new IdentityHashMap<>();
+            for (Class<?> keyType : keyTypes) {
+                partitions.put(keyType, Arrays.asList(partition(keyType), partition(keyType)));
+            }
+            KeyTypeIndex<Object, Object> index = new KeyTypeIndex<>();
+            Map<Class<?>, KeyTypeCacheEntry<Object, Object>> reference = new IdentityHashMap<>();
+            Random random = new Random(42);
+            for (int i = 0; i < 50_000; i++) {
+                Class<?> keyType = keyTypes.get(random.nextInt(keyTypes.size()));
+                KeyTypeCacheEntry<Object, Object> partition = partitions.get(keyType).get(random.nextInt(2));
+                if (random.nextBoolean()) {
+                    boolean registered = reference.get(keyType) == partition;
+                    Assert.assertEquals(registered, index.remove(partition));
+                    if (registered) {
+                        reference.remove(keyType);
+                    }
+                } else {
+                    index.add(partition);
+                    reference.put(keyType, partition);
+                }
+                Assert.assertSame(reference.get(keyType), index.get(keyType));
+            }
+            Assert.assertEquals(reference.size(), index.size());
+            for (Class<?> keyType : keyTypes) {
+                Assert.assertSame(reference.get(keyType), index.get(keyType));
+            }
+            Assert.assertEquals(reference.size(), index.snapshot().length);
+            for (KeyTypeCacheEntry<Object, Object> partition : index.snapshot()) {
+                Assert.assertSame(reference.get(partition.getKeyType()), partition);
+            }
+        }
+    }
+
+    private KeyTypeCacheEntry<Object, Object> partition(Class<?> keyType) {
+        return settings.newPartition(keyType, String.class, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Distinct classes, array types of every dimension of a few component types
+     */
+    private static List<Class<?>> keyTypes(int count) {
+        List<Class<?>> keyTypes = new ArrayList<>();
+        Class<?>[] componentTypes = {Object.class, String.class, Integer.class, Long.class, Double.class};
+        for (int dimensions = 1; keyTypes.size() < count; dimensions++) {
+            for (int c = 0; c < componentTypes.length && keyTypes.size() < count; c++) {
+                keyTypes.add(Array.newInstance(componentTypes[c], new int[dimensions]).getClass());
+            }
+        }
+        return keyTypes;
+    }
+
+    /**
+     * Home slot of the key type, the hash of {@link KeyTypeIndex}
+     */
+    private static int home(Class<?> keyType, int mask) {
+        int h = System.identityHashCode(keyType);
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
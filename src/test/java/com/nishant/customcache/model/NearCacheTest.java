@@ -0,0 +1,72 @@
+package com.nishant.customcache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class NearCacheTest {
+
+    @Test
+    public void testCopiesLastUntilThePartitionChanges() throws Exception {
+        KeyTypeCacheEntry<Integer, String> partition = partition(true);
+        NearCache<Integer, String> nearCache = new NearCache<>(16);
+        partition.addEntry(1, "one");
+        nearCache.put(1, "one", partition, partition.getVersion());
+        Assert.assertEquals("one", nearCache.get(1));
+        Assert.assertNull(nearCache.get(2));
+
+        // any mutation of the partition drops every copy, not only the copy of the mutated key
+        partition.addEntry(2, "two");
+        Assert.assertNull(nearCache.get(1));
+        nearCache.put(1, "one", partition, partition.getVersion());
+        partition.removeEntries(Arrays.asList(3, 4));
+        Assert.assertEquals("one", nearCache.get(1));
+        partition.removeEntry(2);
+        Assert.assertNull(nearCache.get(1));
+
+        nearCache.put(1, "one", partition, partition.getVersion());
+        partition.retire();
+        Assert.assertNull(nearCache.get(1));
+    }
+
+    @Test
+    public void testCopiesSharingASlotReplaceEachOther() throws Exception {
+        KeyTypeCacheEntry<Integer, String> partition = partition(true);
+        NearCache<Integer, String> nearCache = new NearCache<>(1);
+        nearCache.put(1, "one", partition, partition.getVersion());
+        nearCache.put(2, "two", partition, partition.getVersion());
+        Assert.assertNull(nearCache.get(1));
+        Assert.assertEquals("two", nearCache.get(2));
+    }
+
+    @Test
+    public void testCopiesArePerThread() throws Exception {
+        KeyTypeCacheEntry<Integer, String> partition = partition(true);
+        NearCache<Integer, String> nearCache = new NearCache<>(16);
+        nearCache.put(1, "one", partition, partition.getVersion());
+        String[] seen = new String[1];
+        Thread reader = new Thread(() -> seen[0] = nearCache.get(1));
+        reader.start();
+        reader.join();
+        Assert.assertNull(seen[0]);
+        Assert.assertEquals("one", nearCache.get(1));
+    }
+
+    @Test
+    public void testOnlyVersionedPartitionsBumpTheirVersion() throws Exception {
+        KeyTypeCacheEntry<Integer, String> partition = partition(false);
+        partition.addEntry(1, "one");
+        partition.removeEntry(1);
+        Assert.assertEquals(0L, partition.getVersion());
+    }
+
+    private static KeyTypeCacheEntry<Integer, String> partition(boolean versioned) {
+        return new KeyTypeCacheEntry.Settings<Integer, String>()
+                .segments(4)
+                .versionedKeyTypes(versioned ? Collections.singleton(Integer.class) : Collections.emptySet())
+                .newPartition(Integer.class, String.class, 0, TimeUnit.SECONDS);
+    }
+}
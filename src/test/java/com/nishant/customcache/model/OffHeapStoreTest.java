@@ -0,0 +1,66 @@
+package com.nishant.customcache.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class OffHeapStoreTest {
+
+    @Test
+    public void testStoreReadFree() throws Exception {
+        OffHeapStore store = new OffHeapStore(1024);
+        long first = store.store(new byte[]{1, 2, 3});
+        long second = store.store(new byte[0]);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, store.read(first));
+        Assert.assertArrayEquals(new byte[0], store.read(second));
+        Assert.assertEquals(32, store.usedBytes());
+        Assert.assertEquals(1024, store.reservedBytes());
+
+        store.free(first);
+        // the freed chunk is reused by the next value of its size class
+        Assert.assertEquals(first, store.store(new byte[]{4, 5}));
+        Assert.assertArrayEquals(new byte[]{4, 5}, store.read(first));
+
+        try {
+            store.store(new byte[1021]);
+            Assert.fail("Value larger than a slab should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // addresses of dropped slabs read as absent rather than failing
+        store.clear();
+        Assert.assertNull(store.read(first));
+        Assert.assertEquals(0, store.reservedBytes());
+    }
+
+    /**
+     * Random sizes fill several slabs, exercising the free lists and the reuse of the tail of full slabs
+     */
+    @Test
+    public void testRandomOperationsMatchReference() throws Exception {
+        OffHeapStore store = new OffHeapStore(4096);
+        Map<Long, byte[]> reference = new HashMap<>();
+        Random random = new Random(42);
+        Long[] live = new Long[0];
+        for (int i = 0; i < 50_000; i++) {
+            if (!reference.isEmpty() && random.nextInt(2) == 0) {
+                live = reference.keySet().toArray(live);
+                Long address = live[random.nextInt(reference.size())];
+                Assert.assertArrayEquals(reference.remove(address), store.read(address));
+                store.free(address);
+            } else {
+                byte[] bytes = new byte[random.nextInt(300)];
+                random.nextBytes(bytes);
+                long address = store.store(bytes);
+                Assert.assertNull(reference.put(address, bytes));
+            }
+        }
+        for (Map.Entry<Long, byte[]> entry : reference.entrySet()) {
+            Assert.assertArrayEquals(entry.getValue(), store.read(entry.getKey()));
+        }
+        Assert.assertTrue(store.usedBytes() <= store.reservedBytes());
+    }
+}
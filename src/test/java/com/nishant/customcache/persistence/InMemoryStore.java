@@ -0,0 +1,81 @@
+package com.nishant.customcache.persistence;
+
+import com.nishant.customcache.annotations.ThreadSafe;
+import com.nishant.customcache.interfaces.CacheLoader;
+import com.nishant.customcache.interfaces.CacheWriter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backing store kept in memory, standing in for a database. Counts the calls it receives so that tests can
+ * check how the cache batches and coalesces its writes.
+ */
+@ThreadSafe
+public class InMemoryStore<K, V> implements CacheWriter<K, V>, CacheLoader<K, V> {
+
+    private final ConcurrentHashMap<K, V> values = new ConcurrentHashMap<>();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong deleteCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    @Override
+    public V load(K key) {
+        return values.get(key);
+    }
+
+    @Override
+    public void write(K key, V value) {
+        writeCount.incrementAndGet();
+        values.put(key, value);
+    }
+
+    @Override
+    public void delete(K key) {
+        deleteCount.incrementAndGet();
+        values.remove(key);
+    }
+
+    @Override
+    public void writeAll(Map<? extends K, ? extends V> entries) {
+        batchCount.incrementAndGet();
+        writeCount.addAndGet(entries.size());
+        values.putAll(entries);
+    }
+
+    @Override
+    public void deleteAll(Collection<? extends K> keys) {
+        batchCount.incrementAndGet();
+        deleteCount.addAndGet(keys.size());
+        for (K key : keys) {
+            values.remove(key);
+        }
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Number of values written, one per key of a batch
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * Number of keys deleted, one per key of a batch
+     */
+    public long getDeleteCount() {
+        return deleteCount.get();
+    }
+
+    /**
+     * Number of {@link #writeAll(Map)} and {@link #deleteAll(Collection)} calls
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.nishant.customcache.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class BoundedMpscBufferTest {
+
+    @Test
+    public void testOfferFailsOnceFull() {
+        BoundedMpscBuffer<Integer> buffer = new BoundedMpscBuffer<>(3);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+
+        List<Integer> drained = new ArrayList<>();
+        Assert.assertEquals(2, buffer.drain(drained::add, 2));
+        Assert.assertTrue(buffer.offer(4));
+        Assert.assertEquals(3, buffer.drain(drained::add, 10));
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+    }
+
+    @Test(timeout = 5000)
+    public void testProducersElementsAreDrainedInTheirOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 100_000;
+        BoundedMpscBuffer<long[]> buffer = new BoundedMpscBuffer<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            received += buffer.drain(element -> {
+                Assert.assertEquals(next[(int) element[0]]++, element[1]);
+            }, 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,44 @@
+package com.nishant.customcache.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExpirationServiceTest {
+
+    @Test(timeout = 5000)
+    public void testCloseCancelsOnlyItsOwnTasks() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, "expiration-service-test");
+        ExpirationService closing = new ExpirationService(wheel, null);
+        ExpirationService open = new ExpirationService(wheel, null);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < 100; i++) {
+            closing.schedule(cancelledRuns::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        }
+        open.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(100, closing.getPendingCount());
+
+        closing.close();
+        Assert.assertEquals(0, closing.getPendingCount());
+        Assert.assertNull(closing.scheduleWork(cancelledRuns::incrementAndGet, 0, TimeUnit.MILLISECONDS));
+        latch.await();
+        Assert.assertEquals(0, cancelledRuns.get());
+        Assert.assertEquals(0, open.getPendingCount());
+        wheel.close();
+    }
+
+    @Test(timeout = 5000)
+    public void testTasksLeaveThePendingSetWhenRunOrCancelled() throws Exception {
+        ExpirationService service = new ExpirationService();
+        CountDownLatch latch = new CountDownLatch(1);
+        TimingWheel.Timeout cancelled = service.schedule(latch::countDown, 1, TimeUnit.HOURS);
+        service.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+        latch.await();
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertEquals(0, service.getPendingCount());
+    }
+}
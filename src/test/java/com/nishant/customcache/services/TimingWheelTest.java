@@ -0,0 +1,93 @@
+package com.nishant.customcache.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelTest {
+
+    @Test(timeout = 5000)
+    public void testTasksFireAfterDelayAcrossLevels() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, "timing-wheel-test");
+        long[] delays = {0, 5, 63, 64, 65, 300, 1100};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        AtomicInteger early = new AtomicInteger();
+        for (long delay : delays) {
+            long scheduledAt = System.nanoTime();
+            wheel.schedule(() -> {
+                if (System.nanoTime() - scheduledAt < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.incrementAndGet();
+                }
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        latch.await();
+        Assert.assertEquals(0, early.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, "timing-wheel-test");
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        CountDownLatch latch = new CountDownLatch(1);
+        TimingWheel.Timeout fired = wheel.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+        latch.await();
+
+        Assert.assertEquals(0, runs.get());
+        Assert.assertTrue(cancelled.isCancelled());
+        Assert.assertTrue(fired.isExpired());
+        Assert.assertFalse(fired.cancel());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailingTaskKeepsTheTickerAlive() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, "timing-wheel-test");
+        Thread.UncaughtExceptionHandler handler = (thread, e) -> { };
+        wheel.schedule(() -> {
+            Thread.currentThread().setUncaughtExceptionHandler(handler);
+            throw new AssertionError("Task failed");
+        }, 5, TimeUnit.MILLISECONDS);
+        CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+        latch.await();
+        wheel.close();
+    }
+
+    @Test
+    public void testManualWheelFiresOnlyWhenAdvanced() {
+        ManualTicker ticker = new ManualTicker();
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, ticker);
+        List<Long> fired = new ArrayList<>();
+        wheel.schedule(() -> fired.add(ticker.read()), 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> {
+            fired.add(ticker.read());
+            // due at once, fired by the same advance
+            wheel.schedule(() -> fired.add(-ticker.read()), 0, TimeUnit.MILLISECONDS);
+        }, 2, TimeUnit.HOURS);
+
+        wheel.advance();
+        ticker.advance(9, TimeUnit.MILLISECONDS);
+        wheel.advance();
+        Assert.assertEquals(0, fired.size());
+
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        wheel.advance();
+        Assert.assertEquals(Collections.singletonList(TimeUnit.MILLISECONDS.toNanos(10)), fired);
+
+        ticker.advance(3, TimeUnit.HOURS);
+        wheel.advance();
+        long now = ticker.read();
+        Assert.assertEquals(Arrays.asList(TimeUnit.MILLISECONDS.toNanos(10), now, -now), fired);
+    }
+}